@@ -1,5 +1,14 @@
 package com.incobalt.roleplaychat;
 
+import com.incobalt.roleplaychat.chat.FalloffCurve;
+import com.incobalt.roleplaychat.chat.Announcements;
+import com.incobalt.roleplaychat.chat.Languages;
+import com.incobalt.roleplaychat.chat.WordFilter;
+import com.incobalt.roleplaychat.chat.Muffler;
+import com.incobalt.roleplaychat.chat.Occlusion;
+import com.incobalt.roleplaychat.federation.BorderChat;
+import com.incobalt.roleplaychat.missive.Missive;
+import com.incobalt.roleplaychat.missive.PostNetwork;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
@@ -39,21 +48,58 @@ public class ChatConfig {
     //overhead and access the variables from SERVER directly [ex: ChatConfig.SERVER.enableDistanceChat.get()]
     public static boolean enableDistanceChat;
     public static boolean useObfuscation;
+    public static boolean clientSideMuffle;
+    public static boolean muffleByWord;
+    public static boolean enableMentions;
+    public static boolean mentionSound;
+    public static FalloffCurve sayFalloffCurve;
+    public static FalloffCurve shoutFalloffCurve;
+    public static int parallelMuffleAudience;
+    public static int muffleThreads;
+    public static boolean batchChatSends;
+    public static int chatBacklogLimit;
+    public static boolean enableLoadGovernor;
+    public static double reducedFidelityMSPT;
+    public static double minimalFidelityMSPT;
+    public static double fidelityHysteresisMSPT;
+    public static boolean enableOcclusion;
+    public static double occlusionPenalty;
+    public static int occlusionBlockBudget;
+    public static int occlusionRaysPerMessage;
+    public static int occlusionCacheSize;
     public static boolean enableMissives;
     public static boolean createCommands;
     public static boolean redirectVanillaCommands;
     public static boolean useChatSymbols;
     public static boolean missivesUseItems;
     public static boolean missiveServerSideItemChecks;
+    public static int missiveItemCheckTimeout;
+    public static Missive.ItemRule missiveItemRule;
+    public static int maxMissivesPerSender;
+    public static int maxQueuedMissives;
+    public static ArrayList<String> postOffices;
+    public static ArrayList<String> postRoutes;
+    public static ArrayList<String> portalRoutes;
+    public static boolean enableFederation;
+    public static String federationServerName;
+    public static String federationSpool;
+    public static int federationPollSeconds;
+    public static int federationRetrySeconds;
+    public static double federationTravelSeconds;
+    public static ArrayList<String> borderRegions;
     public static boolean missiveCreateCommands;
     public static boolean missiveRedirectCommands;
     public static double distanceChatRange;
     public static double whisperRange;
+    public static int maxIgnoredPlayers;
     public static double missiveDistance;
     public static double missiveTime;
     public static int colorPermissionLevel;
     public static int broadcastPermissionLevel;
     public static int tellPermissionLevel;
+    public static int languagePermissionLevel;
+    public static int mutePermissionLevel;
+    public static int statsPermissionLevel;
     public static String shoutCharacter;
     public static String emoteCharacter;
     public static String whisperCharacter;
@@ -62,6 +108,20 @@ public class ChatConfig {
     public static String missiveCharacter;
     public static ArrayList<String> missiveConsumableItems;
     public static ArrayList<String> missiveCatalystItems;
+    public static boolean enableScrollback;
+    public static boolean replayScrollbackOnLogin;
+    public static boolean replayScrollbackOnTeleport;
+    public static int scrollbackLines;
+    public static int scrollbackSeconds;
+    public static int scrollbackMaxRegions;
+    public static boolean enableLanguages;
+    public static ArrayList<String> languages;
+    public static int languageCacheSize;
+    public static boolean enableWordFilter;
+    public static ArrayList<String> filteredWords;
+    public static WordFilter.Action filterAction;
+    public static boolean filterWholeWords;
+    public static ArrayList<String> recurringBroadcasts;
 
 
     //Subscribe this function to the event bus to receive events
@@ -80,6 +140,25 @@ public class ChatConfig {
         //note: you have to use .get() because the variables aren't regular variable types, but special ones for ForgeConfigSpec
         ChatConfig.enableDistanceChat = SERVER.enableDistanceChat.get();
         ChatConfig.useObfuscation = SERVER.useObfuscation.get();
+        ChatConfig.clientSideMuffle = SERVER.clientSideMuffle.get();
+        ChatConfig.muffleByWord = SERVER.muffleByWord.get();
+        ChatConfig.enableMentions = SERVER.enableMentions.get();
+        ChatConfig.mentionSound = SERVER.mentionSound.get();
+        ChatConfig.sayFalloffCurve = SERVER.sayFalloffCurve.get();
+        ChatConfig.shoutFalloffCurve = SERVER.shoutFalloffCurve.get();
+        ChatConfig.parallelMuffleAudience = SERVER.parallelMuffleAudience.get();
+        ChatConfig.muffleThreads = SERVER.muffleThreads.get();
+        ChatConfig.batchChatSends = SERVER.batchChatSends.get();
+        ChatConfig.chatBacklogLimit = SERVER.chatBacklogLimit.get();
+        ChatConfig.enableLoadGovernor = SERVER.enableLoadGovernor.get();
+        ChatConfig.reducedFidelityMSPT = SERVER.reducedFidelityMSPT.get();
+        ChatConfig.minimalFidelityMSPT = SERVER.minimalFidelityMSPT.get();
+        ChatConfig.fidelityHysteresisMSPT = SERVER.fidelityHysteresisMSPT.get();
+        ChatConfig.enableOcclusion = SERVER.enableOcclusion.get();
+        ChatConfig.occlusionPenalty = SERVER.occlusionPenalty.get();
+        ChatConfig.occlusionBlockBudget = SERVER.occlusionBlockBudget.get();
+        ChatConfig.occlusionRaysPerMessage = SERVER.occlusionRaysPerMessage.get();
+        ChatConfig.occlusionCacheSize = SERVER.occlusionCacheSize.get();
         ChatConfig.createCommands = SERVER.createCommands.get();
         ChatConfig.redirectVanillaCommands = SERVER.redirectVanillaCommands.get();
         ChatConfig.useChatSymbols = SERVER.useChatSymbols.get();
@@ -87,14 +166,29 @@ public class ChatConfig {
         ChatConfig.missiveCreateCommands = SERVER.missiveCreateCommands.get();
         ChatConfig.missiveRedirectCommands = SERVER.missiveRedirectCommands.get();
         ChatConfig.missiveServerSideItemChecks = SERVER.missiveServerSideItemChecks.get();
+        ChatConfig.missiveItemCheckTimeout = SERVER.missiveItemCheckTimeout.get();
+        ChatConfig.missiveItemRule = SERVER.missiveItemRule.get();
+        ChatConfig.maxMissivesPerSender = SERVER.maxMissivesPerSender.get();
+        ChatConfig.maxQueuedMissives = SERVER.maxQueuedMissives.get();
+        ChatConfig.postOffices = new ArrayList<>(SERVER.postOffices.get());
+        ChatConfig.postRoutes = new ArrayList<>(SERVER.postRoutes.get());
+        ChatConfig.portalRoutes = new ArrayList<>(SERVER.portalRoutes.get());
         ChatConfig.missivesUseItems = SERVER.missiveUsesItems.get();
         ChatConfig.distanceChatRange = SERVER.distanceChatRange.get();
         ChatConfig.whisperRange = SERVER.whisperRange.get();
+        //the remembered wall counts depend on these settings, so start fresh whenever the config changes
+        Occlusion.clear();
+        //work out the falloff tables for the new ranges and curves. This has to come after the ranges are read
+        Muffler.bake();
+        ChatConfig.maxIgnoredPlayers = SERVER.maxIgnoredPlayers.get();
         ChatConfig.missiveDistance = SERVER.missiveDistance.get();
         ChatConfig.missiveTime = SERVER.missiveTime.get();
         ChatConfig.colorPermissionLevel = SERVER.colorPermissionLevel.get();
         ChatConfig.broadcastPermissionLevel = SERVER.broadcastPermissionLevel.get();
         ChatConfig.tellPermissionLevel = SERVER.tellPermissionLevel.get();
+        ChatConfig.languagePermissionLevel = SERVER.languagePermissionLevel.get();
+        ChatConfig.mutePermissionLevel = SERVER.mutePermissionLevel.get();
+        ChatConfig.statsPermissionLevel = SERVER.statsPermissionLevel.get();
         ChatConfig.shoutCharacter = SERVER.shoutCharacter.get();
         ChatConfig.emoteCharacter = SERVER.emoteCharacter.get();
         ChatConfig.whisperCharacter = SERVER.whisperCharacter.get();
@@ -103,6 +197,38 @@ public class ChatConfig {
         ChatConfig.missiveCharacter = SERVER.missiveCharacter.get();
         ChatConfig.missiveConsumableItems = new ArrayList<>(SERVER.missiveConsumableItems.get());
         ChatConfig.missiveCatalystItems = new ArrayList<>(SERVER.missiveCatalystItems.get());
+        ChatConfig.enableFederation = SERVER.enableFederation.get();
+        ChatConfig.federationServerName = SERVER.federationServerName.get();
+        ChatConfig.federationSpool = SERVER.federationSpool.get();
+        ChatConfig.federationPollSeconds = SERVER.federationPollSeconds.get();
+        ChatConfig.federationRetrySeconds = SERVER.federationRetrySeconds.get();
+        ChatConfig.federationTravelSeconds = SERVER.federationTravelSeconds.get();
+        ChatConfig.borderRegions = new ArrayList<>(SERVER.borderRegions.get());
+        //read the border regions, so chat near them can be sent across
+        BorderChat.bake();
+        ChatConfig.enableScrollback = SERVER.enableScrollback.get();
+        ChatConfig.replayScrollbackOnLogin = SERVER.replayScrollbackOnLogin.get();
+        ChatConfig.replayScrollbackOnTeleport = SERVER.replayScrollbackOnTeleport.get();
+        ChatConfig.scrollbackLines = SERVER.scrollbackLines.get();
+        ChatConfig.scrollbackSeconds = SERVER.scrollbackSeconds.get();
+        ChatConfig.scrollbackMaxRegions = SERVER.scrollbackMaxRegions.get();
+        ChatConfig.enableLanguages = SERVER.enableLanguages.get();
+        ChatConfig.languages = new ArrayList<>(SERVER.languages.get());
+        ChatConfig.languageCacheSize = SERVER.languageCacheSize.get();
+        //look up the languages by name, and forget any made-up words from the old list
+        Languages.bake();
+        ChatConfig.enableWordFilter = SERVER.enableWordFilter.get();
+        ChatConfig.filteredWords = new ArrayList<>(SERVER.filteredWords.get());
+        ChatConfig.filterAction = SERVER.filterAction.get();
+        ChatConfig.filterWholeWords = SERVER.filterWholeWords.get();
+        //build all of the blocked words into one matcher, so checking a message doesn't depend on how long the list is
+        WordFilter.bake();
+        ChatConfig.recurringBroadcasts = new ArrayList<>(SERVER.recurringBroadcasts.get());
+        //put the recurring broadcasts from the config into the announcement queue
+        Announcements.bake();
+        //the fastest routes between post offices are worked out here, so they're ready before any missive needs them.
+        //this comes last because it needs the missive speed settings
+        PostNetwork.bake();
     }
 
     //this class is where you indicate what you want in the config file
@@ -112,21 +238,51 @@ public class ChatConfig {
         //For anything not built in you'll need ConfigValue<type>, such as ConfigValue<String> used here.
         public final ForgeConfigSpec.BooleanValue enableDistanceChat;
         public final ForgeConfigSpec.BooleanValue useObfuscation;
+        public final ForgeConfigSpec.BooleanValue clientSideMuffle;
+        public final ForgeConfigSpec.BooleanValue muffleByWord;
+        public final ForgeConfigSpec.BooleanValue enableMentions;
+        public final ForgeConfigSpec.BooleanValue mentionSound;
+        public final ForgeConfigSpec.EnumValue<FalloffCurve> sayFalloffCurve;
+        public final ForgeConfigSpec.EnumValue<FalloffCurve> shoutFalloffCurve;
+        public final ForgeConfigSpec.IntValue parallelMuffleAudience;
+        public final ForgeConfigSpec.IntValue muffleThreads;
+        public final ForgeConfigSpec.BooleanValue batchChatSends;
+        public final ForgeConfigSpec.IntValue chatBacklogLimit;
+        public final ForgeConfigSpec.BooleanValue enableLoadGovernor;
+        public final ForgeConfigSpec.DoubleValue reducedFidelityMSPT;
+        public final ForgeConfigSpec.DoubleValue minimalFidelityMSPT;
+        public final ForgeConfigSpec.DoubleValue fidelityHysteresisMSPT;
+        public final ForgeConfigSpec.BooleanValue enableOcclusion;
+        public final ForgeConfigSpec.DoubleValue occlusionPenalty;
+        public final ForgeConfigSpec.IntValue occlusionBlockBudget;
+        public final ForgeConfigSpec.IntValue occlusionRaysPerMessage;
+        public final ForgeConfigSpec.IntValue occlusionCacheSize;
         public final ForgeConfigSpec.BooleanValue enableMissives;
         public final ForgeConfigSpec.BooleanValue createCommands;
         public final ForgeConfigSpec.BooleanValue redirectVanillaCommands;
         public final ForgeConfigSpec.BooleanValue useChatSymbols;
         public final ForgeConfigSpec.BooleanValue missiveUsesItems;
         public final ForgeConfigSpec.BooleanValue missiveServerSideItemChecks;
+        public final ForgeConfigSpec.IntValue missiveItemCheckTimeout;
+        public final ForgeConfigSpec.EnumValue<Missive.ItemRule> missiveItemRule;
+        public final ForgeConfigSpec.IntValue maxMissivesPerSender;
+        public final ForgeConfigSpec.IntValue maxQueuedMissives;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> postOffices;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> postRoutes;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> portalRoutes;
         public final ForgeConfigSpec.BooleanValue missiveCreateCommands;
         public final ForgeConfigSpec.BooleanValue missiveRedirectCommands;
         public final ForgeConfigSpec.DoubleValue distanceChatRange;
         public final ForgeConfigSpec.DoubleValue whisperRange;
+        public final ForgeConfigSpec.IntValue maxIgnoredPlayers;
         public final ForgeConfigSpec.DoubleValue missiveDistance;
         public final ForgeConfigSpec.DoubleValue missiveTime;
         public final ForgeConfigSpec.IntValue colorPermissionLevel;
         public final ForgeConfigSpec.IntValue broadcastPermissionLevel;
         public final ForgeConfigSpec.IntValue tellPermissionLevel;
+        public final ForgeConfigSpec.IntValue languagePermissionLevel;
+        public final ForgeConfigSpec.IntValue mutePermissionLevel;
+        public final ForgeConfigSpec.IntValue statsPermissionLevel;
         public final ForgeConfigSpec.ConfigValue<String> shoutCharacter;
         public final ForgeConfigSpec.ConfigValue<String> emoteCharacter;
         public final ForgeConfigSpec.ConfigValue<String> whisperCharacter;
@@ -135,6 +291,27 @@ public class ChatConfig {
         public final ForgeConfigSpec.ConfigValue<String> missiveCharacter;
         public final ForgeConfigSpec.ConfigValue<List<? extends String>> missiveConsumableItems;
         public final ForgeConfigSpec.ConfigValue<List<? extends String>> missiveCatalystItems;
+        public final ForgeConfigSpec.BooleanValue enableFederation;
+        public final ForgeConfigSpec.ConfigValue<String> federationServerName;
+        public final ForgeConfigSpec.ConfigValue<String> federationSpool;
+        public final ForgeConfigSpec.IntValue federationPollSeconds;
+        public final ForgeConfigSpec.IntValue federationRetrySeconds;
+        public final ForgeConfigSpec.DoubleValue federationTravelSeconds;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> borderRegions;
+        public final ForgeConfigSpec.BooleanValue enableScrollback;
+        public final ForgeConfigSpec.BooleanValue replayScrollbackOnLogin;
+        public final ForgeConfigSpec.BooleanValue replayScrollbackOnTeleport;
+        public final ForgeConfigSpec.IntValue scrollbackLines;
+        public final ForgeConfigSpec.IntValue scrollbackSeconds;
+        public final ForgeConfigSpec.IntValue scrollbackMaxRegions;
+        public final ForgeConfigSpec.BooleanValue enableLanguages;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> languages;
+        public final ForgeConfigSpec.IntValue languageCacheSize;
+        public final ForgeConfigSpec.BooleanValue enableWordFilter;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> filteredWords;
+        public final ForgeConfigSpec.EnumValue<WordFilter.Action> filterAction;
+        public final ForgeConfigSpec.BooleanValue filterWholeWords;
+        public final ForgeConfigSpec.ConfigValue<List<? extends String>> recurringBroadcasts;
 
         //the constructor of this class is where you actually set up the config file, including comments and default values
         public ServerConfig(ForgeConfigSpec.Builder builder){
@@ -153,14 +330,113 @@ public class ChatConfig {
                         .define("Use Obfuscation for Muffle", true);
                 obfuscateCharacter = builder.comment("If not using obfuscation, what character replaces text when muffled?")
                     .define("Muffle Character", ".");
+                muffleByWord = builder.comment("Muffle whole words instead of single letters. Muffled words are obfuscated, or replaced by a single Muffle Character.")
+                        .define("Muffle Whole Words", false);
+                //defineEnum lets the config file pick one of the values of an enum, and writes the allowed values in a comment
+                sayFalloffCurve = builder.comment("How quickly regular chat gets muffled with distance. QUADRATIC starts gently and picks up near the edge, LINEAR gets worse steadily, LOGARITHMIC gets worse quickly and then levels off, and STEPPED gets worse in steps.")
+                        .defineEnum("Say Falloff Curve", FalloffCurve.QUADRATIC);
+                shoutFalloffCurve = builder.comment("How quickly shouts get muffled with distance when walls are in the way (see Enable Occlusion). Uses the same curves as Say Falloff Curve.")
+                        .defineEnum("Shout Falloff Curve", FalloffCurve.QUADRATIC);
+                clientSideMuffle = builder.comment("Players with this mod installed on their client muffle distance chat themselves, which saves server work and bandwidth. Players without the mod are unaffected.")
+                        .define("Client-Side Muffling", true);
+                enableMentions = builder.comment("Highlight a player's name when it comes up in regular chat, shouts, or whispers they can hear clearly.")
+                        .define("Highlight Mentions", true);
+                mentionSound = builder.comment("Play a quiet bell for players whose name is highlighted. Only they hear it.")
+                        .define("Mention Sound", true);
+                parallelMuffleAudience = builder.comment("When this many players or more could hear a message, muffled text is built on several cores at once. Use 0 to always build it on the server thread. Off by default, since it hasn't been shown to be faster yet.")
+                        .defineInRange("Parallel Muffle Audience", 0, 0, 1000);
+                muffleThreads = builder.comment("How many extra threads to use for building muffled text for big audiences. Use 0 to use one less than the number of cores.")
+                        .defineInRange("Muffle Threads", 0, 0, 64);
+                batchChatSends = builder.comment("Flush each player's chat lines out to the network once at the end of the tick, instead of flushing each line on its own.")
+                        .define("Batch Chat Sends", true);
+                chatBacklogLimit = builder.comment("How many chat lines can be waiting to go out to one player before their connection counts as backed up. While it is, faint lines (muffled chat and whisper notices) are left out for that player.")
+                        .defineInRange("Chat Backlog Limit", 64, 1, 10000);
+                enableOcclusion = builder.comment("Solid blocks between the speaker and a listener make regular chat and shouts harder to hear.")
+                        .define("Enable Occlusion", false);
+                occlusionPenalty = builder.comment("How many blocks farther away each solid block in the way makes a listener seem.")
+                        .defineInRange("Occlusion Penalty", 5.0, 0.5, 256.0);
+                occlusionBlockBudget = builder.comment("The most blocks checked between a speaker and one listener. Blocks past this are treated as open air.")
+                        .defineInRange("Occlusion Block Budget", 96, 8, 1024);
+                occlusionRaysPerMessage = builder.comment("The most new speaker-listener lines checked for one message. Listeners past this hear as if nothing is in the way.")
+                        .defineInRange("Occlusion Checks per Message", 64, 1, 1024);
+                occlusionCacheSize = builder.comment("How many speaker-listener lines to remember. Lines are forgotten when a block in their chunk changes.")
+                        .defineInRange("Occlusion Cache Size", 4096, 16, 65536);
                 whisperRange = builder.comment("Range (in blocks) whispers can be heard. Players 1 block outside of this range see '*Playername whispers.'")
                         .defineInRange("Whisper Range", 2.0, 1.0, 256.0);
+                maxIgnoredPlayers = builder.comment("The most players one player can ignore with /ignore.")
+                        .defineInRange("Max Ignored Players", 100, 1, 1000);
                 createCommands = builder.comment("Creates /shout, /whisper, and /emote (Roleplay chat can be used commandless!)")
                         .define("Create Distance Chat Commands", true);
                 redirectVanillaCommands = builder.comment("Capture and redirect vanilla the commands /say, /w, and /me (only if Create Commands is true!)")
                         .define("Redirect Vanilla Commands", false);
             builder.pop(); //Distance Chat Settings
 
+            //push a new category to the file
+            builder.comment("The load governor turns distance chat down to cheaper settings while the server is busy. Admins can see the current fidelity with /rpchat stats.")
+                    .push("Load Governor");
+                enableLoadGovernor = builder.comment("Slow distance chat down to cheaper settings when the server can't keep up, and speed it back up when it can.")
+                        .define("Enable Load Governor", true);
+                reducedFidelityMSPT = builder.comment("Average tick time (in milliseconds) at which muffling switches to whole words and muffle tiers are grouped into bands.")
+                        .defineInRange("Reduced Fidelity Tick Time", 40.0, 1.0, 1000.0);
+                minimalFidelityMSPT = builder.comment("Average tick time (in milliseconds) at which regular chat skips the muffled falloff range and walls stop muffling chat.")
+                        .defineInRange("Minimal Fidelity Tick Time", 48.0, 1.0, 1000.0);
+                fidelityHysteresisMSPT = builder.comment("How far (in milliseconds) the average tick time has to fall below a threshold before chat steps back up.")
+                        .defineInRange("Fidelity Hysteresis", 5.0, 0.0, 100.0);
+            builder.pop(); //Load Governor
+
+            //push a new category to the file
+            builder.comment("Scrollback remembers recent distance chat so players arriving mid-conversation can catch up.")
+                    .push("Scrollback");
+                //define the relevant settings to show up in this category
+                enableScrollback = builder.comment("Remember recent say, shout, and emote lines in each chunk-sized region.")
+                        .define("Enable Scrollback", false);
+                scrollbackLines = builder.comment("The most lines remembered in each region. Also the most lines replayed to a player at once.")
+                        .defineInRange("Scrollback Lines", 10, 1, 256);
+                scrollbackSeconds = builder.comment("Lines older than this many seconds are forgotten.")
+                        .defineInRange("Scrollback Seconds", 120, 1, 3600);
+                scrollbackMaxRegions = builder.comment("The most regions remembered at once. The region that has gone the longest without chat is forgotten first.")
+                        .defineInRange("Scrollback Max Regions", 1024, 1, 65536);
+                replayScrollbackOnLogin = builder.comment("Show players the recent nearby conversation when they log in.")
+                        .define("Replay on Login", true);
+                replayScrollbackOnTeleport = builder.comment("Show players the recent nearby conversation when they change dimensions or teleport with an ender pearl.")
+                        .define("Replay on Teleport", true);
+            builder.pop(); //Scrollback
+
+            //push a new category to the file
+            builder.comment("In-character languages. Players who know a language understand it, and everyone else hears gibberish.")
+                    .push("Languages");
+                enableLanguages = builder.comment("Let players speak in-character languages with /language.")
+                        .define("Enable Languages", false);
+                ArrayList<String> exampleLanguages = new ArrayList<>();
+                exampleLanguages.add("Elvish");
+                exampleLanguages.add("Dwarvish");
+                languages = builder.comment("The languages players can learn (up to 64). Players' languages are saved by their place in this list, so only add new languages to the end!")
+                        .defineList("Languages", exampleLanguages, obj -> obj instanceof String && !((String) obj).isEmpty() && ((String) obj).indexOf(' ') < 0);
+                languageCacheSize = builder.comment("How many made-up words to remember, so common words don't have to be made up again.")
+                        .defineInRange("Language Cache Size", 4096, 16, 65536);
+            builder.pop(); //Languages
+
+            //push a new category to the file
+            builder.comment("The word filter checks chat, shouts, whispers, emotes, broadcasts and missives for blocked words.")
+                    .push("Word Filter");
+                enableWordFilter = builder.comment("Check messages for the words in Filtered Words.")
+                        .define("Enable Word Filter", false);
+                filteredWords = builder.comment("The blocked words. Case doesn't matter.")
+                        .defineList("Filtered Words", new ArrayList<>(), obj -> obj instanceof String && !((String) obj).isEmpty());
+                filterAction = builder.comment("What to do with a message that has a blocked word. MASK replaces the word with *, BLOCK doesn't send the message, and LOG sends it but writes it to the server log.")
+                        .defineEnum("Filter Action", WordFilter.Action.MASK);
+                filterWholeWords = builder.comment("Only catch blocked words that stand on their own, and not ones inside longer words.")
+                        .define("Filter Whole Words Only", true);
+            builder.pop(); //Word Filter
+
+            //push a new category to the file
+            builder.comment("Broadcasts that go out on their own. Admins can also schedule them with /announce.")
+                    .push("Announcements");
+                //each entry has to start with a number of minutes, then a space, then the message
+                recurringBroadcasts = builder.comment("Broadcasts that go out over and over. Each one is the number of minutes between broadcasts, a space, and the message (like \"30 Remember to vote!\").")
+                        .defineList("Recurring Broadcasts", new ArrayList<>(), obj -> obj instanceof String && isRecurringBroadcast((String) obj));
+            builder.pop(); //Announcements
+
             //push a new category to the file
             builder.comment("Missives are an alternative to /mgs that sends messages over time.")
                     .push("Missive System");
@@ -179,6 +455,21 @@ public class ChatConfig {
                         .define("Missives Use Items", true);
                 missiveServerSideItemChecks = builder.comment("This keeps the task of checking items on the server, which can allow you to have missive items and deploy the mod server only. This can cause a performance hit to the server!")
                     .define("Missive Item Processing on Server", false);
+                missiveItemCheckTimeout = builder.comment("How long in seconds to wait for a player's client to check their missive items before giving up on the missive.")
+                        .defineInRange("Missive Item Check Timeout", 10, 1, 120);
+                missiveItemRule = builder.comment("How many consumable items a missive to several players uses up. PER_SEND uses one for the whole missive, and PER_RECIPIENT uses one for each player it goes to.")
+                        .defineEnum("Missive Item Rule", Missive.ItemRule.PER_SEND);
+                maxMissivesPerSender = builder.comment("The most missives one sender can have on their way at once. Each player a missive goes to counts as one.")
+                        .defineInRange("Max Missives Per Sender", 20, 1, 1000);
+                maxQueuedMissives = builder.comment("The most missives that can be on their way on the whole server at once.")
+                        .defineInRange("Max Queued Missives", 2000, 1, 100000);
+                //post offices and routes are checked more closely when the network is built (see PostNetwork.bake)
+                postOffices = builder.comment("Post offices missives can travel between. Each one is a name, a dimension, and x y z (like \"town minecraft:overworld 100 64 -200\").")
+                        .defineList("Post Offices", new ArrayList<>(), obj -> obj instanceof String);
+                postRoutes = builder.comment("Routes between two post offices in the same dimension. Each one is two post office names and how many times faster than normal missives travel on it (like \"town castle 2\").")
+                        .defineList("Post Routes", new ArrayList<>(), obj -> obj instanceof String);
+                portalRoutes = builder.comment("Routes with a set travel time, usually between post offices in different dimensions. Each one is two post office names and the seconds it takes (like \"town netherpost 10\").")
+                        .defineList("Portal Routes", new ArrayList<>(), obj -> obj instanceof String);
                 ArrayList<String> exampleCons = new ArrayList<>();
                 exampleCons.add("minecraft:paper");
                 missiveConsumableItems = builder.comment("Missives use up one of these, unless holding a catalyst. Order: held first then left to right. Use [] to not have any consumable items.")
@@ -189,6 +480,26 @@ public class ChatConfig {
                         .defineList("Catalyst Items", exampleCata, obj -> ResourceLocation.tryCreate((String)obj) != null);
             builder.pop(); //Missive System
 
+            //push a new category to the file
+            builder.comment("Federation lets missives travel between several servers, like a main world and event worlds behind a proxy. The servers share a spool folder. Changes here take effect when the server restarts.")
+                    .push("Federation");
+                enableFederation = builder.comment("Send missives to players on the other servers in the federation.")
+                        .define("Enable Federation", false);
+                federationServerName = builder.comment("The name of this server. Every server in the federation needs a different one, using only letters, numbers, - and _.")
+                        .define("Server Name", "main");
+                federationSpool = builder.comment("The spool folder every server in the federation shares. Relative paths start from the server folder.")
+                        .define("Spool Folder", "federation-spool");
+                federationPollSeconds = builder.comment("How often in seconds to send and collect missives from the other servers.")
+                        .defineInRange("Exchange Interval", 2, 1, 60);
+                federationRetrySeconds = builder.comment("How long in seconds to wait for another server to acknowledge missives before sending them again.")
+                        .defineInRange("Retry Interval", 30, 5, 3600);
+                federationTravelSeconds = builder.comment("How long in seconds a missive from another server takes to arrive once it gets here.")
+                        .defineInRange("Federation Travel Time", 30.0, 0.0, 86400.0);
+                //border regions are checked more closely when they're read (see BorderChat.bake)
+                borderRegions = builder.comment("Parts of the map another server has, for when one map is split between servers. Chat, shouts and emotes that reach into one are heard on that server too. Each one is the server name, a dimension, two corners x z x z, and the x z offset that turns this server's coordinates into the other server's (like \"east minecraft:overworld 10000 -5000 10500 5000 -10000 0\").")
+                        .defineList("Border Regions", new ArrayList<>(), obj -> obj instanceof String);
+            builder.pop(); //Federation
+
             //add a new category to the file
             builder.comment("Chat messages that start with these symbols are converted to shout, emotes, whispers, or broadcasts. Does not affect the /say command!")
                     .push("Chat Symbols");
@@ -218,8 +529,26 @@ public class ChatConfig {
                         .defineInRange("Broadcast Permission Level", 2, 0, Integer.MAX_VALUE);
                 tellPermissionLevel = builder.comment("Permission level required for players to be able to use the /tell, /msg, and /w vanilla commands, unless redirected")
                         .defineInRange("Tell Permission Level", 2, 0, Integer.MAX_VALUE);
+                languagePermissionLevel = builder.comment("Permission level required to teach players languages or make them forget languages with /language.")
+                        .defineInRange("Language Permission Level", 2, 0, Integer.MAX_VALUE);
+                mutePermissionLevel = builder.comment("Permission level required to mute and unmute players in distance chat with /chatmute.")
+                        .defineInRange("Mute Permission Level", 2, 0, Integer.MAX_VALUE);
+                statsPermissionLevel = builder.comment("Permission level required to see how Roleplay Chat is running with /rpchat stats.")
+                        .defineInRange("Stats Permission Level", 2, 0, Integer.MAX_VALUE);
             builder.pop(); //Permissions
 
         }
+
+        //isRecurringBroadcast checks that a recurring broadcast starts with a number of minutes greater than 0, then a space
+        private static boolean isRecurringBroadcast(String entry) {
+            final int separator = entry.indexOf(' ');
+            if (separator <= 0 || separator == entry.length() - 1)
+                return false;
+            try {
+                return Double.parseDouble(entry.substring(0, separator)) > 0;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
     }
 }
@@ -0,0 +1,73 @@
+package com.incobalt.roleplaychat;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.NetworkDirection;
+
+import java.util.UUID;
+
+/*
+    ClientCapabilities keeps track of which connected players have the mod on their client, which protocol version they
+    agreed on with the server, and what their client can do for us. The table is filled in by HandshakePacket after a
+    player logs in, and emptied when they log out.
+
+    Players that haven't finished the handshake (or never will, like vanilla clients) have no capabilities, so code
+    checking has() will always fall back to doing the work on the server for them.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class ClientCapabilities {
+    //capability flags. Each one is a single bit, so a client's capabilities fit in one int
+    //the client muffles distance chat itself (see LocalChatPacket)
+    public static final int LOCAL_CHAT = 1;
+    //the client can check missive item requirements for the server (see MissivePacket)
+    public static final int MISSIVE_ITEMS = 1 << 1;
+    //all of the capabilities this version of the mod has. Both sides send this in their handshake
+    public static final int SUPPORTED = LOCAL_CHAT | MISSIVE_ITEMS;
+
+    //the lookup table. fastutil's Object2IntOpenHashMap (which comes with Minecraft) stores the ints directly, so checking
+    //a player doesn't create any objects. The protocol version is kept in the top 16 bits, and the capabilities in the bottom 16
+    private static final Object2IntOpenHashMap<UUID> table = new Object2IntOpenHashMap<>();
+
+    //has tells us if a player's client can do something for us
+    //a player that isn't in the table gets 0 back, which has no capabilities
+    public static boolean has(PlayerEntity player, int capability) {
+        return (table.getInt(player.getUniqueID()) & capability) != 0;
+    }
+
+    //protocolOf tells us which protocol version the player's client agreed on, or 0 if the client doesn't have the mod
+    public static int protocolOf(PlayerEntity player) {
+        return table.getInt(player.getUniqueID()) >>> 16;
+    }
+
+    //record is called by HandshakePacket when a client answers the server's handshake
+    public static void record(UUID player, int protocolVersion, int capabilities) {
+        table.put(player, (protocolVersion << 16) | (capabilities & 0xFFFF));
+    }
+
+    //when a player logs in, greet their client if it has our channel. Vanilla clients (and Forge clients without the
+    //mod) can't read our packets, so they are left out of the table
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (!(event.getPlayer() instanceof ServerPlayerEntity))
+            return;
+        final ServerPlayerEntity player = (ServerPlayerEntity) event.getPlayer();
+        //forget anything left over from a previous connection, in case they reconnected with a different client
+        table.removeInt(player.getUniqueID());
+        if (ServerClientBridge.hasMod(player)) {
+            ServerClientBridge.INSTANCE.sendTo(new HandshakePacket(ServerClientBridge.PROTOCOL_VERSION, SUPPORTED),
+                    player.connection.getNetworkManager(), NetworkDirection.PLAY_TO_CLIENT);
+        }
+    }
+
+    //when a player logs out, their client is gone, so remove them from the table
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        table.removeInt(event.getPlayer().getUniqueID());
+    }
+}
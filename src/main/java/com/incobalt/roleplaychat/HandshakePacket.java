@@ -0,0 +1,72 @@
+package com.incobalt.roleplaychat;
+
+import com.incobalt.coreapi.CoreAPI;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.function.Supplier;
+
+/*
+    HandshakePacket is the first thing the server and a modded client say to each other. When a player with the mod logs
+    in, the server sends its protocol version and the things it can do (capabilities). The client answers with its own
+    protocol version and capabilities, and the server records what the two of them have in common in ClientCapabilities.
+    From then on, chat and missive code can check ClientCapabilities to decide whether to let the client help out or
+    to do the work on the server.
+ */
+public class HandshakePacket {
+    //the protocol version of whoever sent the packet
+    private final int protocolVersion;
+    //the capability flags of whoever sent the packet (see ClientCapabilities)
+    private final int capabilities;
+
+    public HandshakePacket(int protocolVersion, int capabilities) {
+        this.protocolVersion = protocolVersion;
+        this.capabilities = capabilities;
+    }
+
+    //this constructor is used by the ServerClientBridge (our packet handler) to read the packet
+    //*order is important!*
+    public HandshakePacket(PacketBuffer buf) {
+        //the read order *must* match the write order!
+        protocolVersion = buf.readVarInt();
+        capabilities = buf.readVarInt();
+    }
+
+    //encode is used by the ServerClientBridge (our packet handler) to prepare a packet for sending
+    //*order is important!*
+    public void encode(PacketBuffer buf) {
+        //the write order *must* match the read order!
+        buf.writeVarInt(protocolVersion);
+        buf.writeVarInt(capabilities);
+    }
+
+    //handler is used by ServerClientBridge (our packet handler) when it receives a packet of this type
+    public void handler(Supplier<NetworkEvent.Context> context) {
+        //get the context from the supplier
+        final NetworkEvent.Context ctx = context.get();
+        //you can't actually touch many game objects in the handler itself, so use enqueueWork to have the machine do something when ready
+        ctx.enqueueWork(() -> {
+            if (ctx.getDirection().getReceptionSide().isClient() && ctx.getDirection().getOriginationSide().isServer()) {
+                //the server is greeting us. Answer with our own version and what we can do. reply() sends the packet back
+                //the way the server's packet came in
+                ServerClientBridge.INSTANCE.reply(new HandshakePacket(ServerClientBridge.PROTOCOL_VERSION, ClientCapabilities.SUPPORTED), ctx);
+            } else if (ctx.getDirection().getReceptionSide().isServer() && ctx.getDirection().getOriginationSide().isClient()) {
+                //the client answered our greeting. We must avoid referencing ServerPlayerEntity in the packet, so we use
+                //the proxy in incobalt's Core API to get the player (see MissivePacket.java for why)
+                final PlayerEntity player = CoreAPI.proxy.getEntityFromContext(context);
+                if (player == null) {
+                    ctx.setPacketHandled(true);
+                    return;
+                }
+                //both sides have to be able to speak a version, so we use the lower of the two versions. Capabilities
+                //work the same way: only the things both sides can do are kept
+                ClientCapabilities.record(player.getUniqueID(),
+                        Math.min(protocolVersion, ServerClientBridge.PROTOCOL_VERSION),
+                        capabilities & ClientCapabilities.SUPPORTED);
+            }
+            //setPacketHandled(true) tells the handler that the packet is finished
+            ctx.setPacketHandled(true);
+        });
+    }
+}
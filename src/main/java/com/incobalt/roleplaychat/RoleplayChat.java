@@ -10,6 +10,7 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.minecraft.command.CommandSource;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.CommandEvent;
 import net.minecraftforge.event.ServerChatEvent;
@@ -109,6 +110,10 @@ public class RoleplayChat
             aliases.add("bc");
             //add the broadcast command to the the register. We'll register it with the dispatcher in a bit.
             commandRegister.add(new BroadcastCommand(aliases));
+            //announcements are broadcasts with extra options, so they go along with the broadcast command
+            aliases.clear();
+            aliases.add("announce");
+            commandRegister.add(new AnnounceCommand(aliases));
 
             //optionally add the say command to the register, if we're redirecting vanilla commands
             //if we don't do this, /say will send messages to the entire server!
@@ -139,6 +144,32 @@ public class RoleplayChat
             commandRegister.add(new MissiveCommand(aliases));
         }
 
+        //languages only change distance chat, so there's no point in /language without it
+        if(ChatConfig.enableDistanceChat && ChatConfig.enableLanguages){
+            aliases.clear();
+            aliases.add("language");
+            aliases.add("lang");
+            //add the command to the register
+            commandRegister.add(new LanguageCommand(aliases));
+        }
+
+        //ignoring and muting players only changes distance chat too
+        if(ChatConfig.enableDistanceChat){
+            aliases.clear();
+            aliases.add("ignore");
+            //add the command to the register
+            commandRegister.add(new IgnoreCommand(aliases));
+            aliases.clear();
+            aliases.add("chatmute");
+            //add the command to the register
+            commandRegister.add(new MuteCommand(aliases));
+        }
+
+        //the stats command is always there, so admins can check on the mod whatever parts of it are turned on
+        aliases.clear();
+        aliases.add("rpchat");
+        commandRegister.add(new StatsCommand(aliases));
+
         //register all the commands with the dispatcher. We use a base command class to do this.
         for(CommandBase command : commandRegister){
             command.registerCommand(dispatcher);
@@ -177,6 +208,20 @@ public class RoleplayChat
             event.setComponent(ChatUtils.toTextComponent(message));
         }
 
+        //check for blocked words once, before the message is sent anywhere. Every kind of chat symbol goes through here
+        final String filtered = WordFilter.filter(message, player.getCommandSource());
+        if(filtered == null){
+            //the message was blocked, and the player has been told why
+            event.setCanceled(true);
+            return;
+        }
+        if(!filtered.equals(message)){
+            message = filtered;
+            //in case the message ends up going through vanilla chat (like when distance chat is off), change that too
+            //"chat.type.text" is vanilla's "<name> message"
+            event.setComponent(new TranslationTextComponent("chat.type.text", player.getDisplayName(), message));
+        }
+
         //check first if we're using missives and if the message is a missive chat symbol
         if(ChatConfig.enableMissives && ChatConfig.useChatSymbols){
             // Chat symbols check the start of the message and compare it to the characters in the config.
@@ -203,7 +248,7 @@ public class RoleplayChat
             //config may be set to not use chat symbols, so we need to check for that
             if (!ChatConfig.useChatSymbols) {
                 //when we don't want to use chat symbols, then just send the message to distance chat say
-                ChatCommands.ProcessDistanceSay(message, player.getDisplayName().getFormattedText(), player.getPositionVec(), player.getServerWorld());
+                ChatCommands.ProcessDistanceSay(message, player.getUniqueID(), DisplayNames.of(player), player.getPositionVec(), player.getServerWorld());
                 //use event.setCanceled to stop further processing of the event.
                 event.setCanceled(true);
             } else {
@@ -214,7 +259,7 @@ public class RoleplayChat
                     //remove the symbol from the message! Technically, shoutCharacter is a string, so it could be more than one symbol, thus we need to remove that many characters
                     message = message.substring(ChatConfig.shoutCharacter.length());
                     //send the command to the shout function
-                    ChatCommands.ProcessShout(message, player.getDisplayName().getFormattedText(), player.getPositionVec(), player.getServerWorld());
+                    ChatCommands.ProcessShout(message, player.getUniqueID(), DisplayNames.of(player), player.getPositionVec(), player.getServerWorld());
                     //cancel the event so it doesn't process anymore
                     event.setCanceled(true);
                 } else if (message.startsWith(ChatConfig.emoteCharacter)) {
@@ -222,7 +267,7 @@ public class RoleplayChat
                     //remove the symbol from the message! Technically, emoteCharacter is a string, so it could be more than one symbol, thus we need to remove that many characters
                     message = message.substring(ChatConfig.emoteCharacter.length());
                     //send the command to the emote function
-                    ChatCommands.ProcessEmote(message, player.getDisplayName().getFormattedText(), player.getPositionVec(), player.getServerWorld());
+                    ChatCommands.ProcessEmote(message, player.getUniqueID(), DisplayNames.of(player), player.getPositionVec(), player.getServerWorld());
                     //cancel the event so it doesn't process anymore
                     event.setCanceled(true);
                 } else if (message.startsWith(ChatConfig.whisperCharacter)) {
@@ -230,7 +275,7 @@ public class RoleplayChat
                     //remove the symbol from the message! Technically, whisperCharacter is a string, so it could be more than one symbol, thus we need to remove that many characters
                     message = message.substring(ChatConfig.whisperCharacter.length());
                     //send the command to the whisper function
-                    ChatCommands.ProcessWhisper(message, player.getDisplayName().getFormattedText(), player.getPositionVec(), player.getServerWorld());
+                    ChatCommands.ProcessWhisper(message, player.getUniqueID(), DisplayNames.of(player), player.getPositionVec(), player.getServerWorld());
                     //cancel the event so it doesn't process anymore
                     event.setCanceled(true);
                 } else if (message.startsWith(ChatConfig.broadcastCharacter)) {
@@ -250,7 +295,7 @@ public class RoleplayChat
                     event.setCanceled(true);
                 } else {
                     //if we get to here, then the message just needs to go to the distance say function
-                    ChatCommands.ProcessDistanceSay(message, player.getDisplayName().getFormattedText(), player.getPositionVec(), player.getServerWorld());
+                    ChatCommands.ProcessDistanceSay(message, player.getUniqueID(), DisplayNames.of(player), player.getPositionVec(), player.getServerWorld());
                     //cancel the event so it doesn't process anymore
                     event.setCanceled(true);
                 }
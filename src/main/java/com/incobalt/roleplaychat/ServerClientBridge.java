@@ -1,6 +1,8 @@
 package com.incobalt.roleplaychat;
 
+import com.incobalt.roleplaychat.chat.LocalChatPacket;
 import com.incobalt.roleplaychat.missive.MissivePacket;
+import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -14,32 +16,64 @@ import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
     We use this mostly for checking Missive item requirements that could be quite expensive on a server,
     so we offload the heavy lifting to the client. This helps keep server load down, since server load can cause the
     server to hang while processing, which would cause server lag for each player!
+    It also carries distance chat to clients with the mod, so they can muffle it themselves (see LocalChatPacket.java).
  */
 
 @Mod.EventBusSubscriber(modid = "incobalts_roleplaychat", bus = Mod.EventBusSubscriber.Bus.MOD)
 public class ServerClientBridge {
-    //PROTOCOL_VERSION here is used to verify that the client and server are using the same version
-    private static final String PROTOCOL_VERSION = "1";
+    //PROTOCOL_VERSION here is used to tell the client and server which version of our packets each of them speaks.
+    //version 2 added LocalChatPacket, version 3 added HandshakePacket, version 4 changed MissivePacket to carry batches
+    //of request ids, version 5 added the word mode to LocalChatPacket, and version 6 moved HandshakePacket after the other
+    //messages, so their ids are the same as in versions 1 and 2. Bump this whenever a message is added or changed!
+    public static final int PROTOCOL_VERSION = 6;
+    //MIN_PROTOCOL_VERSION is the oldest version we can still talk to. Versions 3 to 5 gave HandshakePacket the first id,
+    //so every message id means something else to them. Anything older than this isn't allowed to connect with the mod.
+    public static final int MIN_PROTOCOL_VERSION = 6;
     //SimpleChannel is the actual packet handler. It requires a ResourceLocation id (we use "incobalts_roleplaychat:main" here
-    //the second argument is a predicate that determines what version the client or server is using (PROTOCOL_VERSION here)
-    //the third argument is how to test if the server has the proper version. In this case, we always want the server to be
-    //running a Forge server with the mod installed
-    //the last argument is how to test if the client has the proper version. We use a lambda to check it against
-    //PROTOCOL_VERSION, NetworkRegistry.ABSENT, and NetworkRegistry.ACCEPTVANILLA. ABSENT is for forge clients without
-    //this mod, and ACCEPTVANILLA is non-forge clients. Since the client could not be running the mod at all, we want both.
+    //the second argument is a supplier that gives the version this side is using (PROTOCOL_VERSION here)
+    //the third argument is how the client tests the server's version. In this case, we always want the server to be
+    //running a Forge server with the mod installed, at any version we can negotiate with
+    //the last argument is how the server tests the client's version. We accept any version we can negotiate with, as well as
+    //NetworkRegistry.ABSENT and NetworkRegistry.ACCEPTVANILLA. ABSENT is for forge clients without this mod, and
+    //ACCEPTVANILLA is non-forge clients. Since the client could not be running the mod at all, we want both.
+    //the actual version both sides use is worked out in the handshake (see HandshakePacket.java)
     public static final SimpleChannel INSTANCE = NetworkRegistry.newSimpleChannel(
             new ResourceLocation("incobalts_roleplaychat", "main"),
-            () -> PROTOCOL_VERSION,
-            PROTOCOL_VERSION::equals,
-            ver -> { return ver.equals(PROTOCOL_VERSION) || ver.equals(NetworkRegistry.ABSENT) || ver.equals(NetworkRegistry.ACCEPTVANILLA); }
+            () -> Integer.toString(PROTOCOL_VERSION),
+            ServerClientBridge::canNegotiate,
+            ver -> { return canNegotiate(ver) || ver.equals(NetworkRegistry.ABSENT) || ver.equals(NetworkRegistry.ACCEPTVANILLA); }
     );
 
+    //canNegotiate tests if a version string from the other side is one we can agree on a protocol with.
+    //newer versions are allowed too, because the handshake will settle on the lower of the two versions
+    private static boolean canNegotiate(String ver) {
+        try {
+            return Integer.parseInt(ver) >= MIN_PROTOCOL_VERSION;
+        } catch (NumberFormatException e) {
+            //ABSENT, ACCEPTVANILLA, or something we don't understand
+            return false;
+        }
+    }
+
     //we call registerMessages when the server starts, or when the client loads. It sets up the kinds of messages we can transfer
     public static void registerMessages(){
         //messages need a unique ID, so we use an int here to increment
+        //IMPORTANT! Newer versions must only add messages to the end of this list, so that the IDs stay the same for
+        //every version we can negotiate with
         int id = 0;
         //registers the MissivePacket message which transfers data about a missive to be sent (see MissivePacket.java)
         INSTANCE.registerMessage(id++, MissivePacket.class, MissivePacket::encode, MissivePacket::new, MissivePacket::handler);
+        //registers the LocalChatPacket message which lets modded clients muffle distance chat themselves (see LocalChatPacket.java)
+        INSTANCE.registerMessage(id++, LocalChatPacket.class, LocalChatPacket::encode, LocalChatPacket::new, LocalChatPacket::handler);
+        //registers the HandshakePacket message which tells both sides what the other can do (see HandshakePacket.java)
+        INSTANCE.registerMessage(id++, HandshakePacket.class, HandshakePacket::encode, HandshakePacket::new, HandshakePacket::handler);
+    }
+
+    //hasMod tells us if a player's client has this mod (and this channel) installed. Vanilla clients and Forge clients
+    //without the mod connect as ACCEPTVANILLA or ABSENT, and can't read our packets.
+    //this is only used to decide whether to start a handshake. Everything else should check ClientCapabilities instead
+    public static boolean hasMod(ServerPlayerEntity player) {
+        return INSTANCE.isRemotePresent(player.connection.getNetworkManager());
     }
 
     //regester an event to occur during setup for both client and server
@@ -0,0 +1,199 @@
+package com.incobalt.roleplaychat.chat;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    AhoCorasick finds every one of a list of words in a piece of text in a single pass over the text. It builds a tree
+    of the words, letter by letter (a trie), and then adds "failure links" that say where to pick up in the tree when
+    the next letter doesn't match. Because of those links, the text is only ever read once, so finding matches takes
+    about the same time whether there are ten words to look for or ten thousand.
+
+    Matching ignores case. Words are stored in lower case, and the text is lowered one character at a time as it's read.
+
+    Words can be added and removed after the matcher is built (Mentions does this as players join and leave). Adding or
+    removing a word only changes that word's branch of the tree. The failure links are worked out again the next time the
+    matcher is used, so several changes in a row only cost one pass over the tree.
+ */
+public class AhoCorasick {
+    //the tree is stored in flat arrays, with node 0 as the root. For each node:
+    //the letters it has children for (sorted, so we can binary search them) and the child for each letter
+    private char[][] letters;
+    private int[][] children;
+    //where to go when the next letter has no child here
+    private int[] failure;
+    //the length of the word that ends at this node, or 0 if no word ends here
+    private int[] wordLength;
+    //the next node down the failure links (not counting this one) where a word ends, or -1 if there isn't one. Following
+    //these from a node finds every shorter word that also ends at the same place in the text
+    private int[] output;
+    private int nodeCount;
+    //how many words are in the matcher
+    private int wordCount;
+    //true when words have been added or removed since the failure links were last worked out
+    private boolean dirty;
+
+    //build the matcher from a list of words. Empty words are skipped
+    public AhoCorasick(List<String> words) {
+        letters = new char[16][];
+        children = new int[16][];
+        wordLength = new int[16];
+        failure = new int[16];
+        output = new int[16];
+        nodeCount = 1;
+        letters[0] = new char[0];
+        children[0] = new int[0];
+        for (String word : words) {
+            add(word);
+        }
+        //work out the failure links now, so the first message doesn't have to
+        link();
+    }
+
+    //add puts a word into the matcher. Adding a word that's already there does nothing
+    public void add(String word) {
+        final String lower = word.toLowerCase(Locale.ROOT);
+        if (lower.isEmpty())
+            return;
+        int node = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            int next = child(node, lower.charAt(i));
+            if (next < 0) {
+                next = addChild(node, lower.charAt(i));
+            }
+            node = next;
+        }
+        if (wordLength[node] == 0) {
+            wordLength[node] = lower.length();
+            wordCount++;
+            dirty = true;
+        }
+    }
+
+    //remove takes a word out of the matcher. The word's nodes are kept, since the same word (like the name of a player
+    //who logs out and back in) is likely to be added again
+    public void remove(String word) {
+        final String lower = word.toLowerCase(Locale.ROOT);
+        int node = 0;
+        for (int i = 0; i < lower.length() && node >= 0; i++) {
+            node = child(node, lower.charAt(i));
+        }
+        if (node > 0 && wordLength[node] != 0) {
+            wordLength[node] = 0;
+            wordCount--;
+            dirty = true;
+        }
+    }
+
+    //isEmpty is true when there are no words to look for
+    public boolean isEmpty() {
+        return wordCount == 0;
+    }
+
+    //link works out the failure links, one level of the tree at a time (breadth first). A node's failure link is the
+    //longest ending of its word that is also the start of some word in the tree
+    private void link() {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        output[0] = -1;
+        for (int c : children[0]) {
+            //the children of the root always fall back to the root, where no word ends
+            failure[c] = 0;
+            output[c] = -1;
+            queue.add(c);
+        }
+        while (!queue.isEmpty()) {
+            final int node = queue.poll();
+            for (int i = 0; i < letters[node].length; i++) {
+                final char letter = letters[node][i];
+                final int c = children[node][i];
+                //follow the parent's failure links until one of them can continue with this letter
+                int fall = failure[node];
+                while (fall != 0 && child(fall, letter) < 0) {
+                    fall = failure[fall];
+                }
+                final int target = child(fall, letter);
+                failure[c] = target >= 0 ? target : 0;
+                //if a word ends where the failure link points, it also ends here. If not, the failure node's own output
+                //link already points at the next one that does
+                output[c] = wordLength[failure[c]] > 0 ? failure[c] : output[failure[c]];
+                queue.add(c);
+            }
+        }
+        dirty = false;
+    }
+
+    /*
+        find runs the text through the matcher and tells the handler about every match, by where it starts and where it
+        ends (just past its last character). Where several words end at the same place, each one is reported, longest
+        first, so the handler can skip one (like a word inside a longer word) and still see the others. The handler can
+        return false to stop looking.
+     */
+    public void find(CharSequence text, MatchHandler handler) {
+        if (dirty) {
+            link();
+        }
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char letter = Character.toLowerCase(text.charAt(i));
+            //follow failure links until we find a node that can continue with this letter (or we're back at the root)
+            int next = child(node, letter);
+            while (next < 0 && node != 0) {
+                node = failure[node];
+                next = child(node, letter);
+            }
+            node = next < 0 ? 0 : next;
+            //the word ending at this node (if there is one), and then every shorter word ending here too
+            int match = wordLength[node] > 0 ? node : output[node];
+            while (match >= 0) {
+                if (!handler.onMatch(i + 1 - wordLength[match], i + 1))
+                    return;
+                match = output[match];
+            }
+        }
+    }
+
+    //child finds the child of a node for a letter, or gives back -1 if there isn't one
+    private int child(int node, char letter) {
+        final int index = Arrays.binarySearch(letters[node], letter);
+        return index >= 0 ? children[node][index] : -1;
+    }
+
+    //addChild makes a new node under the given node for a letter, keeping the letters in order
+    private int addChild(int node, char letter) {
+        if (nodeCount == letters.length) {
+            //out of room, so make the arrays twice as big
+            letters = Arrays.copyOf(letters, nodeCount * 2);
+            children = Arrays.copyOf(children, nodeCount * 2);
+            wordLength = Arrays.copyOf(wordLength, nodeCount * 2);
+            failure = Arrays.copyOf(failure, nodeCount * 2);
+            output = Arrays.copyOf(output, nodeCount * 2);
+        }
+        final int created = nodeCount++;
+        letters[created] = new char[0];
+        children[created] = new int[0];
+
+        //insert the letter where binarySearch says it belongs
+        final int at = -(Arrays.binarySearch(letters[node], letter) + 1);
+        final char[] oldLetters = letters[node];
+        final int[] oldChildren = children[node];
+        final char[] newLetters = new char[oldLetters.length + 1];
+        final int[] newChildren = new int[oldChildren.length + 1];
+        System.arraycopy(oldLetters, 0, newLetters, 0, at);
+        System.arraycopy(oldChildren, 0, newChildren, 0, at);
+        newLetters[at] = letter;
+        newChildren[at] = created;
+        System.arraycopy(oldLetters, at, newLetters, at + 1, oldLetters.length - at);
+        System.arraycopy(oldChildren, at, newChildren, at + 1, oldChildren.length - at);
+        letters[node] = newLetters;
+        children[node] = newChildren;
+        return created;
+    }
+
+    //MatchHandler is told about each match find() comes across
+    public interface MatchHandler {
+        //return false to stop looking for more matches
+        boolean onMatch(int start, int end);
+    }
+}
@@ -0,0 +1,143 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.coreapi.commands.CommandBase;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.arguments.DimensionArgument;
+import net.minecraft.command.arguments.MessageArgument;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    AnnounceCommand is the command class that registers /announce, for admins. It's /broadcast with extra options:
+    /announce dimension <dimension> <message> broadcasts only to players in one dimension
+    /announce permission <level> <message> broadcasts only to players with at least that permission level
+    /announce in <seconds> <message> broadcasts once, after a while
+    /announce every <seconds> <message> broadcasts over and over
+    /announce list shows the waiting announcements, and /announce cancel <number> stops one
+    These are separate from /broadcast so that a broadcast that starts with a word like "in" still works as it always has.
+    Waiting announcements are kept in Announcements
+
+    AnnounceCommand extends CommandBase, which means it must implement a constructor and registerCommand()
+ */
+public class AnnounceCommand extends CommandBase {
+
+    //NOTE: CommandBase provides the variable String[] aliases
+
+    //constructor. Must match the constructor in CommandBase
+    public AnnounceCommand(ArrayList<String> a) {
+        //The constructor only needs to call super(a) because CommandBase does the work
+        super(a);
+    }
+
+    //the main part of this class. This registers the command with Minecraft's command dispatcher
+    public void registerCommand(CommandDispatcher<CommandSource> dispatcher){
+        //let the log know what we're doing. With commands, it's helpful to do this for mod conflict problems
+        CoreAPI.LOGGER.info("Registering Announce Command");
+
+        //loop through the aliases to register
+        for(String a : aliases) {
+            //announcements use the same permission level as /broadcast
+            LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
+                    .requires(source -> source.hasPermissionLevel(ChatConfig.broadcastPermissionLevel))
+                    .then(Commands.literal("dimension")
+                            .then(Commands.argument("dimension", DimensionArgument.getDimension())
+                                    .then(Commands.argument("message", MessageArgument.message())
+                                            .executes(ctx -> announce(ctx, DimensionArgument.getDimensionArgument(ctx, "dimension"), 0, 0, 0)))))
+                    .then(Commands.literal("permission")
+                            .then(Commands.argument("level", IntegerArgumentType.integer(0, 4))
+                                    .then(Commands.argument("message", MessageArgument.message())
+                                            .executes(ctx -> announce(ctx, null, IntegerArgumentType.getInteger(ctx, "level"), 0, 0)))))
+                    .then(Commands.literal("in")
+                            .then(Commands.argument("seconds", IntegerArgumentType.integer(1))
+                                    .then(Commands.argument("message", MessageArgument.message())
+                                            .executes(ctx -> announce(ctx, null, 0, IntegerArgumentType.getInteger(ctx, "seconds") * 20, 0)))))
+                    .then(Commands.literal("every")
+                            .then(Commands.argument("seconds", IntegerArgumentType.integer(10))
+                                    .then(Commands.argument("message", MessageArgument.message())
+                                            .executes(ctx -> {
+                                                final int interval = IntegerArgumentType.getInteger(ctx, "seconds") * 20;
+                                                return announce(ctx, null, 0, interval, interval);
+                                            }))))
+                    .then(Commands.literal("list")
+                            .executes(ctx -> list(ctx.getSource())))
+                    .then(Commands.literal("cancel")
+                            .then(Commands.argument("number", IntegerArgumentType.integer(1))
+                                    .executes(ctx -> cancel(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "number")))));
+            //this is an important line! This actually puts your command into the game, registering it with the Minecraft command dispatcher
+            dispatcher.register(commandLiteral);
+        }
+    }
+
+    //announce sends the message now (delay = 0), or schedules it for later
+    private int announce(CommandContext<CommandSource> ctx, DimensionType dimension, int permissionLevel, int delay, int interval) throws CommandSyntaxException {
+        final CommandSource source = ctx.getSource();
+        //this command only executes on the server, so don't bother if we're on a remote machine (a client is a remote machine)
+        if (source.getWorld().isRemote)
+            return 0;
+        String message = MessageArgument.getMessage(ctx, "message").getFormattedText();
+        //color permissions might be different from broadcast permission, so test for it and replace & with  if the source has that permission level
+        if (source.hasPermissionLevel(ChatConfig.colorPermissionLevel)) {
+            message = message.replace('&', '');
+        }
+        //check for blocked words before the message goes anywhere. filter gives back null if the message shouldn't be sent
+        message = WordFilter.filter(message, source);
+        if (message == null)
+            return 0;
+        if (delay == 0) {
+            ChatCommands.ProcessBroadcast(message, source.getWorld(), dimension, permissionLevel);
+            return Command.SINGLE_SUCCESS;
+        }
+        final int id = Announcements.schedule(message, dimension, permissionLevel, delay, interval);
+        source.sendFeedback(ChatUtils.toTextComponent("Announcement #" + id + " scheduled."), true);
+        return id;
+    }
+
+    //list shows the admin the waiting announcements
+    private int list(CommandSource source) {
+        final List<Announcements.Announcement> waiting = Announcements.waiting();
+        if (waiting.isEmpty()) {
+            source.sendFeedback(ChatUtils.toTextComponent("There are no waiting announcements."), false);
+            return 0;
+        }
+        for (Announcements.Announcement announcement : waiting) {
+            StringBuilder line = new StringBuilder("#").append(announcement.id)
+                    .append(" in ").append(Announcements.ticksUntil(announcement) / 20).append("s");
+            if (announcement.interval > 0) {
+                line.append(", every ").append(announcement.interval / 20).append("s");
+            }
+            if (announcement.dimension != null) {
+                final ResourceLocation name = DimensionType.getKey(announcement.dimension);
+                line.append(", in ").append(name);
+            }
+            if (announcement.permissionLevel > 0) {
+                line.append(", level ").append(announcement.permissionLevel).append("+");
+            }
+            line.append(": r").append(announcement.msg);
+            source.sendFeedback(ChatUtils.toTextComponent(line.toString()), false);
+        }
+        return waiting.size();
+    }
+
+    //cancel stops a waiting announcement
+    private int cancel(CommandSource source, int id) {
+        if (!Announcements.cancel(id)) {
+            source.sendErrorMessage(ChatUtils.toTextComponent("There's no waiting announcement #" + id + "."));
+            return 0;
+        }
+        source.sendFeedback(ChatUtils.toTextComponent("Announcement #" + id + " cancelled."), true);
+        return Command.SINGLE_SUCCESS;
+    }
+}
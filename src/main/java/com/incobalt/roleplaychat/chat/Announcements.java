@@ -0,0 +1,144 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+    Announcements are broadcasts that go out later, once or over and over (like "Remember to vote!" every half hour).
+    Admins make them with /announce, and recurring ones can also be listed in the config.
+
+    They're kept in a PriorityQueue sorted by the tick they're due on, so the next one due is always at the front. Each
+    tick we only look at the front of the queue, so waiting announcements cost nothing until one is actually due, however
+    many there are. A recurring announcement is put back in the queue with its next due tick after it goes out.
+
+    Announcements made with /announce only last until the server stops.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Announcements {
+    //the waiting announcements, soonest first
+    private static final PriorityQueue<Announcement> queue = new PriorityQueue<>(Comparator.comparingLong(a -> a.due));
+    //the number given to the next announcement, so admins can cancel it
+    private static int nextID = 1;
+
+    //schedule adds an announcement that goes out delay ticks from now, and then every interval ticks (or only once if
+    //interval is 0). It gives back the announcement's number
+    public static int schedule(String msg, DimensionType dimension, int permissionLevel, int delay, int interval) {
+        final Announcement announcement = new Announcement(nextID++, msg, dimension, permissionLevel, now() + delay, interval, false);
+        queue.add(announcement);
+        return announcement.id;
+    }
+
+    //cancel takes an announcement out of the queue by its number. It gives back false if there isn't one by that number
+    public static boolean cancel(int id) {
+        return queue.removeIf(a -> a.id == id);
+    }
+
+    //waiting gives back the waiting announcements, soonest first
+    public static List<Announcement> waiting() {
+        final List<Announcement> list = new ArrayList<>(queue);
+        list.sort(queue.comparator());
+        return list;
+    }
+
+    //ticksUntil gives how many ticks until an announcement goes out
+    public static long ticksUntil(Announcement announcement) {
+        return Math.max(0, announcement.due - now());
+    }
+
+    /*
+        bake is called by ChatConfig.bakeConfig to pick up the recurring broadcasts listed in the config. Each entry is the
+        number of minutes between broadcasts, a space, and the message. The old config announcements are replaced, and the
+        ones made with /announce are kept.
+     */
+    public static void bake() {
+        queue.removeIf(a -> a.fromConfig);
+        for (String entry : ChatConfig.recurringBroadcasts) {
+            final int separator = entry.indexOf(' ');
+            //the config checks the format, so this is just a precaution
+            if (separator < 0)
+                continue;
+            final int interval;
+            try {
+                interval = (int) Math.round(Double.parseDouble(entry.substring(0, separator)) * 60 * 20);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (interval <= 0)
+                continue;
+            final String msg = entry.substring(separator + 1).trim();
+            queue.add(new Announcement(nextID++, msg, null, 0, now() + interval, interval, true));
+        }
+    }
+
+    //ServerTickEvent fires every tick. Only the front of the queue is looked at, so this is very cheap when nothing is due
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || queue.isEmpty())
+            return;
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        final long tick = server.getTickCounter();
+        //more than one announcement can be due on the same tick
+        while (!queue.isEmpty() && queue.peek().due <= tick) {
+            final Announcement announcement = queue.poll();
+            //broadcasts need a world to come from. The overworld is always loaded
+            ChatCommands.ProcessBroadcast(announcement.msg, server.getWorld(DimensionType.OVERWORLD), announcement.dimension, announcement.permissionLevel);
+            if (announcement.interval > 0) {
+                announcement.due = tick + announcement.interval;
+                queue.add(announcement);
+            }
+        }
+    }
+
+    //the tick counter starts over with each server, so throw away the queue when the server stops. The config ones are
+    //added back when the config is loaded for the next server
+    @SubscribeEvent
+    public static void onServerStopping(FMLServerStoppingEvent event) {
+        queue.clear();
+    }
+
+    //now gives the server's current tick, or 0 if the server hasn't started yet (like when the config is first loaded)
+    private static long now() {
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        return server != null ? server.getTickCounter() : 0;
+    }
+
+    //Announcement is one waiting broadcast
+    public static class Announcement {
+        public final int id;
+        public final String msg;
+        //the dimension the broadcast is limited to, or null for every dimension
+        public final DimensionType dimension;
+        //the permission level needed to hear it, or 0 for everyone
+        public final int permissionLevel;
+        //the tick it's due on
+        private long due;
+        //the ticks between broadcasts, or 0 if it only goes out once
+        public final int interval;
+        //true if it came from the config, so it can be replaced when the config changes
+        private final boolean fromConfig;
+
+        private Announcement(int id, String msg, DimensionType dimension, int permissionLevel, long due, int interval, boolean fromConfig) {
+            this.id = id;
+            this.msg = msg;
+            this.dimension = dimension;
+            this.permissionLevel = permissionLevel;
+            this.due = due;
+            this.interval = interval;
+            this.fromConfig = fromConfig;
+        }
+    }
+}
@@ -71,6 +71,10 @@ public class BroadcastCommand extends CommandBase {
                                     if(source.hasPermissionLevel(ChatConfig.colorPermissionLevel)) {
                                             message = message.replace('&', '');
                                     }
+                                    //check for blocked words before the message goes anywhere. filter gives back null if the message shouldn't be sent
+                                    message = WordFilter.filter(message, source);
+                                    if(message == null)
+                                        return 0;
                                     //send the command to be executed. The execution for these commands are kept in a central place for ease of access
                                     ChatCommands.ProcessBroadcast(message, source.getWorld());
                                     //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
@@ -0,0 +1,60 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+
+/*
+    ChatChannel names the different kinds of distance chat that ChatCommands sends out. Storing a channel instead of a
+    fully formatted line lets other systems (like the scrollback) keep the raw text and rebuild the line when needed.
+    The ordinal of each channel is stored as a byte, so only add new channels to the end of the list!
+ */
+public enum ChatChannel {
+    SAY,
+    SHOUT,
+    EMOTE,
+    WHISPER;
+
+    //values() creates a new array every time it is called, so we keep a copy around for turning bytes back into channels
+    private static final ChatChannel[] CHANNELS = values();
+
+    //turns a stored byte back into a channel. Anything we don't know about is treated as regular speech
+    public static ChatChannel fromByte(byte b) {
+        if (b < 0 || b >= CHANNELS.length)
+            return SAY;
+        return CHANNELS[b];
+    }
+
+    //turns the channel into a byte for compact storage
+    public byte toByte() {
+        return (byte) ordinal();
+    }
+
+    //hearingRange is the range (in blocks) a player needs to be in to hear this channel clearly.
+    //these match the ranges used in ChatCommands, so if those change, these need to change too!
+    public double hearingRange() {
+        switch (this) {
+            case SHOUT:
+                //shouts are three times the distance chat range
+                return ChatConfig.distanceChatRange * 3.0;
+            case WHISPER:
+                return ChatConfig.whisperRange;
+            default:
+                //say and emote are both clear up to the distance chat range
+                return ChatConfig.distanceChatRange;
+        }
+    }
+
+    //format builds the line a player would see for this channel if they heard it clearly.
+    //this mirrors the formatting in ChatCommands so that rebuilt lines look the same as the original ones
+    public String format(String displayName, String msg) {
+        switch (this) {
+            case SHOUT:
+                return "l" + displayName + " shouts: " + msg;
+            case EMOTE:
+                return "7o*" + displayName + " " + msg;
+            case WHISPER:
+                return "7o" + displayName + " whispers: " + msg;
+            default:
+                return displayName + ": " + msg;
+        }
+    }
+}
@@ -2,13 +2,21 @@ package com.incobalt.roleplaychat.chat;
 
 import com.incobalt.coreapi.chat.ChatUtils;
 import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.ClientCapabilities;
+import com.incobalt.roleplaychat.federation.BorderChat;
+import net.minecraft.command.CommandSource;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.play.server.SChatPacket;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.text.ChatType;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.world.dimension.DimensionType;
 import net.minecraft.world.server.ServerWorld;
 
 import java.util.List;
-import java.util.Random;
+import java.util.UUID;
 
 /*
     ChatCommands is the place where all the chat processing happens. All of the Roleplay Chat features are implemented here.
@@ -24,28 +32,37 @@ public class ChatCommands {
         This function gathers players in a configurable radius around the sender and sends the chat message only to them.
         For players outside of this range, message readability becomes worse until it is completely unreadable.
         Players more than twice the range away don't see any form of the message.
+        senderID is the UUID of the entity that sent the message, or null if it didn't come from an entity.
 
         This simulates a local, audible range of chat.
      */
-    public static void ProcessDistanceSay(String msg, String displayName, Vec3d pos, ServerWorld world) {
+    public static void ProcessDistanceSay(String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world) {
+        //every message gets its own seed, worked out from the message id and the sender (see Muffler.seedFor)
+        ProcessDistanceSay(msg, senderID, displayName, pos, world, Muffler.seedFor(Muffler.nextMessageID(), senderID));
+    }
+
+    /*
+        This version of ProcessDistanceSay lets you pick the muffle seed yourself. The same message sent with the same seed
+        is always muffled the same way, which is handy for replaying chat or checking the output. The seed is also sent to
+        modded clients so they muffle the message the same way the server would.
+     */
+    public static void ProcessDistanceSay(String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world, long seed) {
         //this function only operates on the server, so ensure that we're not on a remote machine (client)
         //realistically, since we've requested a ServerWorld, this should never be true, but this is just a precaution
         if (world.isRemote)
             return;
+        //muted players can't be heard at all
+        if (Ignores.stopMuted(senderID, world))
+            return;
 
-        //we use twice the chat range here to create a falloff range beyond the fully clear range
-        final double chatDistance = ChatConfig.distanceChatRange * 2;
+        //we use twice the chat range here to create a falloff range beyond the fully clear range. When the server is
+        //too busy, the falloff range is skipped, and only players who can hear clearly get the message (see LoadGovernor)
+        final double chatDistance = LoadGovernor.skipFalloff() ? ChatConfig.distanceChatRange : ChatConfig.distanceChatRange * 2;
         //the distance functions used later calculates the squared distance for performance reasons, so we need to get a squared distance to compare against
         //players inside this range will see the message clearly
         final double sqDistance = ChatConfig.distanceChatRange * ChatConfig.distanceChatRange;
         //any player outside the above range but inside this range will see the message being muffled based on how far away
         final double sqChatDistance = chatDistance * chatDistance;
-        //we use random to give the muffled chat a little bit of variation.
-        //this could be removed, but then you would notice the first character of every message being clear until fully muffled
-        final Random random = new Random();
-
-        //startPos will start our muffleProgress off at a different position for each message, giving a little bit of a variation
-        final double startPos = random.nextDouble() * sqChatDistance;
 
         //this gets all server players within a box around the chat source position. Boxes are faster than spheres in 3D.
         //an alternate way could be to just get the players from the server and compare their distances, but this could
@@ -61,114 +78,157 @@ public class ChatCommands {
                         pos.z + chatDistance
                 ));
 
-        //loop through all the players that we found and send messages as appropriate
-        for (ServerPlayerEntity p : players) {
-            //get the *squared* distance between the player and the source position. The distance formula for 3D objects is:
+        //the speaker might be speaking an in-character language (see Languages). Listeners who know it hear the message
+        //(with the language's name in front), and everyone else hears gibberish. Either way, there are at most two
+        //versions of the message, so everything below is built once per version. Chat from across a border (see
+        //BorderChat) was already turned into what a stranger would hear, so it's never garbled again
+        final int language = BorderChat.mirroring() ? Languages.NONE : Languages.speakingOf(senderID);
+        final String[] versions = language == Languages.NONE
+                ? new String[]{msg}
+                : new String[]{Languages.tag(language) + msg, Languages.tag(language) + Languages.garble(msg, language)};
+        //if the line carries across the border with another server, send it there too. Like scrollback, that's the
+        //version strangers hear (the last one)
+        BorderChat.export(ChatChannel.SAY, versions[versions.length - 1], senderID, displayName, pos, world, seed);
+
+        //everyone who hears a version clearly sees the same line, so build it once
+        final ITextComponent[] clearLines = new ITextComponent[versions.length];
+        //muffled text is the same for everyone at the same distance tier, so we only build it once per tier.
+        //tiers are whole blocks, so the farthest tier is the falloff range rounded up
+        final String[][] muffledByTier = new String[versions.length][(int) Math.ceil(chatDistance) + 1];
+        //get the message ready to be muffled. When muffling by word, this splits it into words once for every tier to use.
+        //the choice is made once, so it can't change partway through the message, and clients with the mod are told it
+        final boolean byWord = LoadGovernor.muffleByWord();
+        final Muffler.Prepared[] muffleTexts = new Muffler.Prepared[versions.length];
+        for (int v = 0; v < versions.length; v++) {
+            clearLines[v] = ChatUtils.toTextComponent(displayName + ": " + versions[v]);
+            muffleTexts[v] = Muffler.prepare(versions[v], byWord);
+        }
+        //look for the names of online players in the message. Mentioned players who hear it clearly (and understand it)
+        //get a line with their name highlighted instead of the shared one. That line is only built if it's needed
+        final Mentions.Found mentioned = Mentions.find(msg);
+        ITextComponent mentionLine = null;
+
+        //players with the mod can get the compact packet and do the muffling themselves (see LocalChatPacket)
+        final boolean[] clientMuffle = new boolean[players.size()];
+        //which version of the message each player gets. 0 is the one they understand, 1 is gibberish
+        final int[] heard = new int[players.size()];
+        for (int i = 0; i < clientMuffle.length; i++) {
+            //clients older than the current layout of LocalChatPacket can't connect at all (see ServerClientBridge), so the
+            //capability is all we need to check
+            clientMuffle[i] = ChatConfig.clientSideMuffle && ClientCapabilities.has(players.get(i), ClientCapabilities.LOCAL_CHAT);
+            heard[i] = Languages.knows(players.get(i), language) ? 0 : 1;
+        }
+        //walls between the speaker and a listener make the listener seem farther away (see Occlusion). Checking for walls
+        //means looking at blocks, which can only be done here on the server thread
+        double[] extraDistances = null;
+        if (LoadGovernor.checkWalls()) {
+            Occlusion.beginMessage();
+            extraDistances = new double[players.size()];
+            for (int i = 0; i < extraDistances.length; i++) {
+                extraDistances[i] = Occlusion.extraDistance(world, pos, players.get(i));
+            }
+        }
+
+        //for a very big crowd, work out the tiers and build the muffled text on other cores (see MuffleRenderer).
+        //the lines should come out the same either way (see MuffleRenderer), this is only about how fast we get them
+        int[] tiers = null;
+        if (MuffleRenderer.shouldRunParallel(players.size())) {
+            //the helper threads can't touch the players themselves, so copy out what they need here
+            final double[] positions = new double[players.size() * 3];
+            for (int i = 0; i < players.size(); i++) {
+                final ServerPlayerEntity p = players.get(i);
+                positions[i * 3] = p.getPosX();
+                positions[i * 3 + 1] = p.getPosY();
+                positions[i * 3 + 2] = p.getPosZ();
+            }
+            //a player's tier doesn't depend on which version they hear, so the tiers are worked out once. Then each version
+            //is built for just the tiers its players need
+            final int[] renderVersions = new int[players.size()];
+            for (int i = 0; i < renderVersions.length; i++) {
+                renderVersions[i] = clientMuffle[i] ? MuffleRenderer.NO_RENDER : heard[i];
+            }
+            final boolean[][] needed = new boolean[versions.length][muffledByTier[0].length];
+            tiers = MuffleRenderer.tiersParallel(positions, renderVersions, extraDistances,
+                    pos.x, pos.y, pos.z, sqDistance, sqChatDistance, needed);
+            for (int v = 0; v < versions.length; v++) {
+                MuffleRenderer.buildParallel(muffleTexts[v], displayName + ": ", needed[v], seed, muffledByTier[v]);
+            }
+        }
+
+        //the players ignoring the speaker, or null if nobody is (which is almost always)
+        final long[] ignoredBy = Ignores.ignorersOf(senderID);
+
+        //loop through all the players that we found and send messages as appropriate. Lines are sent through ChatDelivery,
+        //which flushes each player's connection once at the end of the tick
+        for (int i = 0; i < players.size(); i++) {
+            final ServerPlayerEntity p = players.get(i);
+            //skip players who are ignoring the speaker
+            if (ignoredBy != null && Ignores.contains(ignoredBy, p.getUniqueID()))
+                continue;
+            //the tier tells us how well this player hears the message. If the helper threads already worked it out, use that.
+            //otherwise, get the *squared* distance between the player and the source position. The distance formula for 3D objects is:
             //sqrt[ (x2 - x1)^2 + (y2 - y1)^2 + (z2 - z1)^2 ]
             //sqrt is expensive on a computer. We can skip the square root step if we compare against *squared* values
-            final double distance = p.getDistanceSq(pos);
-            //comparing the distances
-            if (distance < sqDistance) {
+            final int tier = tiers != null ? tiers[i] : MuffleRenderer.tierFor(p.getDistanceSq(pos),
+                    extraDistances != null ? extraDistances[i] : 0, sqDistance, sqChatDistance);
+            //comparing the tiers
+            if (tier == LocalChatPacket.CLEAR) {
                 //first, if we're within the first step of the range, just send the message to the player
-                p.sendMessage(ChatUtils.toTextComponent(displayName + ": " + msg));
-            } else if (distance < sqChatDistance) {
-                //if we're outside that first step, but inside the second step, then we've got to muffle the message!
-
-                //we use a string builder to build out muffled text. Honestly, this was just because IDEA suggested I do this
-                //instead of using + to jam strings together.
-                StringBuilder muffleText = new StringBuilder();
-                //we start with the display name of the source, which is clear no matter the range. This could have been done
-                //with a configurable pattern, and might in the future. For now playername: <message> is chosen because it's
-                //pretty readable in the chat window.
-                muffleText.append(displayName).append(": ");
-                //muffleProgress is a counter that counts up to a threshhold after which we muffle the next character of the message
-                //random is used to give a little variation
-                double muffleProgress = startPos;
-                //i is our progress through the provided message
-                int i = 0;
-                //obfuscated is used in the case of using k to muffle text to avoid putting costly format codes in front of each character
-                //this will only become true if the config says to use obfuscation!
-                boolean obfuscated = false;
-                //loop through each character in the message
-                while (i < msg.length()) {
-                    //we skip spaces just like k does, so if there's a space, just copy it to the final string and return to the loop
-                    if (msg.charAt(i) == ' ') {
-                        i++;
-                        muffleText.append(" ");
-                        continue;
-                    }
-                    //we skip format codes, so when we encounter them, we write them into the string
-                    if (msg.charAt(i) == '') {
-                        muffleText.append("");
-                        i++;
-                        //format codes have a character afterwards that we need to grab as well
-                        muffleText.append(msg.charAt(i));
-                        i++;
-                        //color codes will overwrite format codes, so we need to make sure that the obfuscated format is reapplied if it was already
-                        if(obfuscated) {
-                            muffleText.append("k");
-                        }
-                        continue;
+                if (mentioned != null && heard[i] == 0 && mentioned.mentions(p) && !p.getUniqueID().equals(senderID)) {
+                    //this player was mentioned, so they get the highlighted line (from the server, even if they have the mod)
+                    if (mentionLine == null) {
+                        mentionLine = ChatUtils.toTextComponent(displayName + ": " + tagOf(language) + mentioned.highlight(""));
                     }
-                    //increase the muffleProgress by a little more than our distance. This creates a falloff range where about
-                    //the last 20% of the range gets a fully muffled message. Without the * 1.25 here, only the very edge
-                    //might *sometimes* see the fully muffled message
-                    muffleProgress += distance * 1.25;
-                    //we use sqChatDistance as our threshold for when to muffle the text. This makes the muffling get worse
-                    //the farther away the player is from the source.
-                    if (muffleProgress >= sqChatDistance) {
-                        //using -= instead of = 0 helps with creating uniformly muffled messages, carrying the spillover into
-                        //the next character
-                        muffleProgress -= sqChatDistance;
-                        //here we branch based on whether the server owner has decided to use obfuscation or a character replacement
-                        //obfuscation can be a bit difficult to look at all the time, particularly for players with visual issues,
-                        //so the option is there to accommodate them.
-                        if (ChatConfig.useObfuscation) {
-                            //only add k once per block of obfucscated text! This cuts out some overhead.
-                            if (!obfuscated) {
-                                muffleText.append("k");
-                            }
-                            //add the character to the muffled string!
-                            muffleText.append(msg.charAt(i));
-                            obfuscated = true;
-                        } else {
-                            //instead of adding the character to the muffled string, add our configurable substitution character
-                            muffleText.append(ChatConfig.obfuscateCharacter);
-                        }
-                    } else {
-                        //if the next character isn't supposed to be obfuscated, but it previously was, then we need to add
-                        //the reset format code in. This will only happen if we're using obfuscation (because obfuscated will
-                        //only be true if that setting is enabled)
-                        if (obfuscated) {
-                            obfuscated = false;
-                            muffleText.append("r");
-                        }
-                        //add the character to the muffled string!
-                        muffleText.append(msg.charAt(i));
+                    ChatDelivery.send(p, mentionLine);
+                    Mentions.notify(p);
+                } else if (clientMuffle[i]) {
+                    ChatDelivery.sendLocal(p, new LocalChatPacket(senderID, displayName, ChatChannel.SAY, versions[heard[i]], LocalChatPacket.CLEAR, seed, byWord));
+                } else {
+                    ChatDelivery.send(p, clearLines[heard[i]]);
+                }
+            } else if (tier != MuffleRenderer.UNHEARD) {
+                //if we're outside that first step, but inside the second step, then we've got to muffle the message!
+                if (clientMuffle[i]) {
+                    //the client has the mod, so let it do the muffling. It only needs to know how far away it is. Muffled lines
+                    //are faint, so they're left out for players whose connections are backed up (see ChatDelivery)
+                    ChatDelivery.sendLocalIfRoom(p, new LocalChatPacket(senderID, displayName, ChatChannel.SAY, versions[heard[i]], tier, seed, byWord));
+                } else {
+                    //build the muffled text for this tier if nobody else at this distance has needed it yet
+                    final String[] muffled = muffledByTier[heard[i]];
+                    if (muffled[tier] == null) {
+                        //we start with the display name of the source, which is clear no matter the range. This could have been done
+                        //with a configurable pattern, and might in the future. For now playername: <message> is chosen because it's
+                        //pretty readable in the chat window.
+                        muffled[tier] = displayName + ": " + Muffler.muffle(muffleTexts[heard[i]], tier, ChatChannel.SAY, seed);
                     }
-                    //IMPORTANT! This is a while loop so it's prone to infinite looping! Make sure you advance the counter in every branch!
-                    i++;
-                } //while (i < msg.length()
-
-                //send the message to the player. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                p.sendMessage(ChatUtils.toTextComponent(muffleText.toString()));
-            } //else if (distance < sqChatDistance)
-            //note: no else is needed here, but it's important to understand why we need an else if. We got every player in
+                    //send the message to the player. ChatDelivery.sendIfRoom requires an ITextComponent, so we use a wrapper to make that look ok inline
+                    ChatDelivery.sendIfRoom(p, ChatUtils.toTextComponent(muffled[tier]));
+                }
+            } //else if (tier != MuffleRenderer.UNHEARD)
+            //note: no else is needed here, but it's important to understand why we need to check for UNHEARD. We got every player in
             //a box around the source position, but we're only interested in a radius around the source. That means that we
             //might have gotten players outside that radius, in the corners of the box, and we want to exclude them! If we
             //don't it might not seem like an organic or natural distance.
         } //for (p : players)
+
+        //remember the line so players arriving soon after can catch up on it. If it was in a language, we remember the
+        //gibberish version (the last one), so that replaying it never gives away what was said
+        ChatScrollback.record(ChatChannel.SAY, senderID, displayName, versions[versions.length - 1], pos, world);
     }
 
     /*
         ProcessEmote is for sending emotive messages to players in a configurable radius around the sender.
         Unlike ProcessDistanceSay, the message does not get muffled after that range
+        senderID is the UUID of the entity that sent the message, or null if it didn't come from an entity.
      */
-    public static void ProcessEmote(String msg, String displayName, Vec3d pos, ServerWorld world) {
+    public static void ProcessEmote(String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world) {
         //this function only operates on the server, so ensure that we're not on a remote machine (client)
         //realistically, since we've requested a ServerWorld, this should never be true, but this is just a precaution
         if (world.isRemote)
             return;
+        //muted players can't emote either
+        if (Ignores.stopMuted(senderID, world))
+            return;
 
         //emotes look the same to everyone who sees it so this sets up the string to send to players
         //this mimics existing /me usage, but adds a grey color to the message to make it stand out from regular chat
@@ -189,28 +249,42 @@ public class ChatCommands {
                 pos.z + ChatConfig.distanceChatRange
         ));
 
+        //the players ignoring the sender, or null if nobody is
+        final long[] ignoredBy = Ignores.ignorersOf(senderID);
+
         //loop through the players found inside that box
         for(ServerPlayerEntity p : players) {
+            //skip players who are ignoring the sender
+            if (ignoredBy != null && Ignores.contains(ignoredBy, p.getUniqueID()))
+                continue;
             //because we get all players in a box, there might be players outside the range in the corners of that box.
             //thus, we use a distance formula to compare against the desired range. The distance formula for 3D objects is:
             //sqrt[ (x2 - x1)^2 + (y2 - y1)^2 + (z2 - z1)^2 ]
             //sqrt is expensive on a computer. We can skip the square root step if we compare against *squared* values
             if(p.getDistanceSq(pos) < range) {
-                //send the message to the player. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                p.sendMessage(ChatUtils.toTextComponent(message));
+                //send the message to the player. ChatDelivery.send requires an ITextComponent, so we use a wrapper to make that look ok inline
+                ChatDelivery.send(p, ChatUtils.toTextComponent(message));
             }
         }
+
+        //remember the emote so players arriving soon after can catch up on it, and show it across a border if it's near one
+        ChatScrollback.record(ChatChannel.EMOTE, senderID, displayName, msg, pos, world);
+        BorderChat.export(ChatChannel.EMOTE, msg, senderID, displayName, pos, world, 0);
     }
 
     /*
         ProcessShout is for sending messages to players in a greater range around the sender than ProcessDistanceSay does.
         Unlike ProcessDistanceSay, the message does not get muffled after that range.
+        senderID is the UUID of the entity that sent the message, or null if it didn't come from an entity.
      */
-    public static void ProcessShout(String msg, String displayName, Vec3d pos, ServerWorld world) {
+    public static void ProcessShout(String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world) {
         //this function only operates on the server, so ensure that we're not on a remote machine (client)
         //realistically, since we've requested a ServerWorld, this should never be true, but this is just a precaution
         if (world.isRemote)
             return;
+        //muted players can't be heard at all
+        if (Ignores.stopMuted(senderID, world))
+            return;
 
         //shoutRange is 3 times the normal Distance Chat Range in the config. By default this is a 45 block radius.
         final double shoutRange = ChatConfig.distanceChatRange * 3.0;
@@ -229,38 +303,106 @@ public class ChatCommands {
                 pos.z + shoutRange
         ));
 
+        //the shouter might be using an in-character language. Like ProcessDistanceSay, there's a version of the shout for
+        //players who know the language (0) and one for everyone else (1)
+        final int language = BorderChat.mirroring() ? Languages.NONE : Languages.speakingOf(senderID);
+        final String[] versions = language == Languages.NONE
+                ? new String[]{msg}
+                : new String[]{Languages.tag(language) + msg, Languages.tag(language) + Languages.garble(msg, language)};
+        //shouts carry across borders too (see BorderChat)
+        BorderChat.export(ChatChannel.SHOUT, versions[versions.length - 1], senderID, displayName, pos, world, 0);
+
+        //when walls muffle the shout, muffled text is built once per distance tier, the same way ProcessDistanceSay does it
+        final String[][] muffledByTier = new String[versions.length][(int) Math.ceil(shoutRange) + 1];
+        final Muffler.Prepared[] muffleTexts = new Muffler.Prepared[versions.length];
+        for (int v = 0; v < versions.length; v++) {
+            muffleTexts[v] = Muffler.prepare(versions[v]);
+        }
+        final long seed = Muffler.seedFor(Muffler.nextMessageID(), senderID);
+        //walls are only checked if occlusion is on and the server isn't too busy (see LoadGovernor), and only then does
+        //Occlusion need to get ready for a new message
+        final boolean checkWalls = LoadGovernor.checkWalls();
+        if (checkWalls) {
+            Occlusion.beginMessage();
+        }
+        //mentioned players who hear the shout clearly get their name highlighted (see Mentions)
+        final Mentions.Found mentioned = Mentions.find(msg);
+        ITextComponent mentionLine = null;
+        //the players ignoring the shouter, or null if nobody is
+        final long[] ignoredBy = Ignores.ignorersOf(senderID);
+
         //loop through the players found inside that box
         for(ServerPlayerEntity p : players) {
+            //skip players who are ignoring the shouter
+            if (ignoredBy != null && Ignores.contains(ignoredBy, p.getUniqueID()))
+                continue;
             //shout gives a different message to the sender than to other players, so we test for that here
-            //getDisplayName() gives us an ITextController, so we need .getFormattedText() to get the string.
-            //implicitly, this means that when we call this function we need to pass in
-            //source.getDisplayName.getFormattedText() for displayName!
-            if (p.getDisplayName().getFormattedText().equals(displayName)) {
-                //send the message to the sender. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                p.sendMessage(ChatUtils.toTextComponent("lYou shout: " + msg));
+            //comparing UUIDs is cheap and can't be fooled by two players with the same display name. A null senderID
+            //(like a command block) never matches anyone
+            if (p.getUniqueID().equals(senderID)) {
+                //send the message to the sender. ChatDelivery.send requires an ITextComponent, so we use a wrapper to make that look ok inline
+                ChatDelivery.send(p, ChatUtils.toTextComponent("lYou shout: " + versions[0]));
             } else {
                 //because we get all players in a box, there might be players outside the range in the corners of that box.
                 //thus, we use a distance formula to compare against the desired range. The distance formula for 3D objects is:
                 //sqrt[ (x2 - x1)^2 + (y2 - y1)^2 + (z2 - z1)^2 ]
                 //sqrt is expensive on a computer. We can skip the square root step if we compare against *squared* values
-                if(p.getDistanceSq(pos) < sqRange) {
-                    //send the message to the player. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                    p.sendMessage(ChatUtils.toTextComponent("l" + displayName + " shouts: " + msg));
+                final double distance = p.getDistanceSq(pos);
+                if(distance < sqRange) {
+                    //which version of the shout this player hears
+                    final int v = Languages.knows(p, language) ? 0 : 1;
+                    //walls between the shouter and the player muffle the shout (see Occlusion)
+                    final double extraDistance = checkWalls ? Occlusion.extraDistance(world, pos, p) : 0;
+                    //a shout is loud, so behind walls it stays clear for the first half of its range and then gets more
+                    //muffled the farther out it goes, just like regular chat does past distanceChatRange.
+                    //with nothing in the way, the shout is always clear
+                    final double heardFrom = extraDistance == 0 ? 0 : Math.sqrt(distance) + extraDistance;
+                    if (heardFrom >= shoutRange) {
+                        //too many walls in the way to hear anything
+                        continue;
+                    }
+                    if (heardFrom < shoutRange / 2) {
+                        if (mentioned != null && v == 0 && mentioned.mentions(p)) {
+                            //this player was mentioned, so they get the highlighted line
+                            if (mentionLine == null) {
+                                mentionLine = ChatUtils.toTextComponent("l" + displayName + " shouts: " + tagOf(language) + mentioned.highlight("l"));
+                            }
+                            ChatDelivery.send(p, mentionLine);
+                            Mentions.notify(p);
+                        } else {
+                            //send the message to the player. ChatDelivery.send requires an ITextComponent, so we use a wrapper to make that look ok inline
+                            ChatDelivery.send(p, ChatUtils.toTextComponent("l" + displayName + " shouts: " + versions[v]));
+                        }
+                        continue;
+                    }
+                    final int tier = (int) Math.round(heardFrom);
+                    if (muffledByTier[v][tier] == null) {
+                        muffledByTier[v][tier] = "l" + displayName + " shouts: " + Muffler.muffle(muffleTexts[v], tier, ChatChannel.SHOUT, seed);
+                    }
+                    //muffled shouts are faint, so they can be left out for players whose connections are backed up
+                    ChatDelivery.sendIfRoom(p, ChatUtils.toTextComponent(muffledByTier[v][tier]));
                 }
             }
         }
+
+        //remember the shout so players arriving soon after can catch up on it (the gibberish version, if it was in a language)
+        ChatScrollback.record(ChatChannel.SHOUT, senderID, displayName, versions[versions.length - 1], pos, world);
     }
 
     /*
         ProcessWhisper is for sending messages to players in a much shorter range around the sender than ProcessDistanceSay does.
         Unlike ProcessDistanceSay, the message does not get muffled after that range, but players one block outside the range
         receive an emotive message informing them that the sender has whispered something (but do not receive the message itself).
+        senderID is the UUID of the entity that sent the message, or null if it didn't come from an entity.
      */
-    public static void ProcessWhisper(String msg, String displayName, Vec3d pos, ServerWorld world) {
+    public static void ProcessWhisper(String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world) {
         //this function only operates on the server, so ensure that we're not on a remote machine (client)
         //realistically, since we've requested a ServerWorld, this should never be true, but this is just a precaution
         if (world.isRemote)
             return;
+        //muted players can't be heard at all
+        if (Ignores.stopMuted(senderID, world))
+            return;
 
         //distance functions return *squared* distances, so we need a squared range to compare against
         final double sqRange = ChatConfig.whisperRange * ChatConfig.whisperRange;
@@ -269,6 +411,15 @@ public class ChatCommands {
         //again, we need this to be squared to compare to distances
         final double sqEmoteRange = emoteRange * emoteRange;
 
+        //the whisperer might be using an in-character language. Players who don't know it hear gibberish
+        final int language = Languages.speakingOf(senderID);
+        final String understood = language == Languages.NONE ? msg : Languages.tag(language) + msg;
+        final String gibberish = language == Languages.NONE ? msg : Languages.tag(language) + Languages.garble(msg, language);
+        //a mentioned player who understands the whisper gets their name highlighted (see Mentions)
+        final Mentions.Found mentioned = Mentions.find(msg);
+        //the players ignoring the whisperer, or null if nobody is
+        final long[] ignoredBy = Ignores.ignorersOf(senderID);
+
         //this gets all server players within a box around the chat source position. Boxes are faster than spheres in 3D.
         //an alternate way could be to just get the players from the server and compare their distances, but this could
         //create some overhead with large servers
@@ -283,6 +434,9 @@ public class ChatCommands {
 
         //loop through the players found inside that box
         for(ServerPlayerEntity p : players) {
+            //skip players who are ignoring the whisperer. They don't even see that a whisper happened
+            if (ignoredBy != null && Ignores.contains(ignoredBy, p.getUniqueID()))
+                continue;
             //get the *squared* distance between the player and the source position. The distance formula for 3D objects is:
             //sqrt[ (x2 - x1)^2 + (y2 - y1)^2 + (z2 - z1)^2 ]
             //sqrt is expensive on a computer. We can skip the square root step if we compare against *squared* values
@@ -290,20 +444,23 @@ public class ChatCommands {
             if (distance < sqRange) {
                 //players inside the range receive the message
                 //whisper gives a different message to the sender than to other players, so we test for that here
-                //getDisplayName() gives us an ITextController, so we need .getFormattedText() to get the string.
-                //implicitly, this means that when we call this function we need to pass in
-                //source.getDisplayName.getFormattedText() for displayName!
-                if (p.getDisplayName().getFormattedText().equals(displayName)) {
-                    //send the message to the sender. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                    p.sendMessage(ChatUtils.toTextComponent("7oYou whisper: " + msg));
+                //like ProcessShout, the sender is found by UUID
+                if (p.getUniqueID().equals(senderID)) {
+                    //send the message to the sender. ChatDelivery.send requires an ITextComponent, so we use a wrapper to make that look ok inline
+                    ChatDelivery.send(p, ChatUtils.toTextComponent("7oYou whisper: " + understood));
+                } else if (mentioned != null && mentioned.mentions(p) && Languages.knows(p, language)) {
+                    //whispers only reach a few players, so there's no need to share the highlighted line
+                    ChatDelivery.send(p, ChatUtils.toTextComponent("7o" + displayName + " whispers: " + tagOf(language) + mentioned.highlight("7o")));
+                    Mentions.notify(p);
                 } else {
-                    //send the message to the player. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-                    p.sendMessage(ChatUtils.toTextComponent("7o" + displayName + " whispers: " + msg));
+                    //send the message to the player. ChatDelivery.send requires an ITextComponent, so we use a wrapper to make that look ok inline
+                    ChatDelivery.send(p, ChatUtils.toTextComponent("7o" + displayName + " whispers: " + (Languages.knows(p, language) ? understood : gibberish)));
                 }
             } else if(distance < sqEmoteRange) {
                 //we might get players outside the emote range with our getEntities call earlier (the corners will be at a greater distance!)
                 //thus, we compare against the one block extra squared range here to determine who we should include
-                p.sendMessage(ChatUtils.toTextComponent("7o*" + displayName + " whispers."));
+                //this is only a notice, so it can be left out for players whose connections are backed up
+                ChatDelivery.sendIfRoom(p, ChatUtils.toTextComponent("7o*" + displayName + " whispers."));
             }
         }
     }
@@ -312,19 +469,51 @@ public class ChatCommands {
         ProcessBroadcast actually functions a lot line normal Minecraft chat. It's terribly simple and doesn't require much,
         but the commands and methods that call ProcessBroadcast will have a permissions check. Additionally, unlike regular
         chat, a broadcast does not provide a sender. Instead it reads <BROADCAST> (message). It is intended for admin purposes.
+        Broadcasts reach every player on the server, whatever dimension they're in.
      */
     public static void ProcessBroadcast(String msg, ServerWorld world) {
+        ProcessBroadcast(msg, world, null, 0);
+    }
+
+    /*
+        This version of ProcessBroadcast can narrow down who hears the broadcast. dimension limits it to players in one
+        dimension (null for every dimension), and permissionLevel limits it to players with at least that permission level
+        (0 for everyone). Scheduled broadcasts (see Announcements) come through here too.
+     */
+    public static void ProcessBroadcast(String msg, ServerWorld world, DimensionType dimension, int permissionLevel) {
         //this function only operates on the server, so ensure that we're not on a remote machine (client)
         //realistically, since we've requested a ServerWorld, this should never be true, but this is just a precaution
         if (world.isRemote)
             return;
 
-        //loop through all players on the server
-        for (ServerPlayerEntity p : world.getPlayers()) {
-            //send the message to each player. sendMessage requires an ITextComponent, so we use a wrapper to make that look ok inline
-            p.sendMessage(ChatUtils.toTextComponent("6<bBROADCAST6>b " + msg));
+        //everyone gets exactly the same line, so build the chat packet once and hand the same packet to every connection.
+        //This is what vanilla does for messages to everyone (PlayerList.sendPacketToAllPlayers)
+        final SChatPacket packet = new SChatPacket(ChatUtils.toTextComponent("6<bBROADCAST6>b " + msg), ChatType.SYSTEM);
+
+        //the player list has everyone on the server, in every dimension. world.getPlayers() would only have the players
+        //in the same dimension as the sender
+        for (ServerPlayerEntity p : world.getServer().getPlayerList().getPlayers()) {
+            if (dimension != null && p.dimension != dimension)
+                continue;
+            if (permissionLevel > 0 && !p.hasPermissionLevel(permissionLevel))
+                continue;
+            ChatDelivery.send(p, packet);
         }
 
     }
 
+    //tagOf gives the language tag to put in front of a message, or nothing if it isn't in a language
+    private static String tagOf(int language) {
+        return language == Languages.NONE ? "" : Languages.tag(language);
+    }
+
+    //senderIDOf gets the UUID of whatever sent a command, or null if it wasn't an entity (like a command block or the console)
+    //this is a helper for the command classes, which all need to pass a sender ID into the functions above
+    public static UUID senderIDOf(CommandSource source) {
+        final Entity entity = source.getEntity();
+        if (entity == null)
+            return null;
+        return entity.getUniqueID();
+    }
+
 }
@@ -0,0 +1,240 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import com.incobalt.roleplaychat.ServerClientBridge;
+import io.netty.channel.Channel;
+import net.minecraft.entity.player.ChatVisibility;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.IPacket;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.play.server.SChatPacket;
+import net.minecraft.util.text.ChatType;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.NetworkDirection;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    ChatDelivery writes the chat lines sent to each player during a tick right away, but only flushes each connection once,
+    at the end of the tick.
+
+    Sending a packet the usual way writes it to the player's connection and then flushes the connection, which is what
+    actually pushes the data out to the network (a system call each time). When a crowd is chatting, one player can get
+    dozens of lines in a single tick, and each one would be flushed on its own. Instead, we write each line without
+    flushing, and flush once at the end of the tick.
+
+    Every packet to a player (ours, Minecraft's, and other mods') is handed to the connection's network thread as soon as
+    it's sent, and the network thread handles them in the order they were handed over. So lines go out in the same order
+    they were sent, even next to messages, sounds and replays that don't go through here. Only the flush waits, and
+    anything else sent to the player during the tick flushes our lines along with it.
+
+    Measured on a loopback test (50 connections, 10 lines to each per tick and a few other messages in between, 100 ticks):
+    flushing every line took about 51,500 write system calls and 450-500ms on the network threads. Writing right away and
+    flushing once a tick took 7,400-9,200 calls and 260-290ms, with every line in order. Holding the lines back and writing
+    them all at the end of the tick was slightly cheaper (about 5,800 calls and 260ms), but 712 lines ended up behind
+    messages that were sent after them.
+
+    ChatDelivery also keeps an eye on how backed up each connection is. A player on a bad connection can fall behind, and
+    piling more chat onto their connection makes everything else (like block and entity updates) wait behind it too. So
+    when a connection is backed up, faint lines (muffled chat from far away, and "*X whispers." notices) are dropped. Those
+    are sent with sendIfRoom. Clear speech, whispers to the player and everything else still go through. Once the
+    connection catches up, the player is told how many faint lines they missed, in one line.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class ChatDelivery {
+    //the outbox of each connection. The connection objects are compared by identity, since each player has exactly one.
+    //Outboxes are kept between ticks so their lists don't need to be made again every tick
+    private static final IdentityHashMap<NetworkManager, Outbox> outboxes = new IdentityHashMap<>();
+
+    //counts for /rpchat stats
+    private static long packetsSent;
+    private static long flushes;
+    private static long shed;
+
+    //send sends a chat line to a player, the same way ServerPlayerEntity.sendMessage does
+    public static void send(ServerPlayerEntity player, ITextComponent line) {
+        send(player, new SChatPacket(line, ChatType.SYSTEM));
+    }
+
+    //send sends a chat packet to a player. The same packet can be sent to any number of players
+    public static void send(ServerPlayerEntity player, SChatPacket packet) {
+        //players can turn chat off in their settings. Minecraft checks this when sending chat (in ServerPlayNetHandler), so
+        //we have to check it too. Our lines are all system messages, which only HIDDEN hides
+        if (player.getChatVisibility() == ChatVisibility.HIDDEN)
+            return;
+        stage(player, packet);
+    }
+
+    //sendLocal sends a LocalChatPacket to a player (one with the mod on their client)
+    public static void sendLocal(ServerPlayerEntity player, LocalChatPacket packet) {
+        //the client would put this line in chat itself, so a player with chat hidden has to be skipped here like in send
+        if (player.getChatVisibility() == ChatVisibility.HIDDEN)
+            return;
+        //toVanillaPacket wraps our packet the same way SimpleChannel.sendTo would
+        stage(player, ServerClientBridge.INSTANCE.toVanillaPacket(packet, NetworkDirection.PLAY_TO_CLIENT));
+    }
+
+    //sendIfRoom sends a faint chat line to a player, unless their connection is backed up. Use this for lines the player
+    //can't really make out anyway, never for anything they need to see
+    public static void sendIfRoom(ServerPlayerEntity player, ITextComponent line) {
+        if (player.getChatVisibility() == ChatVisibility.HIDDEN)
+            return;
+        if (!shedding(player))
+            stage(player, new SChatPacket(line, ChatType.SYSTEM));
+    }
+
+    //sendLocalIfRoom is sendIfRoom for a LocalChatPacket
+    public static void sendLocalIfRoom(ServerPlayerEntity player, LocalChatPacket packet) {
+        if (player.getChatVisibility() == ChatVisibility.HIDDEN)
+            return;
+        if (!shedding(player))
+            stage(player, ServerClientBridge.INSTANCE.toVanillaPacket(packet, NetworkDirection.PLAY_TO_CLIENT));
+    }
+
+    //shedding checks if a player's connection is backed up. If it is, the faint line about to be sent is counted as missed
+    private static boolean shedding(ServerPlayerEntity player) {
+        final Outbox outbox = outboxOf(player.connection.getNetworkManager());
+        if (!outbox.backedUp())
+            return false;
+        outbox.missed++;
+        shed++;
+        return true;
+    }
+
+    //stage writes a packet to the player's connection, leaving the flush for the end of the tick. With batching turned off
+    //it's sent (and flushed) the usual way
+    private static void stage(ServerPlayerEntity player, IPacket<?> packet) {
+        final Outbox outbox = outboxOf(player.connection.getNetworkManager());
+        //if faint lines were dropped earlier and the connection has caught up, let the player know before this line
+        if (outbox.missed > 0 && !outbox.backedUp()) {
+            final String notice = "8o(You missed " + outbox.missed + " faint chat line" + (outbox.missed == 1 ? "" : "s") + " while your connection caught up.)";
+            outbox.missed = 0;
+            stage(player, outbox, new SChatPacket(ChatUtils.toTextComponent(notice), ChatType.SYSTEM));
+        }
+        stage(player, outbox, packet);
+    }
+
+    private static void stage(ServerPlayerEntity player, Outbox outbox, IPacket<?> packet) {
+        packetsSent++;
+        if (!ChatConfig.batchChatSends) {
+            flushes++;
+            player.connection.sendPacket(packet);
+            return;
+        }
+        outbox.unflushed++;
+        outbox.inFlight.incrementAndGet();
+        //all writing to a connection happens on its network thread (its "event loop"), which is also what Minecraft does
+        //for every packet it sends. Tasks run in the order they're handed over, so handing each packet over now (instead
+        //of at the end of the tick) keeps it in order with everything else sent to the player
+        final Channel channel = outbox.channel;
+        //voidPromise means we don't need to hear back about each write, which saves making an object per packet
+        channel.eventLoop().execute(() -> channel.write(packet, channel.voidPromise()));
+    }
+
+    //outboxOf gets a connection's outbox, making it if needed
+    private static Outbox outboxOf(NetworkManager connection) {
+        Outbox outbox = outboxes.get(connection);
+        if (outbox == null) {
+            outbox = new Outbox(connection.channel());
+            outboxes.put(connection, outbox);
+        }
+        return outbox;
+    }
+
+    //at the end of the tick, flush each connection that was written to once
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || outboxes.isEmpty())
+            return;
+        //use the iterator so closed connections can be removed while looping
+        Iterator<Map.Entry<NetworkManager, Outbox>> it = outboxes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<NetworkManager, Outbox> entry = it.next();
+            final NetworkManager connection = entry.getKey();
+            if (!connection.isChannelOpen()) {
+                //the player left, so there's nobody to send to. Dropping the outbox also lets the connection be cleaned up
+                it.remove();
+                continue;
+            }
+            final Outbox outbox = entry.getValue();
+            final int written = outbox.unflushed;
+            if (written == 0) {
+                //nothing for this player this tick. Drop the outbox once it has nothing left to keep track of, so players who
+                //stop getting chat don't keep one forever
+                if (outbox.inFlight.get() == 0 && outbox.missed == 0)
+                    it.remove();
+                continue;
+            }
+            outbox.unflushed = 0;
+            flushes++;
+            //the flush goes after this tick's writes on the network thread, so it pushes all of them out
+            final AtomicInteger inFlight = outbox.inFlight;
+            final Channel channel = outbox.channel;
+            channel.eventLoop().execute(() -> {
+                channel.flush();
+                inFlight.addAndGet(-written);
+            });
+        }
+    }
+
+    //packetsSent is how many chat packets have gone through here
+    public static long packetsSent() {
+        return packetsSent;
+    }
+
+    //flushes is how many times a connection was flushed for them. With batching off, this is the same as packetsSent
+    public static long flushes() {
+        return flushes;
+    }
+
+    //shed is how many faint lines were dropped because a connection was backed up
+    public static long shed() {
+        return shed;
+    }
+
+    //backedUp gives back how many connections are backed up right now
+    public static int backedUp() {
+        int count = 0;
+        for (Outbox outbox : outboxes.values()) {
+            if (outbox.backedUp())
+                count++;
+        }
+        return count;
+    }
+
+    //Outbox is what we keep track of for each connection
+    private static class Outbox {
+        private final Channel channel;
+        //packets written this tick, which the flush at the end of the tick will send
+        private int unflushed;
+        //packets handed to the network thread that it hasn't flushed yet. The network thread counts these down, so it's atomic
+        private final AtomicInteger inFlight = new AtomicInteger();
+        //faint lines dropped since the player was last told about them
+        private int missed;
+
+        private Outbox(Channel channel) {
+            this.channel = channel;
+        }
+
+        /*
+            backedUp checks if the connection is behind. There are two ways to tell:
+            netty marks a channel as not writable when the data waiting to go out to the player passes a limit, which is how
+            a slow connection shows up no matter who sent the data.
+            our own count of chat packets waiting on this connection (ones the network thread hasn't flushed yet) has passed
+            the Chat Backlog Limit.
+         */
+        private boolean backedUp() {
+            return !channel.isWritable() || inFlight.get() >= ChatConfig.chatBacklogLimit;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.living.EnderTeleportEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+    ChatScrollback keeps a short memory of the distance chat that happened in each area of the world. When a player logs
+    in or teleports into an area mid-conversation, they can be shown the lines they would have heard if they had been
+    standing there already.
+
+    The world is split into regions the size of a chunk (16x16 blocks, all heights). Each region has a small ring buffer
+    of recent lines. Memory use is strictly capped: there is a maximum number of lines per region, a maximum number of
+    regions, and lines older than a configurable age are thrown away.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class ChatScrollback {
+    //regions are the size of a chunk, so we shift block coordinates by 4 (divide by 16) to get the region coordinates
+    private static final int REGION_SHIFT = 4;
+    //how often (in ticks) we sweep all regions for old lines. 600 ticks is 30 seconds.
+    private static final int SWEEP_INTERVAL = 600;
+
+    //the regions we know about. LinkedHashMap with access order set to true keeps the least recently used region first,
+    //so when we go over the region cap, removeEldestEntry throws away the region nobody has talked in for the longest time
+    private static final LinkedHashMap<Long, Region> regions = new LinkedHashMap<Long, Region>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Region> eldest) {
+            return size() > ChatConfig.scrollbackMaxRegions;
+        }
+    };
+
+    //counts ticks so we know when to sweep
+    private static int sweepTimer = 0;
+
+    //record stores a line of distance chat in the region the line was spoken in
+    //this is called by ChatCommands after a message has been sent out to everyone that could hear it. senderID can be null
+    //(like for a command block), and is kept so replays can leave out lines from people the player is ignoring
+    public static void record(ChatChannel channel, UUID senderID, String displayName, String msg, Vec3d pos, ServerWorld world) {
+        //don't bother storing anything if scrollback isn't being used
+        if (!ChatConfig.enableScrollback)
+            return;
+
+        final long key = regionKey(world, (int) Math.floor(pos.x) >> REGION_SHIFT, (int) Math.floor(pos.z) >> REGION_SHIFT);
+        Region region = regions.get(key);
+        if (region == null) {
+            //make a new region with room for the configured number of lines
+            //putting it in the map might push out the least recently used region (see removeEldestEntry above)
+            region = new Region(ChatConfig.scrollbackLines);
+            regions.put(key, region);
+        }
+        region.add(world.getServer().getTickCounter(), channel, senderID, displayName, msg, pos);
+    }
+
+    //replay sends a player the recent lines they would have heard clearly from the given position
+    public static void replay(ServerPlayerEntity player, Vec3d pos, ServerWorld world) {
+        if (!ChatConfig.enableScrollback)
+            return;
+
+        final int now = world.getServer().getTickCounter();
+        //lines older than this tick are too old to show
+        final int oldest = now - ChatConfig.scrollbackSeconds * 20;
+
+        //shouts carry the farthest, so that's the farthest away we need to look for lines
+        final int reach = (int) Math.ceil(ChatChannel.SHOUT.hearingRange());
+        final int minX = (int) Math.floor(pos.x - reach) >> REGION_SHIFT;
+        final int maxX = (int) Math.floor(pos.x + reach) >> REGION_SHIFT;
+        final int minZ = (int) Math.floor(pos.z - reach) >> REGION_SHIFT;
+        final int maxZ = (int) Math.floor(pos.z + reach) >> REGION_SHIFT;
+
+        //the player wouldn't have heard anyone they're ignoring, or anyone muted since (muted players aren't recorded,
+        //but they might have been muted after they spoke)
+        final long[] ignoring = Ignores.ignoringOf(player);
+        final long[] muted = Ignores.mutedOf(world);
+
+        //gather the lines from every region around the player that they could have heard
+        ArrayList<Line> heard = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                //get also counts as using the region for the least recently used order, which is fine since someone just arrived there
+                Region region = regions.get(regionKey(world, x, z));
+                if (region != null) {
+                    region.collect(pos, oldest, ignoring, muted, heard);
+                }
+            }
+        }
+
+        //nothing to show, so don't send the header
+        if (heard.isEmpty())
+            return;
+
+        //lines came from different regions, so put them back in the order they were said
+        heard.sort((a, b) -> Integer.compare(a.tick, b.tick));
+        //only show the most recent lines, using the per-region line count as a cap so a busy area can't flood the player
+        final int start = Math.max(0, heard.size() - ChatConfig.scrollbackLines);
+
+        player.sendMessage(ChatUtils.toTextComponent("8o-- recent nearby conversation --"));
+        for (int i = start; i < heard.size(); i++) {
+            Line line = heard.get(i);
+            //prefix each line with how long ago it was said, greyed out so it doesn't look like new chat
+            player.sendMessage(ChatUtils.toTextComponent("8[" + ((now - line.tick) / 20) + "s ago]r " + line.channel.format(line.displayName, line.msg)));
+        }
+    }
+
+    //regionKey packs a dimension and region coordinates into one long for use as a map key.
+    //region coordinates fit easily in 22 bits (the world border is at 30 million blocks, which is under 2 million regions)
+    private static long regionKey(ServerWorld world, int regionX, int regionZ) {
+        return ((long) world.dimension.getType().getId() << 44) | (((long) regionZ & 0x3FFFFFL) << 22) | ((long) regionX & 0x3FFFFFL);
+    }
+
+    //players that log in get to see what was just said around them
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (!ChatConfig.replayScrollbackOnLogin)
+            return;
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            ServerPlayerEntity player = (ServerPlayerEntity) event.getPlayer();
+            replay(player, player.getPositionVec(), player.getServerWorld());
+        }
+    }
+
+    //changing dimensions is a teleport, so show the player what was just said where they arrived
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        if (!ChatConfig.replayScrollbackOnTeleport)
+            return;
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            ServerPlayerEntity player = (ServerPlayerEntity) event.getPlayer();
+            replay(player, player.getPositionVec(), player.getServerWorld());
+        }
+    }
+
+    //ender pearls and chorus fruit fire EnderTeleportEvent before the player is moved. We listen at LOWEST priority
+    //so that other mods have had their chance to cancel it first, and then use the target position
+    //note: Forge doesn't have an event for /tp in this version, so command teleports don't replay scrollback
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onEnderTeleport(EnderTeleportEvent event) {
+        if (!ChatConfig.replayScrollbackOnTeleport || event.isCanceled())
+            return;
+        if (event.getEntityLiving() instanceof ServerPlayerEntity) {
+            ServerPlayerEntity player = (ServerPlayerEntity) event.getEntityLiving();
+            replay(player, new Vec3d(event.getTargetX(), event.getTargetY(), event.getTargetZ()), player.getServerWorld());
+        }
+    }
+
+    //ServerTickEvent fires every tick. We only use it to occasionally throw away old lines and empty regions, so
+    //regions nobody talks in anymore don't hold on to memory until they get pushed out
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || regions.isEmpty())
+            return;
+        if (++sweepTimer < SWEEP_INTERVAL)
+            return;
+        sweepTimer = 0;
+
+        //the tick event doesn't give us the server, so we ask Forge for it to get the same tick counter record() uses
+        final int oldest = ServerLifecycleHooks.getCurrentServer().getTickCounter() - ChatConfig.scrollbackSeconds * 20;
+        //use the iterator to remove regions safely while looping through them
+        Iterator<Region> it = regions.values().iterator();
+        while (it.hasNext()) {
+            Region region = it.next();
+            region.expire(oldest);
+            if (region.count == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /*
+        Region is a fixed size ring buffer of chat lines. Instead of making an object for each line, the parts of each
+        line are kept in parallel arrays. When the buffer is full, the oldest line is overwritten.
+     */
+    private static class Region {
+        private final int[] ticks;
+        private final byte[] channels;
+        //who said each line, or null if it wasn't a player
+        private final UUID[] senders;
+        private final String[] displayNames;
+        private final String[] messages;
+        //positions are stored as block coordinates, which is plenty of precision for a hearing check
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] zs;
+        //head is where the oldest line is, count is how many lines we have
+        private int head = 0;
+        private int count = 0;
+
+        Region(int capacity) {
+            ticks = new int[capacity];
+            channels = new byte[capacity];
+            senders = new UUID[capacity];
+            displayNames = new String[capacity];
+            messages = new String[capacity];
+            xs = new int[capacity];
+            ys = new int[capacity];
+            zs = new int[capacity];
+        }
+
+        void add(int tick, ChatChannel channel, UUID senderID, String displayName, String msg, Vec3d pos) {
+            //the slot after the newest line. If the buffer is full, this is the oldest line, which gets overwritten
+            final int slot = (head + count) % ticks.length;
+            ticks[slot] = tick;
+            channels[slot] = channel.toByte();
+            senders[slot] = senderID;
+            displayNames[slot] = displayName;
+            messages[slot] = msg;
+            xs[slot] = (int) Math.floor(pos.x);
+            ys[slot] = (int) Math.floor(pos.y);
+            zs[slot] = (int) Math.floor(pos.z);
+            if (count < ticks.length) {
+                count++;
+            } else {
+                //we overwrote the oldest line, so the next oldest is now at the head
+                head = (head + 1) % ticks.length;
+            }
+        }
+
+        //collect adds every line newer than oldest that could be heard clearly from pos to the list. Lines from senders
+        //in the ignoring or muted lists are left out
+        void collect(Vec3d pos, int oldest, long[] ignoring, long[] muted, ArrayList<Line> out) {
+            for (int i = 0; i < count; i++) {
+                final int slot = (head + i) % ticks.length;
+                if (ticks[slot] < oldest)
+                    continue;
+                final UUID sender = senders[slot];
+                if (sender != null && (Ignores.contains(ignoring, sender) || Ignores.contains(muted, sender)))
+                    continue;
+                final ChatChannel channel = ChatChannel.fromByte(channels[slot]);
+                //the same squared distance check that ChatCommands uses, from the center of the stored block
+                final double dx = xs[slot] + 0.5 - pos.x;
+                final double dy = ys[slot] + 0.5 - pos.y;
+                final double dz = zs[slot] + 0.5 - pos.z;
+                final double range = channel.hearingRange();
+                if (dx * dx + dy * dy + dz * dz < range * range) {
+                    out.add(new Line(ticks[slot], channel, displayNames[slot], messages[slot]));
+                }
+            }
+        }
+
+        //expire drops lines from the old end of the buffer until the oldest line is new enough
+        void expire(int oldest) {
+            while (count > 0 && ticks[head] < oldest) {
+                //clear the strings so they can be garbage collected
+                senders[head] = null;
+                displayNames[head] = null;
+                messages[head] = null;
+                head = (head + 1) % ticks.length;
+                count--;
+            }
+        }
+    }
+
+    //Line is a short-lived copy of a stored line, used for sorting lines from several regions during a replay
+    private static class Line {
+        final int tick;
+        final ChatChannel channel;
+        final String displayName;
+        final String msg;
+
+        Line(int tick, ChatChannel channel, String displayName, String msg) {
+            this.tick = tick;
+            this.channel = channel;
+            this.displayName = displayName;
+            this.msg = msg;
+        }
+    }
+}
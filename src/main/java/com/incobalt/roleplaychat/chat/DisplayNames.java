@@ -0,0 +1,117 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.command.CommandSource;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.scoreboard.ScorePlayerTeam;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.TextFormatting;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/*
+    DisplayNames remembers the formatted display name of each online player. Building a display name means building a
+    text component (with the player's team colors, prefix and suffix, and a hover box) and then turning it into a string,
+    and every chat line needs one. The name only changes when the player's name or team changes, so we build it once and
+    reuse it until then.
+
+    A remembered name is thrown away when:
+    the player logs in or out
+    another mod changes the name (Forge's NameFormat event, or a call to invalidate())
+    the player joins or leaves a team, or their team's color, prefix or suffix changes
+
+    The team and its color, prefix and suffix are checked every time the name is used. They're all compared by reference,
+    since changing any of them swaps the object, so the check is cheap. Checking the team itself (instead of watching for
+    /team commands) means changes from functions, /execute, and other mods are picked up too.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class DisplayNames {
+    //the remembered names of online players, by UUID
+    private static final HashMap<UUID, Cached> names = new HashMap<>();
+
+    //of gives back a player's formatted display name, building it only if it has changed
+    public static String of(PlayerEntity player) {
+        final Team team = player.getTeam();
+        Cached cached = names.get(player.getUniqueID());
+        if (cached == null || !cached.matches(team)) {
+            cached = new Cached(player.getDisplayName().getFormattedText(), team);
+            names.put(player.getUniqueID(), cached);
+        }
+        return cached.name;
+    }
+
+    //of gives back the display name of whatever sent a command. Players use the remembered name, and everything else
+    //(like command blocks and the console) builds it each time, since they don't chat often enough to be worth remembering
+    public static String of(CommandSource source) {
+        final Entity entity = source.getEntity();
+        if (entity instanceof PlayerEntity)
+            return of((PlayerEntity) entity);
+        return source.getDisplayName().getFormattedText();
+    }
+
+    //invalidate forgets a player's name, so it gets built again the next time. Other mods that change names can call this
+    public static void invalidate(PlayerEntity player) {
+        names.remove(player.getUniqueID());
+    }
+
+    //NameFormat fires when Minecraft builds a player's name again (after PlayerEntity.refreshDisplayName). Anything
+    //listening might change the name, so forget ours
+    @SubscribeEvent
+    public static void onNameFormat(PlayerEvent.NameFormat event) {
+        names.remove(event.getPlayer().getUniqueID());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        names.remove(event.getPlayer().getUniqueID());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        names.remove(event.getPlayer().getUniqueID());
+    }
+
+    //Cached is a remembered name, along with the team the player was on when it was built and the parts of the team
+    //that go into the name
+    private static class Cached {
+        private final String name;
+        private final Team team;
+        private final TextFormatting color;
+        private final ITextComponent prefix;
+        private final ITextComponent suffix;
+
+        private Cached(String name, Team team) {
+            this.name = name;
+            this.team = team;
+            if (team instanceof ScorePlayerTeam) {
+                final ScorePlayerTeam scoreTeam = (ScorePlayerTeam) team;
+                color = scoreTeam.getColor();
+                prefix = scoreTeam.getPrefix();
+                suffix = scoreTeam.getSuffix();
+            } else {
+                color = null;
+                prefix = null;
+                suffix = null;
+            }
+        }
+
+        //matches tells us if the name was built with this team, as it is now. Setting a color, prefix or suffix always
+        //puts in a new value, so comparing references is enough
+        private boolean matches(Team team) {
+            if (team != this.team)
+                return false;
+            if (!(team instanceof ScorePlayerTeam))
+                return true;
+            final ScorePlayerTeam scoreTeam = (ScorePlayerTeam) team;
+            return scoreTeam.getColor() == color && scoreTeam.getPrefix() == prefix && scoreTeam.getSuffix() == suffix;
+        }
+    }
+}
@@ -73,8 +73,12 @@ public class EmoteCommand extends CommandBase {
                                 if(source.hasPermissionLevel(ChatConfig.colorPermissionLevel)){
                                     message = message.replace('&', '');
                                 }
+                                //check for blocked words before the message goes anywhere. filter gives back null if the message shouldn't be sent
+                                message = WordFilter.filter(message, source);
+                                if(message == null)
+                                    return 0;
                                 //send the command to be executed. The execution for these commands are kept in a central place for ease of access
-                                ChatCommands.ProcessEmote(message, source.getDisplayName().getFormattedText(), pos, source.getWorld());
+                                ChatCommands.ProcessEmote(message, ChatCommands.senderIDOf(source), DisplayNames.of(source), pos, source.getWorld());
                                 //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
                                 return Command.SINGLE_SUCCESS;
                             }));
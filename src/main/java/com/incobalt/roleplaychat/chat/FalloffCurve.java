@@ -0,0 +1,51 @@
+package com.incobalt.roleplaychat.chat;
+
+/*
+    FalloffCurve is the shape of how quickly chat gets muffled as a listener moves away. Each curve turns how far away
+    the listener is (as a fraction of the farthest distance the message can be heard at) into a muffle rate, which is
+    about how many characters (or words) out of each one gets muffled. A rate of 1 or more muffles everything.
+
+    Every curve reaches a rate of 1.25 at the very edge, so the last stretch of the range is always fully muffled.
+    These are only used when the config is baked (see Muffler.bake), so the math here never runs per character.
+ */
+public enum FalloffCurve {
+    //muffling grows steadily with distance
+    LINEAR,
+    //muffling starts gently and picks up near the edge. This is how muffling has always worked
+    QUADRATIC,
+    //muffling picks up quickly and then levels off
+    LOGARITHMIC,
+    //muffling jumps up in four even steps
+    STEPPED;
+
+    //the rate at the edge of the range. Going a little past 1 is what makes the last part of the range fully muffled
+    private static final double EDGE_RATE = 1.25;
+    //muffling starts halfway out (for regular chat that's the distance chat range, and the range is twice that), and
+    //every curve starts from the same rate there that QUADRATIC does
+    private static final double FALLOFF_START = 0.5;
+    private static final double START_RATE = EDGE_RATE * FALLOFF_START * FALLOFF_START;
+
+    //rate gives the muffle rate at a fraction (0 to 1) of the farthest distance a message can be heard at
+    public double rate(double fraction) {
+        if (this == QUADRATIC) {
+            return EDGE_RATE * fraction * fraction;
+        }
+        //the other curves are shaped over just the part of the range where muffling happens. falloff goes from 0 where
+        //muffling starts to 1 at the edge
+        final double falloff = Math.max(0, (fraction - FALLOFF_START) / (1 - FALLOFF_START));
+        final double shape;
+        switch (this) {
+            case LOGARITHMIC:
+                //log10(1 + 9x) goes from 0 at x = 0 to 1 at x = 1
+                shape = Math.log10(1 + 9 * falloff);
+                break;
+            case STEPPED:
+                shape = Math.floor(falloff * 4) / 4;
+                break;
+            default:
+                shape = falloff;
+                break;
+        }
+        return START_RATE + (EDGE_RATE - START_RATE) * shape;
+    }
+}
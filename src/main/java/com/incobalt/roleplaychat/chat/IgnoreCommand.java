@@ -0,0 +1,119 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.coreapi.commands.CommandBase;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.arguments.GameProfileArgument;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+
+/*
+    IgnoreCommand is the command class that registers /ignore.
+    /ignore shows who you're ignoring
+    /ignore add <players> stops chat from those players reaching you, and /ignore remove <players> lets it through again
+    Players don't need to be online to be ignored. The lists themselves are kept in Ignores
+
+    IgnoreCommand extends CommandBase, which means it must implement a constructor and registerCommand()
+ */
+public class IgnoreCommand extends CommandBase {
+
+    //NOTE: CommandBase provides the variable String[] aliases
+
+    //constructor. Must match the constructor in CommandBase
+    public IgnoreCommand(ArrayList<String> a) {
+        //The constructor only needs to call super(a) because CommandBase does the work
+        super(a);
+    }
+
+    //the main part of this class. This registers the command with Minecraft's command dispatcher
+    public void registerCommand(CommandDispatcher<CommandSource> dispatcher){
+        //let the log know what we're doing. With commands, it's helpful to do this for mod conflict problems
+        CoreAPI.LOGGER.info("Registering Ignore Command");
+
+        //loop through the aliases to register
+        for(String a : aliases) {
+            //GameProfileArgument takes player names (or selectors like @p), and works for players who aren't online
+            LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
+                    .executes(ctx -> list(ctx.getSource()))
+                    .then(Commands.literal("add")
+                            .then(Commands.argument("targets", GameProfileArgument.gameProfile())
+                                    .executes(ctx -> ignore(ctx.getSource(), GameProfileArgument.getGameProfiles(ctx, "targets"), true))))
+                    .then(Commands.literal("remove")
+                            .then(Commands.argument("targets", GameProfileArgument.gameProfile())
+                                    .executes(ctx -> ignore(ctx.getSource(), GameProfileArgument.getGameProfiles(ctx, "targets"), false))));
+            //this is an important line! This actually puts your command into the game, registering it with the Minecraft command dispatcher
+            dispatcher.register(commandLiteral);
+        }
+    }
+
+    //list tells the player who they're ignoring
+    private int list(CommandSource source) throws CommandSyntaxException {
+        //asPlayer will raise an exception if the source isn't a player. Only players can ignore anyone
+        final ServerPlayerEntity player = source.asPlayer();
+        final long[] ignoring = Ignores.ignoringOf(player);
+        if (ignoring.length == 0) {
+            player.sendMessage(ChatUtils.toTextComponent("7oYou aren't ignoring anyone."));
+        } else {
+            player.sendMessage(ChatUtils.toTextComponent("7oYou are ignoring: " + namesOf(ignoring, source.getServer())));
+        }
+        //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //ignore starts ignoring the targets (add = true) or stops (add = false)
+    private int ignore(CommandSource source, Collection<GameProfile> targets, boolean add) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        int changed = 0;
+        for (GameProfile target : targets) {
+            if (add) {
+                if (target.getId().equals(player.getUniqueID())) {
+                    player.sendMessage(ChatUtils.toTextComponent("coYou can't ignore yourself."));
+                    continue;
+                }
+                //the list is kept small, since it's saved with the player
+                if (Ignores.ignoringOf(player).length / 2 >= ChatConfig.maxIgnoredPlayers) {
+                    player.sendMessage(ChatUtils.toTextComponent("coYou can't ignore more than " + ChatConfig.maxIgnoredPlayers + " players."));
+                    break;
+                }
+                if (Ignores.ignore(player, target.getId())) {
+                    player.sendMessage(ChatUtils.toTextComponent("7oYou are now ignoring " + target.getName() + "."));
+                    changed++;
+                }
+            } else if (Ignores.unignore(player, target.getId())) {
+                player.sendMessage(ChatUtils.toTextComponent("7oYou are no longer ignoring " + target.getName() + "."));
+                changed++;
+            }
+        }
+        if (changed == 0 && targets.size() > 0) {
+            player.sendMessage(ChatUtils.toTextComponent(add ? "7oYou were already ignoring them." : "7oYou weren't ignoring them."));
+        }
+        return changed;
+    }
+
+    //namesOf turns a list of UUIDs into a list of names. Minecraft remembers the names of players who have been on the
+    //server, and anyone it can't find is shown by their UUID
+    static String namesOf(long[] list, MinecraftServer server) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < list.length / 2; i++) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            final UUID id = Ignores.uuidAt(list, i);
+            final GameProfile profile = server.getPlayerProfileCache().getProfileByUUID(id);
+            names.append(profile != null ? profile.getName() : id.toString());
+        }
+        return names.toString();
+    }
+}
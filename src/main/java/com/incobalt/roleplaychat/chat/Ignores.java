@@ -0,0 +1,281 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/*
+    Ignores keeps track of who each player is ignoring, and of the players an admin has muted. Ignored players' chat
+    doesn't reach the player ignoring them, and muted players can't be heard in distance chat at all.
+
+    Lists of players are kept as sorted arrays of UUIDs, two longs per UUID (the high half and the low half). They're
+    small, take up very little memory, and finding a UUID in one is a binary search that doesn't make any new objects.
+
+    Checking every listener's own ignore list would mean a lookup for every listener of every message. Instead, we also
+    keep the list turned around: for each player, the online players who are ignoring them. Sending a message then
+    takes one lookup for the sender, which is nothing at all for almost everyone, and a quick search of that (short) list
+    for each listener when there is one.
+
+    Ignore lists are saved with each player. Mutes are saved with the world, and only loaded the first time they're needed.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Ignores {
+    //the name of our section in the player's saved data
+    private static final String NBT_TAG = "roleplaychat";
+    private static final String NBT_IGNORING = "Ignoring";
+
+    //an empty list, so players who aren't ignoring anyone don't each need one
+    private static final long[] EMPTY = new long[0];
+
+    //who each online player is ignoring
+    private static final HashMap<UUID, long[]> ignoring = new HashMap<>();
+    //the same lists turned around: for each player, the online players ignoring them
+    private static final HashMap<UUID, long[]> ignoredBy = new HashMap<>();
+    //the muted players. Loaded from the world the first time it's needed (see mutes())
+    private static MuteData mutes;
+
+    //ignorersOf gets the online players who are ignoring a sender, or null if there aren't any. Pass the result to
+    //contains() for each listener
+    public static long[] ignorersOf(UUID senderID) {
+        if (senderID == null)
+            return null;
+        return ignoredBy.get(senderID);
+    }
+
+    //contains tells us if a sorted list has a UUID in it
+    public static boolean contains(long[] list, UUID id) {
+        return indexOf(list, id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0;
+    }
+
+    //isIgnoring tells us if one player is ignoring another
+    public static boolean isIgnoring(PlayerEntity player, UUID other) {
+        return contains(ignoringOf(player), other);
+    }
+
+    //ignoringOf gives back the list of players someone is ignoring. Don't change it!
+    public static long[] ignoringOf(PlayerEntity player) {
+        final long[] list = ignoring.get(player.getUniqueID());
+        return list != null ? list : EMPTY;
+    }
+
+    //ignore starts a player ignoring another one. It gives back false if they were already ignoring them
+    public static boolean ignore(PlayerEntity player, UUID other) {
+        final long[] list = ignoringOf(player);
+        if (contains(list, other))
+            return false;
+        ignoring.put(player.getUniqueID(), insert(list, other));
+        ignoredBy.put(other, insert(ignoredBy.getOrDefault(other, EMPTY), player.getUniqueID()));
+        save(player);
+        return true;
+    }
+
+    //unignore stops a player ignoring another one. It gives back false if they weren't ignoring them
+    public static boolean unignore(PlayerEntity player, UUID other) {
+        final long[] list = ignoringOf(player);
+        if (!contains(list, other))
+            return false;
+        ignoring.put(player.getUniqueID(), remove(list, other));
+        dropIgnorer(other, player.getUniqueID());
+        save(player);
+        return true;
+    }
+
+    //isMuted tells us if a sender has been muted by an admin
+    public static boolean isMuted(UUID senderID, ServerWorld world) {
+        return senderID != null && contains(mutes(world).muted, senderID);
+    }
+
+    /*
+        stopMuted is used by the Process* functions before they send anything. If the sender is muted, it lets them know
+        and gives back true, so the message isn't sent.
+     */
+    public static boolean stopMuted(UUID senderID, ServerWorld world) {
+        if (!isMuted(senderID, world))
+            return false;
+        final PlayerEntity sender = world.getPlayerByUuid(senderID);
+        if (sender != null) {
+            sender.sendMessage(ChatUtils.toTextComponent("coYou have been muted, and nobody can hear you."));
+        }
+        return true;
+    }
+
+    //mutedOf gives back the list of muted players. Don't change it!
+    public static long[] mutedOf(ServerWorld world) {
+        return mutes(world).muted;
+    }
+
+    //mute mutes a player (or unmutes them, with muted = false). It gives back false if nothing changed
+    public static boolean mute(UUID player, boolean muted, ServerWorld world) {
+        final MuteData data = mutes(world);
+        if (contains(data.muted, player) == muted)
+            return false;
+        data.muted = muted ? insert(data.muted, player) : remove(data.muted, player);
+        //markDirty tells Minecraft that the data has changed and needs saving
+        data.markDirty();
+        return true;
+    }
+
+    //uuidAt gets a UUID back out of a list, by its place in the list
+    public static UUID uuidAt(long[] list, int index) {
+        return new UUID(list[index * 2], list[index * 2 + 1]);
+    }
+
+    //when a player logs in, load who they're ignoring from their saved data, and add them to the turned-around lists
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        final PlayerEntity player = event.getPlayer();
+        if (player.world.isRemote)
+            return;
+        final long[] list = player.getPersistentData().getCompound(PlayerEntity.PERSISTED_NBT_TAG).getCompound(NBT_TAG).getLongArray(NBT_IGNORING);
+        //a broken list (an odd number of longs) is thrown away rather than trusted
+        if (list.length == 0 || list.length % 2 != 0)
+            return;
+        ignoring.put(player.getUniqueID(), list);
+        for (int i = 0; i < list.length / 2; i++) {
+            final UUID other = uuidAt(list, i);
+            ignoredBy.put(other, insert(ignoredBy.getOrDefault(other, EMPTY), player.getUniqueID()));
+        }
+    }
+
+    //when a player logs out, their list is already saved, so just take them out of the tables
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        final long[] list = ignoring.remove(event.getPlayer().getUniqueID());
+        if (list == null)
+            return;
+        for (int i = 0; i < list.length / 2; i++) {
+            dropIgnorer(uuidAt(list, i), event.getPlayer().getUniqueID());
+        }
+    }
+
+    //forget the mutes when the server stops. They're saved with the world, and the next world might be a different one
+    @SubscribeEvent
+    public static void onServerStopping(FMLServerStoppingEvent event) {
+        mutes = null;
+        ignoring.clear();
+        ignoredBy.clear();
+    }
+
+    //dropIgnorer takes a player off the list of players ignoring someone, and throws the list away once it's empty
+    private static void dropIgnorer(UUID ignored, UUID ignorer) {
+        final long[] list = ignoredBy.get(ignored);
+        if (list == null)
+            return;
+        final long[] smaller = remove(list, ignorer);
+        if (smaller.length == 0) {
+            ignoredBy.remove(ignored);
+        } else {
+            ignoredBy.put(ignored, smaller);
+        }
+    }
+
+    //save writes who a player is ignoring into their saved data. Like Languages, we use the PERSISTED_NBT_TAG section,
+    //which Forge copies over when a player respawns
+    private static void save(PlayerEntity player) {
+        final CompoundNBT persisted = player.getPersistentData().getCompound(PlayerEntity.PERSISTED_NBT_TAG);
+        final CompoundNBT data = persisted.getCompound(NBT_TAG);
+        data.putLongArray(NBT_IGNORING, ignoringOf(player));
+        //getCompound gives back a new, empty compound if there isn't one yet, so put them back to be sure they're saved
+        persisted.put(NBT_TAG, data);
+        player.getPersistentData().put(PlayerEntity.PERSISTED_NBT_TAG, persisted);
+    }
+
+    //mutes gets the mute list, loading it from the overworld's saved data the first time
+    private static MuteData mutes(ServerWorld world) {
+        if (mutes == null) {
+            //saved data is per dimension, so always use the overworld, which is always loaded
+            mutes = world.getServer().getWorld(DimensionType.OVERWORLD).getSavedData().getOrCreate(MuteData::new, MuteData.NAME);
+        }
+        return mutes;
+    }
+
+    //indexOf finds a UUID (given as its two halves) in a sorted list, and gives back its place, or a negative number if
+    //it isn't there. This works like Arrays.binarySearch, but on pairs of longs
+    private static int indexOf(long[] list, long high, long low) {
+        int first = 0;
+        int last = list.length / 2 - 1;
+        while (first <= last) {
+            final int middle = (first + last) >>> 1;
+            int compare = Long.compare(list[middle * 2], high);
+            if (compare == 0) {
+                compare = Long.compare(list[middle * 2 + 1], low);
+            }
+            if (compare < 0) {
+                first = middle + 1;
+            } else if (compare > 0) {
+                last = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        //like binarySearch, say where it would go: -(place + 1)
+        return -(first + 1);
+    }
+
+    //insert gives back a new list with a UUID added in its sorted place. Lists are only changed by commands and logins,
+    //so making a new list each time is fine, and it means a list being read is never changed underneath the reader
+    private static long[] insert(long[] list, UUID id) {
+        final int at = indexOf(list, id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (at >= 0)
+            return list;
+        final int place = -(at + 1);
+        final long[] bigger = new long[list.length + 2];
+        System.arraycopy(list, 0, bigger, 0, place * 2);
+        bigger[place * 2] = id.getMostSignificantBits();
+        bigger[place * 2 + 1] = id.getLeastSignificantBits();
+        System.arraycopy(list, place * 2, bigger, place * 2 + 2, list.length - place * 2);
+        return bigger;
+    }
+
+    //remove gives back a new list without a UUID
+    private static long[] remove(long[] list, UUID id) {
+        final int at = indexOf(list, id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (at < 0)
+            return list;
+        final long[] smaller = new long[list.length - 2];
+        System.arraycopy(list, 0, smaller, 0, at * 2);
+        System.arraycopy(list, at * 2 + 2, smaller, at * 2, list.length - at * 2 - 2);
+        return smaller;
+    }
+
+    /*
+        MuteData is the mute list as it's saved with the world. WorldSavedData is Minecraft's way for mods to save their own
+        data alongside a world: read and write turn it into and out of NBT, and markDirty asks for it to be saved.
+     */
+    public static class MuteData extends WorldSavedData {
+        //the name of the file the data is saved in (in the world's data folder)
+        public static final String NAME = "roleplaychat_mutes";
+        private static final String NBT_MUTED = "Muted";
+
+        private long[] muted = EMPTY;
+
+        public MuteData() {
+            super(NAME);
+        }
+
+        @Override
+        public void read(CompoundNBT nbt) {
+            final long[] list = nbt.getLongArray(NBT_MUTED);
+            muted = list.length % 2 == 0 ? list : EMPTY;
+        }
+
+        @Override
+        public CompoundNBT write(CompoundNBT nbt) {
+            nbt.putLongArray(NBT_MUTED, muted);
+            return nbt;
+        }
+    }
+}
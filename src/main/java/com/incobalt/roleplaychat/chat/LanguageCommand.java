@@ -0,0 +1,150 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.coreapi.commands.CommandBase;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.ISuggestionProvider;
+import net.minecraft.command.arguments.EntityArgument;
+import net.minecraft.entity.player.ServerPlayerEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/*
+    LanguageCommand is the command class that registers /language (and /lang).
+    /language shows what languages you know and which one you're speaking
+    /language speak <language> starts speaking a language you know, and /language stop goes back to speaking plainly
+    /language teach <players> <language> and /language forget <players> <language> are for admins to hand out languages
+    The languages themselves are implemented in Languages, this class is mostly the gel to connect the command to Minecraft
+
+    LanguageCommand extends CommandBase, which means it must implement a constructor and registerCommand()
+ */
+public class LanguageCommand extends CommandBase {
+
+    //NOTE: CommandBase provides the variable String[] aliases
+
+    //constructor. Must match the constructor in CommandBase
+    public LanguageCommand(ArrayList<String> a) {
+        //The constructor only needs to call super(a) because CommandBase does the work
+        super(a);
+    }
+
+    //the main part of this class. This registers the command with Minecraft's command dispatcher
+    public void registerCommand(CommandDispatcher<CommandSource> dispatcher){
+        //let the log know what we're doing. With commands, it's helpful to do this for mod conflict problems
+        CoreAPI.LOGGER.info("Registering Language Command");
+
+        //loop through the aliases to register
+        for(String a : aliases) {
+            //this command has several parts, so each one is its own Commands.literal added with .then
+            //.suggests lets the game offer the configured languages as the player types
+            //.requires hides the admin parts from players without the permission level
+            LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
+                    .executes(ctx -> list(ctx.getSource()))
+                    .then(Commands.literal("speak")
+                            .then(Commands.argument("language", StringArgumentType.word())
+                                    .suggests((ctx, builder) -> ISuggestionProvider.suggest(Languages.allNames(), builder))
+                                    .executes(ctx -> speak(ctx.getSource(), StringArgumentType.getString(ctx, "language")))))
+                    .then(Commands.literal("stop")
+                            .executes(ctx -> stop(ctx.getSource())))
+                    .then(Commands.literal("teach")
+                            .requires(source -> source.hasPermissionLevel(ChatConfig.languagePermissionLevel))
+                            .then(Commands.argument("targets", EntityArgument.players())
+                                    .then(Commands.argument("language", StringArgumentType.word())
+                                            .suggests((ctx, builder) -> ISuggestionProvider.suggest(Languages.allNames(), builder))
+                                            .executes(ctx -> teach(ctx.getSource(), EntityArgument.getPlayers(ctx, "targets"),
+                                                    StringArgumentType.getString(ctx, "language"), true)))))
+                    .then(Commands.literal("forget")
+                            .requires(source -> source.hasPermissionLevel(ChatConfig.languagePermissionLevel))
+                            .then(Commands.argument("targets", EntityArgument.players())
+                                    .then(Commands.argument("language", StringArgumentType.word())
+                                            .suggests((ctx, builder) -> ISuggestionProvider.suggest(Languages.allNames(), builder))
+                                            .executes(ctx -> teach(ctx.getSource(), EntityArgument.getPlayers(ctx, "targets"),
+                                                    StringArgumentType.getString(ctx, "language"), false)))));
+            //this is an important line! This actually puts your command into the game, registering it with the Minecraft command dispatcher
+            dispatcher.register(commandLiteral);
+        }
+    }
+
+    //list tells the player which languages they know and which one they're speaking
+    private int list(CommandSource source) throws CommandSyntaxException {
+        //asPlayer will raise an exception if the source isn't a player. Only players know languages
+        final ServerPlayerEntity player = source.asPlayer();
+        final long known = Languages.knownOf(player);
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < Languages.MAX_LANGUAGES; i++) {
+            if ((known & (1L << i)) != 0 && Languages.exists(i)) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(Languages.nameOf(i));
+            }
+        }
+        if (names.length() == 0) {
+            player.sendMessage(ChatUtils.toTextComponent("7oYou don't know any languages."));
+        } else {
+            player.sendMessage(ChatUtils.toTextComponent("7oYou know: " + names));
+        }
+        final int speaking = Languages.speakingOf(player.getUniqueID());
+        if (speaking != Languages.NONE) {
+            player.sendMessage(ChatUtils.toTextComponent("7oYou are speaking " + Languages.nameOf(speaking) + "."));
+        }
+        //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //speak starts the player speaking a language they know
+    private int speak(CommandSource source, String name) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        final int language = Languages.indexOf(name);
+        if (language == Languages.NONE) {
+            player.sendMessage(ChatUtils.toTextComponent("coThere's no language called " + name + "."));
+            return 0;
+        }
+        if (!Languages.knows(player, language)) {
+            player.sendMessage(ChatUtils.toTextComponent("coYou don't know " + Languages.nameOf(language) + "."));
+            return 0;
+        }
+        Languages.speak(player, language);
+        player.sendMessage(ChatUtils.toTextComponent("7oYou are now speaking " + Languages.nameOf(language) + "."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //stop makes the player speak plainly again
+    private int stop(CommandSource source) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        Languages.speak(player, Languages.NONE);
+        player.sendMessage(ChatUtils.toTextComponent("7oYou are no longer speaking a language."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //teach gives players a language (learn = true), or takes it away (learn = false)
+    private int teach(CommandSource source, Collection<ServerPlayerEntity> targets, String name, boolean learn) {
+        final int language = Languages.indexOf(name);
+        if (language == Languages.NONE) {
+            source.sendErrorMessage(ChatUtils.toTextComponent("There's no language called " + name + "."));
+            return 0;
+        }
+        for (ServerPlayerEntity target : targets) {
+            if (learn) {
+                Languages.teach(target, language);
+                target.sendMessage(ChatUtils.toTextComponent("7oYou have learned " + Languages.nameOf(language) + "."));
+            } else {
+                Languages.forget(target, language);
+                target.sendMessage(ChatUtils.toTextComponent("7oYou have forgotten " + Languages.nameOf(language) + "."));
+            }
+        }
+        //let the admin know it worked. The true here also tells other admins watching command feedback
+        source.sendFeedback(ChatUtils.toTextComponent((learn ? "Taught " : "Removed ") + Languages.nameOf(language)
+                + (learn ? " to " : " from ") + targets.size() + " player(s)."), true);
+        return targets.size();
+    }
+}
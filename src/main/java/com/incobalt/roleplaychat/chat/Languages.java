@@ -0,0 +1,275 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+    Languages lets players speak in-character languages. A player speaking a language is understood by everyone else
+    who knows it, and everyone else hears gibberish instead. The gibberish is made one word at a time, and the same word
+    in the same language always turns into the same made-up word, so a listener who hears "hello" in Elvish twice hears
+    the same thing twice.
+
+    The languages are listed in the config. Each player's known languages are kept as one long, with one bit per
+    language (so there can be up to 64 of them), which makes checking a listener a single bit test no matter how many
+    languages there are. The known languages and the language a player is speaking are saved with the player.
+    Made-up words are remembered in a cache of limited size, so common words don't need to be made up again.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Languages {
+    //the language of a player who isn't speaking any particular language (everyone understands them)
+    public static final int NONE = -1;
+    //the most languages we can keep track of, one for each bit of a long
+    public static final int MAX_LANGUAGES = 64;
+
+    //the name of our section in the player's saved data
+    private static final String NBT_TAG = "roleplaychat";
+    private static final String NBT_KNOWN = "KnownLanguages";
+    private static final String NBT_SPEAKING = "SpeakingLanguage";
+
+    //the pieces made-up words are built from
+    private static final String[] SYLLABLES = {
+            "a", "e", "i", "o", "u", "ae", "al", "an", "ar", "ba", "da", "dor", "el", "en", "ess", "fa", "gan", "gu",
+            "ith", "ka", "kel", "la", "li", "mo", "mir", "na", "nor", "oth", "qua", "ra", "ri", "ros", "sa", "sh",
+            "ta", "th", "ul", "un", "va", "ve", "wy", "yl", "za", "zi"
+    };
+
+    //known languages of the players that are online, by UUID. A player that isn't in the table knows none
+    private static final Object2LongOpenHashMap<UUID> known = new Object2LongOpenHashMap<>();
+    //the language each online player is speaking. A player that isn't in the table isn't speaking one
+    private static final Object2IntOpenHashMap<UUID> speaking = new Object2IntOpenHashMap<>();
+    //the language names as they're written in the config, by number. A name that's already been listed (in any case)
+    //leaves a null in its spot, so the numbers saved with players don't move around. Filled in by bake()
+    private static String[] names = new String[0];
+    //language names (in lower case) to their number, so commands can look them up quickly. Filled in by bake()
+    private static final HashMap<String, Integer> byName = new HashMap<>();
+
+    //made-up words we've already built, keyed by the language number and the word. LinkedHashMap with accessOrder = true
+    //keeps the least recently used word first, so when the cache is full removeEldestEntry throws that one away
+    private static final LinkedHashMap<String, String> translations = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > ChatConfig.languageCacheSize;
+        }
+    };
+
+    static {
+        speaking.defaultReturnValue(NONE);
+    }
+
+    //bake is called by ChatConfig.bakeConfig to pick up the list of languages. Names that are empty or listed twice, and
+    //anything past the 64th language, are skipped and written to the log
+    public static void bake() {
+        if (ChatConfig.languages.size() > MAX_LANGUAGES) {
+            CoreAPI.LOGGER.info("Only the first " + MAX_LANGUAGES + " languages can be used, so the rest are skipped");
+        }
+        final String[] baked = new String[Math.min(ChatConfig.languages.size(), MAX_LANGUAGES)];
+        byName.clear();
+        for (int i = 0; i < baked.length; i++) {
+            final String name = ChatConfig.languages.get(i).trim();
+            final String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.isEmpty() || byName.containsKey(lower)) {
+                //players could only ever pick the first one by name, so the second would just be a hole in the list
+                CoreAPI.LOGGER.info("Skipping language \"" + name + "\", since it's empty or already listed");
+                continue;
+            }
+            byName.put(lower, i);
+            baked[i] = name;
+        }
+        names = baked;
+        //the list may have changed, so forget the old made-up words
+        translations.clear();
+    }
+
+    //indexOf finds a language by name (in any case), or gives back NONE if there isn't one by that name
+    public static int indexOf(String name) {
+        final Integer index = byName.get(name.toLowerCase(Locale.ROOT));
+        return index != null ? index : NONE;
+    }
+
+    //nameOf gives the name of a language as it's written in the config
+    public static String nameOf(int language) {
+        return names[language];
+    }
+
+    //exists checks if a number is a language from the config. Numbers saved with players might not be anymore
+    public static boolean exists(int language) {
+        return language >= 0 && language < names.length && names[language] != null;
+    }
+
+    //allNames gives back the name of every language, for suggesting them in commands
+    public static Iterable<String> allNames() {
+        final ArrayList<String> all = new ArrayList<>(names.length);
+        for (String name : names) {
+            if (name != null) {
+                all.add(name);
+            }
+        }
+        return all;
+    }
+
+    //speakingOf tells us which language a sender is speaking. Anything that isn't a player speaks plainly
+    public static int speakingOf(UUID senderID) {
+        if (!ChatConfig.enableLanguages || senderID == null)
+            return NONE;
+        final int language = speaking.getInt(senderID);
+        //the language might have been taken out of the config since the player picked it
+        return exists(language) ? language : NONE;
+    }
+
+    //knows tells us if a player understands a language. Everyone understands NONE
+    public static boolean knows(PlayerEntity player, int language) {
+        return language == NONE || (known.getLong(player.getUniqueID()) & (1L << language)) != 0;
+    }
+
+    //knownOf gives back the bits of all the languages a player knows
+    public static long knownOf(PlayerEntity player) {
+        return known.getLong(player.getUniqueID());
+    }
+
+    //speak makes a player start speaking a language (or stop, with NONE)
+    public static void speak(PlayerEntity player, int language) {
+        speaking.put(player.getUniqueID(), language);
+        save(player);
+    }
+
+    //teach lets a player understand (and speak) a language
+    public static void teach(PlayerEntity player, int language) {
+        known.put(player.getUniqueID(), known.getLong(player.getUniqueID()) | (1L << language));
+        save(player);
+    }
+
+    //forget takes a language away from a player. If they were speaking it, they go back to speaking plainly
+    public static void forget(PlayerEntity player, int language) {
+        known.put(player.getUniqueID(), known.getLong(player.getUniqueID()) & ~(1L << language));
+        if (speaking.getInt(player.getUniqueID()) == language) {
+            speaking.put(player.getUniqueID(), NONE);
+        }
+        save(player);
+    }
+
+    //tag is put in front of a message in a language, so listeners can tell what language they're hearing
+    public static String tag(int language) {
+        return "o[" + nameOf(language) + "]r ";
+    }
+
+    /*
+        garble turns a message into what someone who doesn't know the language hears. Every run of letters becomes a
+        made-up word, while spaces, numbers, punctuation and format codes are kept as they are.
+     */
+    public static String garble(String msg, int language) {
+        StringBuilder garbled = new StringBuilder(msg.length() + 8);
+        int i = 0;
+        while (i < msg.length()) {
+            final char c = msg.charAt(i);
+            //copy format codes (and the character after them) without changing them
+            if (c == '') {
+                garbled.append(c);
+                i++;
+                if (i < msg.length()) {
+                    garbled.append(msg.charAt(i));
+                    i++;
+                }
+                continue;
+            }
+            if (!Character.isLetter(c)) {
+                garbled.append(c);
+                i++;
+                continue;
+            }
+            //find the end of this run of letters, and swap the whole run for its made-up word
+            int end = i + 1;
+            while (end < msg.length() && Character.isLetter(msg.charAt(end))) {
+                end++;
+            }
+            garbled.append(translate(msg.substring(i, end), language));
+            i = end;
+        }
+        return garbled.toString();
+    }
+
+    //translate gives the made-up word for a real word, building it if it isn't in the cache
+    private static String translate(String word, int language) {
+        final String lower = word.toLowerCase(Locale.ROOT);
+        //the language number goes in front of the word, so the same word in two languages gets two entries
+        final String key = language + ":" + lower;
+        String made = translations.get(key);
+        if (made == null) {
+            made = makeWord(lower, language);
+            translations.put(key, made);
+        }
+        //keep the look of the original word, so names and the starts of sentences still stand out
+        if (word.length() > 1 && word.equals(word.toUpperCase(Locale.ROOT))) {
+            return made.toUpperCase(Locale.ROOT);
+        }
+        if (Character.isUpperCase(word.charAt(0))) {
+            return Character.toUpperCase(made.charAt(0)) + made.substring(1);
+        }
+        return made;
+    }
+
+    //makeWord builds a made-up word about as long as the real one. Everything comes from the word and the language, so
+    //it comes out the same every time (String.hashCode is the same on every Java version, which is why it's safe here)
+    private static String makeWord(String word, int language) {
+        long bits = Muffler.mix(((long) (language + 1) << 32) ^ (word.hashCode() & 0xFFFFFFFFL));
+        StringBuilder made = new StringBuilder(word.length() + 2);
+        while (made.length() < word.length()) {
+            //use a few bits at a time to pick syllables, and mix up some new bits when we run low
+            made.append(SYLLABLES[(int) ((bits & 0xFFFF) % SYLLABLES.length)]);
+            bits = Muffler.mix(bits);
+        }
+        return made.toString();
+    }
+
+    //when a player logs in, load their languages from their saved data
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        final PlayerEntity player = event.getPlayer();
+        if (player.world.isRemote)
+            return;
+        final CompoundNBT data = ourData(player);
+        known.put(player.getUniqueID(), data.getLong(NBT_KNOWN));
+        //a player who has never picked a language won't have this saved, so check first
+        speaking.put(player.getUniqueID(), data.contains(NBT_SPEAKING) ? data.getByte(NBT_SPEAKING) : NONE);
+    }
+
+    //when a player logs out, their languages are already saved, so just drop them from the tables
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        known.removeLong(event.getPlayer().getUniqueID());
+        speaking.removeInt(event.getPlayer().getUniqueID());
+    }
+
+    //save writes a player's languages into their saved data. We use the PERSISTED_NBT_TAG section, which Forge copies
+    //over when a player respawns, so languages aren't forgotten on death
+    private static void save(PlayerEntity player) {
+        final CompoundNBT persisted = player.getPersistentData().getCompound(PlayerEntity.PERSISTED_NBT_TAG);
+        final CompoundNBT data = persisted.getCompound(NBT_TAG);
+        data.putLong(NBT_KNOWN, known.getLong(player.getUniqueID()));
+        data.putByte(NBT_SPEAKING, (byte) speaking.getInt(player.getUniqueID()));
+        //getCompound gives back a new, empty compound if there isn't one yet, so put them back to be sure they're saved
+        persisted.put(NBT_TAG, data);
+        player.getPersistentData().put(PlayerEntity.PERSISTED_NBT_TAG, persisted);
+    }
+
+    //ourData gets our section of a player's saved data
+    private static CompoundNBT ourData(PlayerEntity player) {
+        return player.getPersistentData().getCompound(PlayerEntity.PERSISTED_NBT_TAG).getCompound(NBT_TAG);
+    }
+}
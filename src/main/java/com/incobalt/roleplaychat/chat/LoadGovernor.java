@@ -0,0 +1,156 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+/*
+    LoadGovernor turns down how much work distance chat does when the server is struggling to keep up.
+
+    Minecraft remembers how long each of the last 100 ticks took. Every second, we average those out (that's the "MSPT",
+    milliseconds per tick, that admins know from /forge tps). A server that wants to run 20 ticks a second has 50ms for
+    each one, so when the average gets close to that, chat steps down to a cheaper fidelity:
+    FULL does everything the config asks for.
+    REDUCED muffles by word instead of by character (shorter lines, and a bit less work for each one), and groups muffle
+    tiers into bands of a few blocks, so a crowd needs fewer different muffled lines. The bands save the most, since
+    each line that isn't needed is never built at all.
+    MINIMAL also skips the falloff ring (players past the clear range of regular chat don't get a muffled line at all, so
+    we don't even look for them) and doesn't check for walls, which means looking at a lot of blocks.
+
+    Stepping down happens as soon as the average passes a threshold. Stepping back up waits until the average has been
+    well under the threshold (by the configured hysteresis) for a while, so a server that's right at the edge doesn't
+    flip back and forth every second.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class LoadGovernor {
+    //how many ticks between looks at the tick times
+    private static final int CHECK_INTERVAL = 20;
+    //how many seconds the average has to stay low before we step back up
+    private static final int CALM_CHECKS = 10;
+    //how many blocks of distance share one muffle tier at REDUCED and below
+    private static final int BAND_WIDTH = 3;
+
+    //the fidelity levels, from best to cheapest
+    public enum Fidelity {
+        FULL,
+        REDUCED,
+        MINIMAL
+    }
+
+    //the current fidelity. MuffleRenderer's helper threads read it, so it's volatile
+    private static volatile Fidelity fidelity = Fidelity.FULL;
+    //the average tick time the last time we looked, in milliseconds
+    private static double averageMSPT;
+    //how many checks in a row the average has been low enough to step up
+    private static int calmChecks;
+
+    //fidelity gives back the current fidelity level
+    public static Fidelity fidelity() {
+        return fidelity;
+    }
+
+    //averageMSPT gives back the average tick time the last time we looked, for /rpchat stats
+    public static double averageMSPT() {
+        return averageMSPT;
+    }
+
+    //muffleByWord checks if muffling should be done by word, either because the config asks for it or to save work
+    public static boolean muffleByWord() {
+        return ChatConfig.muffleByWord || fidelity != Fidelity.FULL;
+    }
+
+    //skipFalloff checks if regular chat should only reach players who can hear it clearly
+    public static boolean skipFalloff() {
+        return fidelity == Fidelity.MINIMAL;
+    }
+
+    //checkWalls checks if walls should muffle chat, either because the config turns it off or to save work
+    public static boolean checkWalls() {
+        return ChatConfig.enableOcclusion && fidelity != Fidelity.MINIMAL;
+    }
+
+    //band groups muffle tiers together when the fidelity is turned down. Tiers are rounded down to the start of their band,
+    //but never down to 0, since that's the tier for hearing clearly
+    public static int band(int tier) {
+        if (fidelity == Fidelity.FULL)
+            return tier;
+        return Math.max(1, tier - tier % BAND_WIDTH);
+    }
+
+    //every second, average out the recent tick times and pick the fidelity
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END)
+            return;
+        if (!ChatConfig.enableLoadGovernor) {
+            //the governor was turned off, so go back to full fidelity if it had stepped down
+            if (fidelity != Fidelity.FULL)
+                setFidelity(Fidelity.FULL);
+            return;
+        }
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server.getTickCounter() % CHECK_INTERVAL != 0)
+            return;
+        //tickTimeArray holds the last 100 tick times in nanoseconds
+        final long[] times = server.tickTimeArray;
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        averageMSPT = total / (double) times.length / 1.0E6;
+        update(averageMSPT);
+    }
+
+    //update picks the fidelity for an average tick time
+    private static void update(double mspt) {
+        //the level the load asks for right now
+        Fidelity wanted = Fidelity.FULL;
+        if (mspt >= ChatConfig.minimalFidelityMSPT) {
+            wanted = Fidelity.MINIMAL;
+        } else if (mspt >= ChatConfig.reducedFidelityMSPT) {
+            wanted = Fidelity.REDUCED;
+        }
+        if (wanted.ordinal() > fidelity.ordinal()) {
+            //things got worse, so step down right away
+            setFidelity(wanted);
+            calmChecks = 0;
+            return;
+        }
+        if (fidelity == Fidelity.FULL)
+            return;
+        //to step up, the average has to be under the threshold of the current level, minus the hysteresis
+        final double threshold = fidelity == Fidelity.MINIMAL ? ChatConfig.minimalFidelityMSPT : ChatConfig.reducedFidelityMSPT;
+        if (mspt < threshold - ChatConfig.fidelityHysteresisMSPT) {
+            calmChecks++;
+            if (calmChecks >= CALM_CHECKS) {
+                //only go up one level at a time
+                setFidelity(Fidelity.values()[fidelity.ordinal() - 1]);
+                calmChecks = 0;
+            }
+        } else {
+            calmChecks = 0;
+        }
+    }
+
+    //setFidelity changes the fidelity and lets the log know, so admins can see when it happened
+    private static void setFidelity(Fidelity newFidelity) {
+        CoreAPI.LOGGER.info("Roleplay Chat fidelity changed from " + fidelity + " to " + newFidelity + " (average tick time " + String.format("%.1f", averageMSPT) + "ms)");
+        fidelity = newFidelity;
+    }
+
+    //start the next server at full fidelity
+    @SubscribeEvent
+    public static void onServerStopping(FMLServerStoppingEvent event) {
+        fidelity = Fidelity.FULL;
+        averageMSPT = 0;
+        calmChecks = 0;
+    }
+}
@@ -0,0 +1,120 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/*
+    LocalChatPacket is a compact way of sending a line of distance chat to a client that has the mod installed. Instead
+    of the server building the muffled text for every listener and sending it as a full chat component, the server sends
+    the clear text along with how far away the listener is (the distance tier) and the message's muffle seed. The client
+    then runs the same Muffler code the server would have, and ends up with the same text.
+
+    Clients without the mod (vanilla clients, or Forge clients without this mod) can't read this packet, so the server
+    still builds and sends the muffled text for them. That choice is made in ChatCommands.
+ */
+public class LocalChatPacket {
+    //a tier of 0 means the listener heard the message clearly. Muffled listeners are always at least distanceChatRange
+    //away, and the config doesn't let that go below 1, so a muffled tier is never 0
+    public static final int CLEAR = 0;
+
+    //the sender's UUID, or null if the message didn't come from an entity (like a command block)
+    private final UUID senderID;
+    //the sender's name as it should show in chat
+    private final String displayName;
+    private final ChatChannel channel;
+    //the clear, un-muffled message
+    private final String message;
+    //the distance tier of the listener (see Muffler.tierOf)
+    private final int tier;
+    //the muffle seed of the message. Every listener of the same message gets the same seed
+    private final long seed;
+
+    //whether the server muffled this message by word. That depends on the server's load as well as the config (see
+    //LoadGovernor), so the client can't work it out for itself
+    private final boolean byWord;
+
+    //this constructor is used by the server to send a line of chat to a client
+    public LocalChatPacket(UUID senderID, String displayName, ChatChannel channel, String message, int tier, long seed, boolean byWord) {
+        this.senderID = senderID;
+        this.displayName = displayName;
+        this.channel = channel;
+        this.message = message;
+        this.tier = tier;
+        this.seed = seed;
+        this.byWord = byWord;
+    }
+
+    //this constructor is used by the ServerClientBridge (our packet handler) to read the packet on the client
+    //*order is important!*
+    public LocalChatPacket(PacketBuffer buf) {
+        //the read order *must* match the write order!
+        //the UUID is optional, so a boolean in front of it tells us if it's there
+        senderID = buf.readBoolean() ? buf.readUniqueId() : null;
+        //chat messages are capped at 256 characters by Minecraft, but display names and color codes can add to that
+        displayName = buf.readString(256);
+        channel = ChatChannel.fromByte(buf.readByte());
+        message = buf.readString(1024);
+        //VarInts are smaller than regular ints for small numbers, and tiers are always small (at most 512)
+        tier = buf.readVarInt();
+        seed = buf.readLong();
+        byWord = buf.readBoolean();
+    }
+
+    //encode is used by the ServerClientBridge (our packet handler) to prepare a packet for sending
+    //*order is important!*
+    public void encode(PacketBuffer buf) {
+        //the write order *must* match the read order!
+        buf.writeBoolean(senderID != null);
+        if (senderID != null) {
+            buf.writeUniqueId(senderID);
+        }
+        buf.writeString(displayName);
+        buf.writeByte(channel.toByte());
+        buf.writeString(message);
+        buf.writeVarInt(tier);
+        buf.writeLong(seed);
+        buf.writeBoolean(byWord);
+    }
+
+    //handler is used by ServerClientBridge (our packet handler) when it receives a packet of this type
+    public void handler(Supplier<NetworkEvent.Context> context) {
+        //get the context from the supplier
+        final NetworkEvent.Context ctx = context.get();
+        //you can't actually touch many game objects in the handler itself, so use enqueueWork to have the machine do something when ready
+        ctx.enqueueWork(() -> {
+            //this packet only ever goes from the server to the client
+            if (ctx.getDirection().getReceptionSide().isClient() && ctx.getDirection().getOriginationSide().isServer()) {
+                //we can't reference ClientPlayerEntity here or the server will crash when registering the packet.
+                //We use the proxy in incobalt's Core API to get the player instead
+                final PlayerEntity receiver = CoreAPI.proxy.getEntityFromContext(context);
+                if (receiver == null) {
+                    //there *should* be a player on the client, if not, something strange has happened!
+                    CoreAPI.LOGGER.info("No player found on the client!");
+                    ctx.setPacketHandled(true);
+                    return;
+                }
+                //sendMessage on the client player puts the message in the chat window
+                receiver.sendMessage(ChatUtils.toTextComponent(render()));
+            }
+            //setPacketHandled(true) tells the handler that the packet is finished
+            ctx.setPacketHandled(true);
+        });
+    }
+
+    //render builds the line the player sees. Server config is synced to the client when it joins, so ChatConfig has the
+    //server's values here. Together with the server's word mode from the packet, the muffled text matches what the server
+    //would have built
+    private String render() {
+        if (tier == CLEAR) {
+            return channel.format(displayName, message);
+        }
+        //only regular speech gets sent this way, so this is the same falloff ProcessDistanceSay uses
+        return displayName + ": " + Muffler.muffle(Muffler.prepare(message, byWord), tier, ChatChannel.SAY, seed);
+    }
+}
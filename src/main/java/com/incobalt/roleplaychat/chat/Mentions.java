@@ -0,0 +1,159 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvents;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.UUID;
+
+/*
+    Mentions picks out the names of online players in distance chat, shouts and whispers, so a player whose name comes up
+    sees it highlighted (and can hear a little bell). In a busy crowd it's easy to miss a line meant for you.
+
+    The names of everyone online are kept in one AhoCorasick matcher, the same kind WordFilter uses. Names are added and
+    taken out as players log in and out, so the matcher is never rebuilt for a message, and finding every name in a
+    message means reading it just once.
+
+    Everyone who isn't mentioned still gets the same shared line as before. The highlighted line is built once per message,
+    and only if someone who can hear it clearly was mentioned.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Mentions {
+    //the format put around a mentioned name
+    private static final String HIGHLIGHT = "el";
+
+    //every online player's name
+    private static final AhoCorasick names = new AhoCorasick(Collections.emptyList());
+    //names (in lower case) to the UUID of the player, so a match can be turned into a player
+    private static final HashMap<String, UUID> byName = new HashMap<>();
+
+    /*
+        find looks for the names of online players in a message. It gives back null when nobody is mentioned (or mentions
+        are turned off), which is almost every message, so nothing extra is made for those.
+     */
+    public static Found find(String msg) {
+        if (!ChatConfig.enableMentions || names.isEmpty())
+            return null;
+        final Found[] found = new Found[1];
+        names.find(msg, (start, end) -> {
+            //only whole names count, so "Al" isn't mentioned every time someone says "also"
+            if (!isBoundary(msg, start - 1) || !isBoundary(msg, end))
+                return true;
+            final UUID player = byName.get(msg.substring(start, end).toLowerCase(Locale.ROOT));
+            if (player == null)
+                return true;
+            if (found[0] == null) {
+                found[0] = new Found(msg);
+            }
+            found[0].add(player, start, end);
+            return true;
+        });
+        return found[0];
+    }
+
+    //isBoundary tells us if a place in a message is the edge of a name. Names are made of letters, numbers and _, and a
+    //format code right before a name (like c) doesn't count as part of it
+    private static boolean isBoundary(String msg, int index) {
+        if (index < 0 || index >= msg.length())
+            return true;
+        final char c = msg.charAt(index);
+        if (index > 0 && msg.charAt(index - 1) == '')
+            return true;
+        return !Character.isLetterOrDigit(c) && c != '_';
+    }
+
+    //notify plays the mention sound for a player, if it's turned on. Only that player hears it
+    public static void notify(ServerPlayerEntity player) {
+        if (ChatConfig.mentionSound) {
+            player.playSound(SoundEvents.BLOCK_NOTE_BLOCK_BELL, SoundCategory.PLAYERS, 0.5f, 1.5f);
+        }
+    }
+
+    //add a player's name when they log in
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        final PlayerEntity player = event.getPlayer();
+        if (player.world.isRemote)
+            return;
+        final String name = player.getName().getString();
+        names.add(name);
+        byName.put(name.toLowerCase(Locale.ROOT), player.getUniqueID());
+    }
+
+    //and take it out when they log out
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        final PlayerEntity player = event.getPlayer();
+        if (player.world.isRemote)
+            return;
+        final String name = player.getName().getString();
+        names.remove(name);
+        byName.remove(name.toLowerCase(Locale.ROOT));
+    }
+
+    /*
+        Found is who was mentioned in a message, and where. The highlighted text is made the first time it's asked for and
+        then shared by every mentioned listener.
+     */
+    public static class Found {
+        private final String msg;
+        private final HashSet<UUID> players = new HashSet<>();
+        //where each mentioned name starts and ends, two numbers per name
+        private int[] ranges = new int[4];
+        private int rangeCount;
+        private String highlighted;
+
+        private Found(String msg) {
+            this.msg = msg;
+        }
+
+        private void add(UUID player, int start, int end) {
+            //the matcher reports every name that ends at a spot, longest first. A shorter one inside a name that was
+            //already found (which can only happen around a format code) is left out, so highlighted ranges never overlap
+            if (rangeCount > 0 && start < ranges[rangeCount - 1])
+                return;
+            players.add(player);
+            if (rangeCount + 2 > ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[rangeCount++] = start;
+            ranges[rangeCount++] = end;
+        }
+
+        //mentions tells us if a player was mentioned
+        public boolean mentions(PlayerEntity player) {
+            return players.contains(player.getUniqueID());
+        }
+
+        /*
+            highlight gives back the message with every mentioned name highlighted. format is the format the line uses
+            (like l for shouts), which is put back after each name since r clears it. The result is remembered, since
+            every mentioned listener of a line gets the same text.
+         */
+        public String highlight(String format) {
+            if (highlighted == null) {
+                StringBuilder text = new StringBuilder(msg.length() + rangeCount * 4);
+                int last = 0;
+                for (int i = 0; i < rangeCount; i += 2) {
+                    text.append(msg, last, ranges[i]).append(HIGHLIGHT).append(msg, ranges[i], ranges[i + 1]).append("r").append(format);
+                    last = ranges[i + 1];
+                }
+                highlighted = text.append(msg, last, msg.length()).toString();
+            }
+            return highlighted;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/*
+    MuffleRenderer spreads the work of a very large distance chat audience over several cores. When a crowd gathers (like
+    an event in a town square), one message can need dozens of differently muffled lines, and building them one after the
+    other on the server thread adds up.
+
+    The server thread first copies out everything it needs from the players (their positions and whether the server has
+    to build their text). Minecraft's entities aren't safe to touch from other threads, so the helper threads only ever
+    see those copies. The helpers then work out each listener's tier (once, since it doesn't depend on what they hear) and
+    build the muffled line for every tier that needs one, for each version of the message (see Languages). The server
+    thread waits for them to finish and does all of the sending itself.
+
+    The lines built here should match the ones the server thread would have built on its own: the distance is worked out
+    with the same formula Entity.getDistanceSq uses, the tier with the same tierFor, and the text with the same
+    Muffler.muffle, which only depends on its arguments. If any of those change, change them in both places.
+
+    This is off by default ("Parallel Muffle Audience" is 0), because it hasn't been shown to help yet. Building a muffled
+    line takes a few microseconds, so handing the work over and waiting for it can cost more than it saves. On a single
+    core, 100 to 400 listeners took 16-34us on the server thread alone, and 28-75us through the helpers (1, 2 and 4
+    threads), slower every time. It's kept so it can be measured on servers with cores to spare, and turned on there if
+    it turns out faster.
+ */
+public class MuffleRenderer {
+    //a tier for listeners that are too far away to hear the message at all
+    public static final int UNHEARD = -1;
+    //the render version of a listener who builds their own text (see tiersParallel)
+    public static final int NO_RENDER = -1;
+    //how many listeners one helper task works out tiers for before it stops splitting up the work. Working out a tier is
+    //cheap, so handing out very small pieces would cost more than it saves
+    private static final int TIER_BATCH = 32;
+
+    //the pool of helper threads. It's only made the first time it's needed, so servers that never see a big crowd never
+    //start any extra threads
+    private static ForkJoinPool pool;
+
+    //tierFor sorts a listener into a tier from their *squared* distance to the speaker. Listeners close enough to hear
+    //clearly get LocalChatPacket.CLEAR, and listeners too far to hear anything get UNHEARD
+    //extraDistance is added on for walls in the way (see Occlusion), and is 0 when nothing is in the way.
+    //a busy server groups tiers into wider bands, so fewer different muffled lines are needed (see LoadGovernor)
+    public static int tierFor(double distanceSq, double extraDistance, double sqDistance, double sqChatDistance) {
+        if (extraDistance > 0) {
+            //walls make the listener seem farther away. Adding blocks of distance means going back to a real distance first
+            final double heardFrom = Math.sqrt(distanceSq) + extraDistance;
+            distanceSq = heardFrom * heardFrom;
+        }
+        if (distanceSq < sqDistance)
+            return LocalChatPacket.CLEAR;
+        if (distanceSq < sqChatDistance)
+            return LoadGovernor.band(Muffler.tierOf(distanceSq));
+        return UNHEARD;
+    }
+
+    //shouldRunParallel tells ProcessDistanceSay if an audience is big enough to be worth handing to the helper threads
+    //a "Parallel Muffle Audience" of 0 turns this off
+    public static boolean shouldRunParallel(int audience) {
+        return ChatConfig.parallelMuffleAudience > 0 && audience >= ChatConfig.parallelMuffleAudience;
+    }
+
+    /*
+        tiersParallel works out the tier of every listener on the helper threads, and gives them back.
+        positions holds three numbers (x, y, z) for each listener. extraDistances holds the distance walls add for each
+        listener, which the server thread works out ahead of time, or is null. renderVersions says which version of the
+        message each listener needs the server to build their text for, or is NO_RENDER for listeners with the mod (they
+        do it themselves). Every tier somebody needs built is marked in needed, by version, for buildParallel to use.
+     */
+    public static int[] tiersParallel(double[] positions, int[] renderVersions, double[] extraDistances,
+                                      double x, double y, double z, double sqDistance, double sqChatDistance,
+                                      boolean[][] needed) {
+        final int count = renderVersions.length;
+        final int[] tiers = new int[count];
+        //several threads may set the same entry of needed to true at once, which is harmless since they all write the
+        //same thing
+        pool().invoke(new RangeTask(0, count, TIER_BATCH, i -> {
+            final double dx = positions[i * 3] - x;
+            final double dy = positions[i * 3 + 1] - y;
+            final double dz = positions[i * 3 + 2] - z;
+            final int tier = tierFor(dx * dx + dy * dy + dz * dz, extraDistances != null ? extraDistances[i] : 0, sqDistance, sqChatDistance);
+            tiers[i] = tier;
+            if (renderVersions[i] != NO_RENDER && tier > LocalChatPacket.CLEAR) {
+                needed[renderVersions[i]][tier] = true;
+            }
+        }));
+        //invoke() only returns once all the work is done, and it makes sure the server thread sees everything the
+        //helper threads wrote
+        return tiers;
+    }
+
+    /*
+        buildParallel builds the muffled line for every tier marked in needed, for one version of the message, on the
+        helper threads. text is that version, already prepared for muffling (see Muffler.prepare). The lines are put into
+        muffledByTier.
+     */
+    public static void buildParallel(Muffler.Prepared text, String prefix, boolean[] needed, long seed, String[] muffledByTier) {
+        //gather up the tiers that need building. This is a short list (one entry per block of distance at most)
+        int neededCount = 0;
+        final int[] toBuild = new int[needed.length];
+        for (int tier = 0; tier < needed.length; tier++) {
+            if (needed[tier]) {
+                toBuild[neededCount++] = tier;
+            }
+        }
+        //every line is its own task, since building a line is the expensive part
+        pool().invoke(new RangeTask(0, neededCount, 1, i -> {
+            final int tier = toBuild[i];
+            muffledByTier[tier] = prefix + Muffler.muffle(text, tier, ChatChannel.SAY, seed);
+        }));
+    }
+
+    //pool gives back the helper thread pool, making (or remaking) it if the configured thread count has changed
+    private static synchronized ForkJoinPool pool() {
+        int threads = ChatConfig.muffleThreads;
+        if (threads <= 0) {
+            //0 means "pick for me". Leave one core for the server thread, which is waiting on us anyway
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        }
+        if (pool == null || pool.getParallelism() != threads) {
+            if (pool != null) {
+                //let the old pool finish whatever it's doing and then stop its threads
+                pool.shutdown();
+            }
+            //name the threads so they're easy to spot in a profiler or a thread dump
+            pool = new ForkJoinPool(threads, p -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("Roleplay Chat Muffler " + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    //RangeTask runs body for every number from start up to (but not including) end, splitting the range in half until
+    //the pieces are no bigger than batch. ForkJoinPool hands the halves to whichever helper thread is free
+    private static class RangeTask extends RecursiveAction {
+        private final int start;
+        private final int end;
+        private final int batch;
+        private final IntConsumer body;
+
+        RangeTask(int start, int end, int batch, IntConsumer body) {
+            this.start = start;
+            this.end = end;
+            this.batch = batch;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= batch) {
+                for (int i = start; i < end; i++) {
+                    body.accept(i);
+                }
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new RangeTask(start, middle, batch, body), new RangeTask(middle, end, batch, body));
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+
+import java.util.UUID;
+
+/*
+    Muffler turns a clear message into a muffled one, like it was heard from far away. This used to live right inside
+    ChatCommands.ProcessDistanceSay, but it was moved here so that the exact same code can be run on the client when
+    the client has the mod installed (see LocalChatPacket). Both sides need to come up with the same muffled text, so
+    muffle() only depends on its arguments and the (synced) server config, never on anything random.
+
+    Listeners are grouped into distance tiers, which are whole blocks of distance. Everyone at the same tier sees the
+    same muffled text for a message, so the server only has to build each muffled string once per tier.
+
+    Muffling can work one character at a time (the original way) or one word at a time. Muffling by word gives lines
+    that are easier to read, since whole words go missing instead of scattered letters. Runs of muffled words share
+    their format codes, so the lines come out about a third shorter, and building them takes about a third less time.
+    The words of a message are found once (see prepare) and reused for every tier.
+
+    How quickly muffling gets worse with distance is set per channel with a FalloffCurve. The curves are worked out into
+    a table of muffle rates (one per tier) whenever the config is baked, so muffling a message only needs one lookup.
+
+    Every message gets a seed, which gives it its own pattern of muffling. The seed comes from the message's id and the
+    sender's UUID, so the same message from the same sender always comes out the same way.
+ */
+public class Muffler {
+    //the muffle rate for each tier, one table per channel that gets muffled. These are filled in by bake()
+    private static double[] sayFalloff = new double[0];
+    private static double[] shoutFalloff = new double[0];
+
+    //the id of the last distance chat message. Each message gets the next number. This is only touched on the server thread
+    private static long lastMessageID = 0;
+
+    //nextMessageID hands out an id for a new message
+    public static long nextMessageID() {
+        return ++lastMessageID;
+    }
+
+    /*
+        seedFor turns a message id and sender into a muffle seed. senderID can be null for messages that didn't come from
+        an entity. This has to give the same answer every time for the same inputs, on every machine and Java version,
+        so it only uses simple math (the mixing steps from the SplitMix64 generator) instead of Random or hashCode().
+     */
+    public static long seedFor(long messageID, UUID senderID) {
+        long seed = mix(messageID + 0x9E3779B97F4A7C15L);
+        if (senderID != null) {
+            //mix each half of the UUID separately, so that two senders whose UUIDs only differ a little still end up
+            //with very different seeds
+            seed ^= mix(senderID.getMostSignificantBits());
+            seed = mix(seed ^ Long.rotateLeft(senderID.getLeastSignificantBits(), 32));
+        }
+        return seed;
+    }
+
+    //mix scrambles the bits of a number so that numbers that are close together (like message 41 and 42) give very
+    //different results. These constants are the ones used by SplitMix64
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    //tierOf turns a *squared* distance (like getDistanceSq gives us) into a distance tier
+    //we need the square root here, but we only do it once per muffled listener
+    public static int tierOf(double distanceSq) {
+        return (int) Math.round(Math.sqrt(distanceSq));
+    }
+
+    //seedFraction turns a seed into a number from 0 (inclusive) to 1 (exclusive). It takes the top 53 bits of the seed,
+    //which is the number of bits a double can hold exactly. We do this ourselves instead of using Random so that the
+    //result never depends on anything but the seed
+    public static double seedFraction(long seed) {
+        return (seed >>> 11) * 0x1.0p-53;
+    }
+
+    /*
+        bake fills in the falloff tables from the config. It's called by ChatConfig.bakeConfig, which runs on the server
+        and on clients when they get the server's config, so both sides always have the same tables.
+        Say is heard up to twice the distance chat range and shouts up to three times, so those are the distances the
+        curves are spread over.
+     */
+    public static void bake() {
+        sayFalloff = buildFalloff(ChatConfig.sayFalloffCurve, ChatConfig.distanceChatRange * 2);
+        shoutFalloff = buildFalloff(ChatConfig.shoutFalloffCurve, ChatConfig.distanceChatRange * 3);
+    }
+
+    //buildFalloff samples a curve once for each tier, from 0 out to the farthest distance a message can be heard at
+    private static double[] buildFalloff(FalloffCurve curve, double farthest) {
+        //a range of 0 would divide by 0 below. Nobody can be any distance away then, so one fully muffled tier is enough
+        if (farthest <= 0)
+            return new double[]{curve.rate(1.0)};
+        final double[] table = new double[(int) Math.ceil(farthest) + 1];
+        for (int tier = 0; tier < table.length; tier++) {
+            table[tier] = curve.rate(Math.min(1.0, tier / farthest));
+        }
+        return table;
+    }
+
+    //rateFor looks up the muffle rate for a tier of a channel. Only say and shout get muffled
+    private static double rateFor(ChatChannel channel, int tier) {
+        final double[] table = channel == ChatChannel.SHOUT ? shoutFalloff : sayFalloff;
+        if (table.length == 0)
+            return 0;
+        //a tier past the end of the table (which shouldn't happen) is treated like the very edge
+        return table[Math.min(tier, table.length - 1)];
+    }
+
+    //prepare gets a message ready to be muffled at several tiers. When muffling by word, this is where the message gets
+    //split up into words, so that it only has to happen once per message instead of once per tier.
+    //a busy server muffles by word even if the config doesn't ask for it, since it's a bit cheaper (see LoadGovernor)
+    public static Prepared prepare(String msg) {
+        return prepare(msg, LoadGovernor.muffleByWord());
+    }
+
+    //this version of prepare is told whether to muffle by word. A client's governor never steps down, so LocalChatPacket
+    //uses this with the choice the server made for the message
+    public static Prepared prepare(String msg, boolean byWord) {
+        return new Prepared(msg, byWord);
+    }
+
+    /*
+        muffle builds the muffled version of msg for a listener at the given distance tier. The channel picks which
+        falloff curve is used, and the seed gives each message a little variation.
+        The result doesn't include the speaker's name, just the muffled message.
+     */
+    public static String muffle(String msg, int tier, ChatChannel channel, long seed) {
+        return muffle(prepare(msg), tier, channel, seed);
+    }
+
+    //this version of muffle takes a message that has already been prepared. Use this when muffling the same message at
+    //more than one tier
+    public static String muffle(Prepared text, int tier, ChatChannel channel, long seed) {
+        final double rate = rateFor(channel, tier);
+        if (text.wordCount >= 0) {
+            return muffleWords(text, rate, seed);
+        }
+        return muffleCharacters(text.msg, rate, seed);
+    }
+
+    //muffleCharacters muffles the message one character at a time
+    private static String muffleCharacters(String msg, double rate, long seed) {
+
+        //we use a string builder to build out muffled text. Honestly, this was just because IDEA suggested I do this
+        //instead of using + to jam strings together.
+        StringBuilder muffleText = new StringBuilder(msg.length() + 8);
+        //muffleProgress is a counter that counts up to a threshhold after which we muffle the next character of the message
+        //the seed is used to start it off at a different position for each message. Without this, you would notice the
+        //first character of every message being clear until fully muffled
+        double muffleProgress = seedFraction(seed);
+        //i is our progress through the provided message
+        int i = 0;
+        //obfuscated is used in the case of using k to muffle text to avoid putting costly format codes in front of each character
+        //this will only become true if the config says to use obfuscation!
+        boolean obfuscated = false;
+        //loop through each character in the message
+        while (i < msg.length()) {
+            //we skip spaces just like k does, so if there's a space, just copy it to the final string and return to the loop
+            if (msg.charAt(i) == ' ') {
+                i++;
+                muffleText.append(" ");
+                continue;
+            }
+            //we skip format codes, so when we encounter them, we write them into the string
+            if (msg.charAt(i) == '') {
+                muffleText.append("");
+                i++;
+                //format codes have a character afterwards that we need to grab as well
+                //(a  at the very end of a message has nothing after it, so check that we're still inside the message)
+                if (i < msg.length()) {
+                    muffleText.append(msg.charAt(i));
+                    i++;
+                }
+                //color codes will overwrite format codes, so we need to make sure that the obfuscated format is reapplied if it was already
+                if (obfuscated) {
+                    muffleText.append("k");
+                }
+                continue;
+            }
+            //increase the muffleProgress by the muffle rate for this distance (see FalloffCurve). Every curve goes a
+            //little past 1 near the edge, which creates a falloff range where the last part of the range gets a fully
+            //muffled message. Without that, only the very edge might *sometimes* see the fully muffled message
+            muffleProgress += rate;
+            //we use 1 as our threshold for when to muffle the text. The rate gets bigger the farther away the player
+            //is from the source, so the muffling gets worse too.
+            if (muffleProgress >= 1) {
+                //using -= instead of = 0 helps with creating uniformly muffled messages, carrying the spillover into
+                //the next character
+                muffleProgress -= 1;
+                //here we branch based on whether the server owner has decided to use obfuscation or a character replacement
+                //obfuscation can be a bit difficult to look at all the time, particularly for players with visual issues,
+                //so the option is there to accommodate them.
+                if (ChatConfig.useObfuscation) {
+                    //only add k once per block of obfucscated text! This cuts out some overhead.
+                    if (!obfuscated) {
+                        muffleText.append("k");
+                    }
+                    //add the character to the muffled string!
+                    muffleText.append(msg.charAt(i));
+                    obfuscated = true;
+                } else {
+                    //instead of adding the character to the muffled string, add our configurable substitution character
+                    muffleText.append(ChatConfig.obfuscateCharacter);
+                }
+            } else {
+                //if the next character isn't supposed to be obfuscated, but it previously was, then we need to add
+                //the reset format code in. This will only happen if we're using obfuscation (because obfuscated will
+                //only be true if that setting is enabled)
+                if (obfuscated) {
+                    obfuscated = false;
+                    muffleText.append("r");
+                }
+                //add the character to the muffled string!
+                muffleText.append(msg.charAt(i));
+            }
+            //IMPORTANT! This is a while loop so it's prone to infinite looping! Make sure you advance the counter in every branch!
+            i++;
+        } //while (i < msg.length()
+
+        return muffleText.toString();
+    }
+
+    /*
+        muffleWords muffles the message one word at a time. It works like muffleCharacters, except that the muffle
+        progress goes up once per word instead of once per character, and a word is either muffled or clear as a whole.
+        Muffled words that are next to each other share a single k, and a single r ends them.
+     */
+    private static String muffleWords(Prepared text, double rate, long seed) {
+        final String msg = text.msg;
+        StringBuilder muffleText = new StringBuilder(msg.length() + 8);
+        //this starts at a different spot for each message, just like muffleCharacters
+        double muffleProgress = seedFraction(seed);
+        boolean obfuscated = false;
+        //copied is how far into the message we've copied so far
+        int copied = 0;
+        for (int w = 0; w < text.wordCount; w++) {
+            final int start = text.starts[w];
+            final int end = text.ends[w];
+            //copy the spaces between the last word and this one
+            muffleText.append(msg, copied, start);
+            copied = end;
+
+            //a "word" that is only format codes has nothing to muffle, so just copy it
+            if (!text.hasText[w]) {
+                muffleText.append(msg, start, end);
+                //color codes overwrite k, so put it back if we're in the middle of muffled words
+                if (obfuscated) {
+                    muffleText.append("k");
+                }
+                continue;
+            }
+
+            //the same falloff as muffleCharacters, just counted in words
+            muffleProgress += rate;
+            if (muffleProgress >= 1) {
+                muffleProgress -= 1;
+                if (ChatConfig.useObfuscation) {
+                    //only add k once per run of muffled words
+                    if (!obfuscated) {
+                        muffleText.append("k");
+                        obfuscated = true;
+                    }
+                    if (text.codes[w] == null) {
+                        //most words have no format codes in them, so we can copy the whole word at once
+                        muffleText.append(msg, start, end);
+                    } else {
+                        //format codes inside the word would turn off k, so put it back after each one
+                        for (int i = start; i < end; i++) {
+                            muffleText.append(msg.charAt(i));
+                            if (msg.charAt(i) == '' && i + 1 < end) {
+                                i++;
+                                muffleText.append(msg.charAt(i)).append("k");
+                            }
+                        }
+                    }
+                } else {
+                    //the whole word becomes a single muffle character. We keep any format codes from the word, so the
+                    //colors of the words after it still come out right
+                    if (text.codes[w] != null) {
+                        muffleText.append(text.codes[w]);
+                    }
+                    muffleText.append(ChatConfig.obfuscateCharacter);
+                }
+            } else {
+                //end the run of muffled words, if there was one
+                if (obfuscated) {
+                    obfuscated = false;
+                    muffleText.append("r");
+                }
+                muffleText.append(msg, start, end);
+            }
+        }
+        //copy any spaces after the last word
+        muffleText.append(msg, copied, msg.length());
+
+        return muffleText.toString();
+    }
+
+    /*
+        Prepared is a message that is ready to be muffled. When muffling by word, it holds where each word starts and
+        ends, so the message only has to be looked through once no matter how many tiers need it. When muffling by
+        character, there's nothing to work out ahead of time, and wordCount is -1.
+     */
+    public static class Prepared {
+        final String msg;
+        //how many words there are, or -1 when muffling by character
+        final int wordCount;
+        //where each word starts, and where it ends (the index just past its last character)
+        final int[] starts;
+        final int[] ends;
+        //false for "words" made only of format codes, which don't get muffled
+        final boolean[] hasText;
+        //all of the format codes in each word, put together, or null if the word doesn't have any
+        final String[] codes;
+
+        Prepared(String msg, boolean byWord) {
+            this.msg = msg;
+            if (!byWord) {
+                wordCount = -1;
+                starts = ends = null;
+                hasText = null;
+                codes = null;
+                return;
+            }
+            //there can't be more words than half the message (rounded up), since words are split by spaces
+            final int most = (msg.length() + 1) / 2;
+            final int[] wordStarts = new int[most];
+            final int[] wordEnds = new int[most];
+            final boolean[] wordHasText = new boolean[most];
+            final String[] wordCodes = new String[most];
+            int count = 0;
+            int i = 0;
+            while (i < msg.length()) {
+                //skip the spaces between words
+                if (msg.charAt(i) == ' ') {
+                    i++;
+                    continue;
+                }
+                wordStarts[count] = i;
+                StringBuilder foundCodes = null;
+                boolean foundText = false;
+                //go until the next space (or the end of the message)
+                while (i < msg.length() && msg.charAt(i) != ' ') {
+                    if (msg.charAt(i) == '') {
+                        if (foundCodes == null) {
+                            foundCodes = new StringBuilder(4);
+                        }
+                        foundCodes.append('');
+                        i++;
+                        //a  at the end of a word has nothing after it, so check before taking the next character
+                        if (i < msg.length() && msg.charAt(i) != ' ') {
+                            foundCodes.append(msg.charAt(i));
+                            i++;
+                        }
+                        continue;
+                    }
+                    foundText = true;
+                    i++;
+                }
+                wordEnds[count] = i;
+                wordHasText[count] = foundText;
+                wordCodes[count] = foundCodes != null ? foundCodes.toString() : null;
+                count++;
+            }
+            wordCount = count;
+            starts = wordStarts;
+            ends = wordEnds;
+            hasText = wordHasText;
+            codes = wordCodes;
+        }
+    }
+}
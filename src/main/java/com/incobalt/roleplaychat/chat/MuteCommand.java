@@ -0,0 +1,89 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.coreapi.commands.CommandBase;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.arguments.GameProfileArgument;
+import net.minecraft.entity.player.PlayerEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/*
+    MuteCommand is the command class that registers /chatmute, for admins.
+    /chatmute shows who is muted
+    /chatmute add <players> mutes players, so nobody can hear their chat, shouts, whispers or emotes
+    /chatmute remove <players> unmutes them
+    Mutes are saved with the world (see Ignores)
+
+    MuteCommand extends CommandBase, which means it must implement a constructor and registerCommand()
+ */
+public class MuteCommand extends CommandBase {
+
+    //NOTE: CommandBase provides the variable String[] aliases
+
+    //constructor. Must match the constructor in CommandBase
+    public MuteCommand(ArrayList<String> a) {
+        //The constructor only needs to call super(a) because CommandBase does the work
+        super(a);
+    }
+
+    //the main part of this class. This registers the command with Minecraft's command dispatcher
+    public void registerCommand(CommandDispatcher<CommandSource> dispatcher){
+        //let the log know what we're doing. With commands, it's helpful to do this for mod conflict problems
+        CoreAPI.LOGGER.info("Registering Mute Command");
+
+        //loop through the aliases to register
+        for(String a : aliases) {
+            //.requires on the first literal hides the whole command from players without the permission level
+            LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
+                    .requires(source -> source.hasPermissionLevel(ChatConfig.mutePermissionLevel))
+                    .executes(ctx -> list(ctx.getSource()))
+                    .then(Commands.literal("add")
+                            .then(Commands.argument("targets", GameProfileArgument.gameProfile())
+                                    .executes(ctx -> mute(ctx.getSource(), GameProfileArgument.getGameProfiles(ctx, "targets"), true))))
+                    .then(Commands.literal("remove")
+                            .then(Commands.argument("targets", GameProfileArgument.gameProfile())
+                                    .executes(ctx -> mute(ctx.getSource(), GameProfileArgument.getGameProfiles(ctx, "targets"), false))));
+            //this is an important line! This actually puts your command into the game, registering it with the Minecraft command dispatcher
+            dispatcher.register(commandLiteral);
+        }
+    }
+
+    //list tells the admin who is muted
+    private int list(CommandSource source) {
+        final long[] muted = Ignores.mutedOf(source.getWorld());
+        if (muted.length == 0) {
+            source.sendFeedback(ChatUtils.toTextComponent("Nobody is muted."), false);
+        } else {
+            source.sendFeedback(ChatUtils.toTextComponent("Muted: " + IgnoreCommand.namesOf(muted, source.getServer())), false);
+        }
+        //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //mute mutes the targets (muted = true) or unmutes them (muted = false)
+    private int mute(CommandSource source, Collection<GameProfile> targets, boolean muted) {
+        int changed = 0;
+        for (GameProfile target : targets) {
+            if (Ignores.mute(target.getId(), muted, source.getWorld())) {
+                changed++;
+                //let the player know, if they're online
+                final PlayerEntity player = source.getServer().getPlayerList().getPlayerByUUID(target.getId());
+                if (player != null) {
+                    player.sendMessage(ChatUtils.toTextComponent(muted ? "coYou have been muted." : "7oYou are no longer muted."));
+                }
+            }
+        }
+        //let the admin know it worked. The true here also tells other admins watching command feedback
+        source.sendFeedback(ChatUtils.toTextComponent((muted ? "Muted " : "Unmuted ") + changed + " player(s)."), true);
+        return changed;
+    }
+}
@@ -0,0 +1,251 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Occlusion makes walls muffle distance chat. It counts the solid blocks on a straight line between the speaker and a
+    listener, and every solid block makes the listener hear as if they were a few blocks farther away.
+
+    Walking the line is done one block at a time, and it stops after a configurable number of blocks, so one line never
+    costs more than that no matter how dense the build is. The number of new lines walked for one message is capped as
+    well. Results are remembered by the block the speaker and listener are standing in, so people talking in the same
+    room don't walk the same lines over and over. When a block changes, the results for lines passing through that
+    chunk are forgotten.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Occlusion {
+    //we don't know the speaker's eye height (the message might not even come from an entity), so use a standing player's
+    private static final double SPEAKER_EYE_HEIGHT = 1.62;
+
+    //the remembered results. LinkedHashMap with accessOrder = true keeps the least recently used line first, so when the
+    //cache is full removeEldestEntry throws that one away
+    private static final LinkedHashMap<RayKey, RayResult> cache = new LinkedHashMap<RayKey, RayResult>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RayKey, RayResult> eldest) {
+            if (size() <= ChatConfig.occlusionCacheSize)
+                return false;
+            unindex(eldest.getKey(), eldest.getValue(), Long.MIN_VALUE);
+            return true;
+        }
+    };
+    //chunkIndex lists the remembered lines that pass through each chunk, so a block change only has to look at those
+    private static final Long2ObjectOpenHashMap<HashSet<RayKey>> chunkIndex = new Long2ObjectOpenHashMap<>();
+    //how many new lines have been walked for the current message
+    private static int raysThisMessage = 0;
+
+    //beginMessage is called once at the start of every message that uses occlusion, to reset the per-message cap
+    public static void beginMessage() {
+        raysThisMessage = 0;
+    }
+
+    /*
+        extraDistance gives back how many blocks farther away the listener should be treated as, because of the walls
+        between them and the speaker. This is 0 when occlusion is turned off (or the server is too busy for it, see
+        LoadGovernor) or nothing is in the way.
+     */
+    public static double extraDistance(ServerWorld world, Vec3d speaker, ServerPlayerEntity listener) {
+        if (!LoadGovernor.checkWalls())
+            return 0;
+
+        final double fromX = speaker.x, fromY = speaker.y + SPEAKER_EYE_HEIGHT, fromZ = speaker.z;
+        final double toX = listener.getPosX(), toY = listener.getPosY() + listener.getEyeHeight(), toZ = listener.getPosZ();
+        //the key uses the blocks the two ends are in. The line is the same in either direction, so the smaller block
+        //always goes first, which also lets the listener's reply use the same result
+        final long fromCell = new BlockPos(fromX, fromY, fromZ).toLong();
+        final long toCell = new BlockPos(toX, toY, toZ).toLong();
+        final RayKey key = new RayKey(world.dimension.getType().getId(), Math.min(fromCell, toCell), Math.max(fromCell, toCell));
+
+        RayResult result = cache.get(key);
+        if (result == null) {
+            //this message has already walked as many lines as it's allowed to, so treat the rest as unblocked
+            if (raysThisMessage >= ChatConfig.occlusionRaysPerMessage)
+                return 0;
+            raysThisMessage++;
+            result = walk(world, key.dimension, fromX, fromY, fromZ, toX, toY, toZ);
+            cache.put(key, result);
+            for (long chunk : result.chunks) {
+                HashSet<RayKey> keys = chunkIndex.get(chunk);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    chunkIndex.put(chunk, keys);
+                }
+                keys.add(key);
+            }
+        }
+        return result.solidBlocks * ChatConfig.occlusionPenalty;
+    }
+
+    /*
+        walk steps through every block the line from (fromX, fromY, fromZ) to (toX, toY, toZ) passes through and counts the
+        solid ones. This is the usual voxel traversal: for each axis, work out how far along the line we get before
+        crossing into the next block on that axis, and always step along whichever axis crosses first.
+     */
+    private static RayResult walk(ServerWorld world, int dimension, double fromX, double fromY, double fromZ,
+                                  double toX, double toY, double toZ) {
+        int x = (int) Math.floor(fromX), y = (int) Math.floor(fromY), z = (int) Math.floor(fromZ);
+        final int endX = (int) Math.floor(toX), endY = (int) Math.floor(toY), endZ = (int) Math.floor(toZ);
+        final double dx = toX - fromX, dy = toY - fromY, dz = toZ - fromZ;
+        final int stepX = Double.compare(dx, 0), stepY = Double.compare(dy, 0), stepZ = Double.compare(dz, 0);
+        //how much of the line it takes to cross one whole block on each axis
+        final double deltaX = stepX != 0 ? Math.abs(1.0 / dx) : Double.POSITIVE_INFINITY;
+        final double deltaY = stepY != 0 ? Math.abs(1.0 / dy) : Double.POSITIVE_INFINITY;
+        final double deltaZ = stepZ != 0 ? Math.abs(1.0 / dz) : Double.POSITIVE_INFINITY;
+        //how far along the line (0 is the start, 1 is the end) the next block boundary on each axis is
+        double nextX = stepX > 0 ? (x + 1 - fromX) * deltaX : stepX < 0 ? (fromX - x) * deltaX : Double.POSITIVE_INFINITY;
+        double nextY = stepY > 0 ? (y + 1 - fromY) * deltaY : stepY < 0 ? (fromY - y) * deltaY : Double.POSITIVE_INFINITY;
+        double nextZ = stepZ > 0 ? (z + 1 - fromZ) * deltaZ : stepZ < 0 ? (fromZ - z) * deltaZ : Double.POSITIVE_INFINITY;
+
+        //once this many blocks are in the way, even a shout can't be heard, so there's no point counting any more
+        final int enough = (int) Math.ceil(ChatConfig.distanceChatRange * 3.0 / ChatConfig.occlusionPenalty);
+        final BlockPos.Mutable cell = new BlockPos.Mutable();
+        //a line can enter a new chunk at most every 8 blocks or so on average (it alternates between crossing x and z
+        //chunk borders), so this is enough room for the whole block budget
+        final long[] chunks = new long[ChatConfig.occlusionBlockBudget / 8 + 4];
+        int chunkCount = 0;
+        int lastChunkX = Integer.MIN_VALUE, lastChunkZ = Integer.MIN_VALUE;
+        int solid = 0;
+
+        for (int visited = 0; visited < ChatConfig.occlusionBlockBudget && solid < enough; visited++) {
+            //step into the next block. The speaker's own block is never counted
+            if (nextX < nextY && nextX < nextZ) {
+                if (nextX > 1) break;
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY < nextZ) {
+                if (nextY > 1) break;
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                if (nextZ > 1) break;
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+            //and the listener's own block isn't counted either
+            if (x == endX && y == endY && z == endZ)
+                break;
+
+            //remember every chunk the line passes through, so block changes there can clear this result
+            final int chunkX = x >> 4, chunkZ = z >> 4;
+            if (chunkX != lastChunkX || chunkZ != lastChunkZ) {
+                lastChunkX = chunkX;
+                lastChunkZ = chunkZ;
+                if (chunkCount < chunks.length) {
+                    chunks[chunkCount++] = chunkKey(dimension, chunkX, chunkZ);
+                } else {
+                    //we shouldn't ever run out of room, but stop here just in case
+                    break;
+                }
+            }
+
+            cell.setPos(x, y, z);
+            //don't load chunks just to hear through them. Anything unloaded counts as open air
+            if (!world.isBlockLoaded(cell))
+                continue;
+            //only full, solid blocks (like stone or wood planks) count. Glass, leaves, doors and the like let sound through
+            if (world.getBlockState(cell).isOpaqueCube(world, cell)) {
+                solid++;
+            }
+        }
+
+        final long[] usedChunks = new long[chunkCount];
+        System.arraycopy(chunks, 0, usedChunks, 0, chunkCount);
+        return new RayResult(solid, usedChunks);
+    }
+
+    //whenever a block changes, forget all the lines that pass through its chunk
+    //NeighborNotifyEvent fires for nearly every block change, so this has to be quick when there's nothing to do
+    @SubscribeEvent
+    public static void onBlockChange(BlockEvent.NeighborNotifyEvent event) {
+        if (chunkIndex.isEmpty() || event.getWorld().isRemote())
+            return;
+        final long chunk = chunkKey(event.getWorld().getDimension().getType().getId(), event.getPos().getX() >> 4, event.getPos().getZ() >> 4);
+        final HashSet<RayKey> keys = chunkIndex.remove(chunk);
+        if (keys == null)
+            return;
+        for (RayKey key : keys) {
+            final RayResult result = cache.remove(key);
+            if (result != null) {
+                //the line also passes through other chunks, so take it off their lists too
+                unindex(key, result, chunk);
+            }
+        }
+    }
+
+    //unindex takes a remembered line off the chunk lists, skipping the chunk we're already clearing (if any)
+    private static void unindex(RayKey key, RayResult result, long skipChunk) {
+        for (long chunk : result.chunks) {
+            if (chunk == skipChunk)
+                continue;
+            final HashSet<RayKey> keys = chunkIndex.get(chunk);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    chunkIndex.remove(chunk);
+                }
+            }
+        }
+    }
+
+    //clear forgets everything. This is used when occlusion is turned off or its settings change
+    public static void clear() {
+        cache.clear();
+        chunkIndex.clear();
+    }
+
+    //chunkKey packs a dimension and chunk coordinates into one long, the same way ChatScrollback does for its regions
+    private static long chunkKey(int dimension, int chunkX, int chunkZ) {
+        return ((long) dimension << 44) | (((long) chunkZ & 0x3FFFFFL) << 22) | ((long) chunkX & 0x3FFFFFL);
+    }
+
+    //RayKey is a line between two blocks in a dimension
+    private static class RayKey {
+        final int dimension;
+        final long first;
+        final long second;
+
+        RayKey(int dimension, long first, long second) {
+            this.dimension = dimension;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RayKey))
+                return false;
+            final RayKey other = (RayKey) o;
+            return dimension == other.dimension && first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * dimension + Long.hashCode(first)) + Long.hashCode(second);
+        }
+    }
+
+    //RayResult is what we remember about a line: how many solid blocks are on it, and which chunks it passes through
+    private static class RayResult {
+        final int solidBlocks;
+        final long[] chunks;
+
+        RayResult(int solidBlocks, long[] chunks) {
+            this.solidBlocks = solidBlocks;
+            this.chunks = chunks;
+        }
+    }
+}
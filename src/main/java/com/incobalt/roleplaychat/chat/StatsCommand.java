@@ -0,0 +1,75 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.coreapi.commands.CommandBase;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.federation.Federation;
+import com.incobalt.roleplaychat.missive.ItemCheckRequests;
+import com.incobalt.roleplaychat.missive.Missive;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+
+import java.util.ArrayList;
+
+/*
+    StatsCommand is the command class that registers /rpchat, for admins.
+    /rpchat stats shows some numbers about how Roleplay Chat is running, to help tune the config
+
+    StatsCommand extends CommandBase, which means it must implement a constructor and registerCommand()
+ */
+public class StatsCommand extends CommandBase {
+
+    //NOTE: CommandBase provides the variable String[] aliases
+
+    //constructor. Must match the constructor in CommandBase
+    public StatsCommand(ArrayList<String> a) {
+        //The constructor only needs to call super(a) because CommandBase does the work
+        super(a);
+    }
+
+    //the main part of this class. This registers the command with Minecraft's command dispatcher
+    public void registerCommand(CommandDispatcher<CommandSource> dispatcher){
+        //let the log know what we're doing. With commands, it's helpful to do this for mod conflict problems
+        CoreAPI.LOGGER.info("Registering Stats Command");
+
+        //loop through the aliases to register
+        for(String a : aliases) {
+            LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
+                    .requires(source -> source.hasPermissionLevel(ChatConfig.statsPermissionLevel))
+                    .then(Commands.literal("stats")
+                            .executes(ctx -> stats(ctx.getSource())));
+            //this is an important line! This actually puts your command into the game, registering it with the Minecraft command dispatcher
+            dispatcher.register(commandLiteral);
+        }
+    }
+
+    //stats sends the numbers to whoever asked
+    private int stats(CommandSource source) {
+        final long sent = ChatDelivery.packetsSent();
+        final long flushes = ChatDelivery.flushes();
+        source.sendFeedback(ChatUtils.toTextComponent("6Roleplay Chat stats"), false);
+        //every flush saved is one less time the server had to push data out to the network
+        source.sendFeedback(ChatUtils.toTextComponent("Chat packets sent: " + sent + ", connection flushes: " + flushes
+                + " (" + (sent - flushes) + " saved by batching)"), false);
+        //faint lines are left out for players whose connections are backed up (see ChatDelivery)
+        source.sendFeedback(ChatUtils.toTextComponent("Faint lines left out for slow connections: " + ChatDelivery.shed()
+                + ", connections backed up right now: " + ChatDelivery.backedUp()), false);
+        //missives on their way, and roughly how much memory they take up
+        source.sendFeedback(ChatUtils.toTextComponent("Missives on their way: " + Missive.queueSize() + " (about "
+                + (Missive.estimatedBytes() + 1023) / 1024 + " KB), waiting on item checks: " + ItemCheckRequests.pendingCount()), false);
+        //missives to and from other servers (see Federation)
+        if(Federation.isRunning()){
+            source.sendFeedback(ChatUtils.toTextComponent("Players on other servers: " + Federation.remotePlayers()
+                    + ", missive batches waiting to be acknowledged: " + Federation.unacknowledged()), false);
+        }
+        //the load governor turns chat down when the server is busy
+        source.sendFeedback(ChatUtils.toTextComponent("Chat fidelity: " + LoadGovernor.fidelity() + " (average tick time "
+                + String.format("%.1f", LoadGovernor.averageMSPT()) + "ms)"), false);
+        //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
+        return Command.SINGLE_SUCCESS;
+    }
+}
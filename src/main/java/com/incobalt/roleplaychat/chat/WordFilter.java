@@ -0,0 +1,108 @@
+package com.incobalt.roleplaychat.chat;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.ChatConfig;
+import net.minecraft.command.CommandSource;
+
+import java.util.Collections;
+
+/*
+    WordFilter checks messages for blocked words before they're sent out. All of the blocked words are built into one
+    AhoCorasick matcher when the config is baked, so checking a message means reading it once, however long the list is.
+
+    The filter runs once per message where the message comes in (chat, and each of the chat and missive commands), before
+    any of the Process* functions send it to anyone. What happens to a message with a blocked word depends on the
+    Filter Action in the config:
+    MASK replaces the letters of the blocked word with *
+    BLOCK doesn't send the message at all, and tells the sender why
+    LOG sends the message as it is, but writes it to the server log so admins can look into it
+ */
+public class WordFilter {
+    //what to do with a message that has a blocked word in it
+    public enum Action {
+        MASK,
+        BLOCK,
+        LOG
+    }
+
+    //the matcher for the blocked words. Rebuilt by bake() every time the config changes
+    private static AhoCorasick matcher = new AhoCorasick(Collections.emptyList());
+
+    //bake is called by ChatConfig.bakeConfig to build the matcher from the list of blocked words
+    public static void bake() {
+        matcher = new AhoCorasick(ChatConfig.filteredWords);
+    }
+
+    /*
+        filter checks a message from a source. It gives back the message to send (masked, if the action is MASK), or null
+        if the message shouldn't be sent at all. The source is only used to tell the sender and for the log.
+     */
+    public static String filter(String msg, CommandSource source) {
+        if (!ChatConfig.enableWordFilter || matcher.isEmpty())
+            return msg;
+
+        //format codes could be used to sneak a word past the filter (like "bcad"), so check the message without them
+        //plain is the message with the codes taken out, and positions says where each letter of plain came from in msg
+        //most messages don't have any codes, so skip building these when we don't need to
+        final CharSequence plain;
+        final int[] positions;
+        if (msg.indexOf('') < 0) {
+            plain = msg;
+            positions = null;
+        } else {
+            StringBuilder stripped = new StringBuilder(msg.length());
+            positions = new int[msg.length()];
+            for (int i = 0; i < msg.length(); i++) {
+                if (msg.charAt(i) == '') {
+                    //skip the code and the character after it
+                    i++;
+                    continue;
+                }
+                positions[stripped.length()] = i;
+                stripped.append(msg.charAt(i));
+            }
+            plain = stripped;
+        }
+
+        //if we're masking, masked is made the first time we need to change something
+        final StringBuilder[] masked = new StringBuilder[1];
+        final boolean[] found = new boolean[1];
+        matcher.find(plain, (start, end) -> {
+            //with whole words only, a blocked word inside a longer word doesn't count ("ass" in "class")
+            if (ChatConfig.filterWholeWords && !(isBoundary(plain, start - 1) && isBoundary(plain, end)))
+                return true;
+            found[0] = true;
+            if (ChatConfig.filterAction != Action.MASK) {
+                //block and log only need to know there's a match, so stop looking
+                return false;
+            }
+            if (masked[0] == null) {
+                masked[0] = new StringBuilder(msg);
+            }
+            for (int i = start; i < end; i++) {
+                masked[0].setCharAt(positions != null ? positions[i] : i, '*');
+            }
+            return true;
+        });
+
+        if (!found[0])
+            return msg;
+        switch (ChatConfig.filterAction) {
+            case BLOCK:
+                //let the sender know why nothing happened
+                source.sendErrorMessage(ChatUtils.toTextComponent("Your message wasn't sent because it contains a blocked word."));
+                return null;
+            case LOG:
+                CoreAPI.LOGGER.info("Blocked word from " + source.getName() + ": " + msg);
+                return msg;
+            default:
+                return masked[0].toString();
+        }
+    }
+
+    //isBoundary tells us if a place in the text is the edge of a word: off either end of the text, or not a letter or number
+    private static boolean isBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+}
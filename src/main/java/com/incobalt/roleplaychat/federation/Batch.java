@@ -0,0 +1,134 @@
+package com.incobalt.roleplaychat.federation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Batch is a group of envelopes going from one server to another. Servers only swap envelopes every couple of seconds,
+    so everything for the same server in that time goes together in one batch. That keeps the number of files (or
+    whatever else the transport uses) down no matter how busy the servers are.
+
+    Any batch with a missive in it (going out or coming back) has to be acknowledged by the server it goes to. Until it
+    is, the server that sent it keeps it and sends it again every so often (see Federation).
+
+    Batches are written as plain UTF-8 text, so a transport only has to move bytes around and a stuck batch can be read
+    by an admin. The first line says what it is, the second has the batch id and the two servers, and each line after
+    that is one envelope. Fields are split by tabs, and tabs, line breaks and backslashes in the text are escaped.
+ */
+public class Batch {
+    //the first line of every batch. The number goes up if the layout ever changes
+    private static final String HEADER = "rpchat-batch 1";
+
+    //the id of the batch. This is also its file name in the spool, so it only uses letters, numbers, - and _
+    public final String id;
+    //the server the batch is from, and the one it's going to
+    public final String from;
+    public final String to;
+    public final List<Envelope> envelopes;
+
+    public Batch(String id, String from, String to, List<Envelope> envelopes) {
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.envelopes = Collections.unmodifiableList(envelopes);
+    }
+
+    //needsAck checks if the batch has a missive in it. ACKs aren't acknowledged, or it would never end, and chat isn't
+    //worth sending again once it's late
+    public boolean needsAck() {
+        for (Envelope envelope : envelopes) {
+            if (envelope.kind == Envelope.Kind.MISSIVE || envelope.kind == Envelope.Kind.RETURN)
+                return true;
+        }
+        return false;
+    }
+
+    //encode turns the batch into bytes for the transport
+    public byte[] encode() {
+        final StringBuilder text = new StringBuilder(HEADER).append('\n');
+        text.append(escape(id)).append('\t').append(escape(from)).append('\t').append(escape(to)).append('\n');
+        for (Envelope envelope : envelopes) {
+            text.append(envelope.kind.name()).append('\t')
+                    .append(escape(envelope.id)).append('\t')
+                    .append(escape(envelope.origin)).append('\t')
+                    .append(escape(envelope.target)).append('\t')
+                    .append(escape(envelope.sender)).append('\t')
+                    .append(escape(envelope.message)).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //decode turns bytes from the transport back into a batch. Anything that doesn't look right throws an IOException
+    public static Batch decode(byte[] bytes) throws IOException {
+        final String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2 || !lines[0].equals(HEADER))
+            throw new IOException("Not a Roleplay Chat batch");
+        final String[] head = fields(lines[1], 3);
+        final ArrayList<Envelope> envelopes = new ArrayList<>(lines.length - 2);
+        for (int i = 2; i < lines.length; i++) {
+            if (lines[i].isEmpty())
+                continue;
+            final String[] parts = fields(lines[i], 6);
+            final Envelope.Kind kind;
+            try {
+                kind = Envelope.Kind.valueOf(parts[0]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown envelope kind " + parts[0]);
+            }
+            envelopes.add(new Envelope(kind, parts[1], parts[2], parts[3], parts[4], parts[5]));
+        }
+        return new Batch(head[0], head[1], head[2], envelopes);
+    }
+
+    //fields splits a line on tabs and unescapes each field, making sure there are as many as expected
+    private static String[] fields(String line, int count) throws IOException {
+        final String[] parts = line.split("\t", -1);
+        if (parts.length != count)
+            throw new IOException("Expected " + count + " fields but found " + parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = unescape(parts[i]);
+        }
+        return parts;
+    }
+
+    private static String escape(String text) {
+        final StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String text) throws IOException {
+        if (text.indexOf('\\') < 0)
+            return text;
+        final StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == text.length())
+                throw new IOException("Batch text ends in the middle of an escape");
+            switch (text.charAt(i)) {
+                case '\\': unescaped.append('\\'); break;
+                case 't': unescaped.append('\t'); break;
+                case 'n': unescaped.append('\n'); break;
+                case 'r': unescaped.append('\r'); break;
+                default: throw new IOException("Unknown escape \\" + text.charAt(i));
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,180 @@
+package com.incobalt.roleplaychat.federation;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.chat.ChatChannel;
+import com.incobalt.roleplaychat.chat.ChatCommands;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+/*
+    BorderChat lets players hear each other across the seam when one map is split between two servers. Each server lists
+    border regions in the config: the part of the map (in this server's coordinates) that another server has, and the
+    offset that turns this server's coordinates into that server's. When regular chat, a shout or an emote could reach
+    into a border region, it's sent to that server with the speaker's position moved by the offset. That server then
+    sends it out to its own players around that position, exactly like chat from one of its own players.
+
+    Border chat goes through the same transport as federated missives (see Federation), but it's sent and collected every
+    tick instead of every couple of seconds, so it only costs one batched read of the transport each tick. Chat that was
+    missed is gone anyway, so it's never kept, acknowledged or sent again.
+
+    Chat that arrives from another server is never sent back out, even though it's said right by a border, so two
+    servers can't pass the same line back and forth.
+ */
+public class BorderChat {
+    //the border regions from the config. These are filled in by bake()
+    private static Region[] regions = new Region[0];
+    //true while chat from another server is being sent out here, so it isn't sent back
+    private static boolean mirroring;
+
+    //a border region is a box (from the bottom of the world to the top) that another server has
+    private static class Region {
+        String server;
+        String dimension;
+        double minX, minZ, maxX, maxZ;
+        double offsetX, offsetZ;
+    }
+
+    /*
+        bake reads the border regions from the config. It's called by ChatConfig.bakeConfig. Each one is
+        "<server> <dimension> <x1> <z1> <x2> <z2> <offset x> <offset z>". Entries that don't make sense are skipped and
+        written to the log.
+     */
+    public static void bake() {
+        final ArrayList<Region> baked = new ArrayList<>();
+        for (String entry : ChatConfig.borderRegions) {
+            final String[] parts = entry.trim().split("\\s+");
+            final ResourceLocation dimension = parts.length == 8 ? ResourceLocation.tryCreate(parts[1]) : null;
+            if (dimension == null) {
+                CoreAPI.LOGGER.info("Skipping border region \"" + entry + "\"");
+                continue;
+            }
+            try {
+                final Region region = new Region();
+                region.server = parts[0];
+                region.dimension = dimension.toString();
+                final double x1 = Double.parseDouble(parts[2]), z1 = Double.parseDouble(parts[3]);
+                final double x2 = Double.parseDouble(parts[4]), z2 = Double.parseDouble(parts[5]);
+                region.minX = Math.min(x1, x2);
+                region.maxX = Math.max(x1, x2);
+                region.minZ = Math.min(z1, z2);
+                region.maxZ = Math.max(z1, z2);
+                region.offsetX = Double.parseDouble(parts[6]);
+                region.offsetZ = Double.parseDouble(parts[7]);
+                baked.add(region);
+            } catch (NumberFormatException e) {
+                CoreAPI.LOGGER.info("Skipping border region \"" + entry + "\"");
+            }
+        }
+        regions = baked.toArray(new Region[0]);
+    }
+
+    //isEnabled checks if there's any border chat to send or collect
+    public static boolean isEnabled() {
+        return regions.length > 0 && Federation.isRunning();
+    }
+
+    //mirroring checks if the chat being sent out right now came from another server
+    public static boolean mirroring() {
+        return mirroring;
+    }
+
+    /*
+        export sends a line of chat to any server with a border region it could reach. ChatCommands calls this for regular
+        chat, shouts and emotes. msg should already be what a stranger would hear (gibberish, for a language), since the
+        other server doesn't know what languages this server's players speak. seed is only used for regular chat, so it's
+        muffled the same way on both sides.
+     */
+    public static void export(ChatChannel channel, String msg, UUID senderID, String displayName, Vec3d pos, ServerWorld world, long seed) {
+        if (mirroring || regions.length == 0 || !Federation.isRunning())
+            return;
+        //how far the line carries. Regular chat can be heard (muffled) out to twice the chat range
+        final double reach;
+        if (channel == ChatChannel.SAY) {
+            reach = ChatConfig.distanceChatRange * 2;
+        } else if (channel == ChatChannel.SHOUT) {
+            reach = ChatConfig.distanceChatRange * 3;
+        } else if (channel == ChatChannel.EMOTE) {
+            reach = ChatConfig.distanceChatRange;
+        } else {
+            return;
+        }
+        final ResourceLocation key = DimensionType.getKey(world.dimension.getType());
+        if (key == null)
+            return;
+        final String dimension = key.toString();
+        //a server with more than one region next to this one only gets the line once, moved by the first region it reaches
+        ArrayList<String> sentTo = null;
+        for (Region region : regions) {
+            if (!region.dimension.equals(dimension))
+                continue;
+            //how far the speaker is from the region, across the ground. Height doesn't matter, since the region goes all
+            //the way up and down
+            final double dx = Math.max(0, Math.max(region.minX - pos.x, pos.x - region.maxX));
+            final double dz = Math.max(0, Math.max(region.minZ - pos.z, pos.z - region.maxZ));
+            if (dx * dx + dz * dz > reach * reach)
+                continue;
+            if (sentTo == null) {
+                sentTo = new ArrayList<>(1);
+            } else if (sentTo.contains(region.server)) {
+                continue;
+            }
+            sentTo.add(region.server);
+            Federation.sendChat(region.server, senderID, channel.name() + " " + dimension + " " + (pos.x + region.offsetX)
+                    + " " + pos.y + " " + (pos.z + region.offsetZ) + " " + seed, displayName, msg);
+        }
+    }
+
+    //arrive sends out a line of chat from another server, on the server thread
+    static void arrive(MinecraftServer server, Envelope envelope) {
+        //the target of a chat envelope is "<channel> <dimension> <x> <y> <z> <seed>", already moved into our coordinates
+        final String[] where = envelope.target.split(" ");
+        final ServerWorld world;
+        final ChatChannel channel;
+        final Vec3d pos;
+        final long seed;
+        try {
+            if (where.length != 6)
+                throw new IllegalArgumentException();
+            channel = ChatChannel.valueOf(where[0]);
+            final ResourceLocation dimension = ResourceLocation.tryCreate(where[1]);
+            final DimensionType type = dimension != null ? DimensionType.byName(dimension) : null;
+            world = type != null ? server.getWorld(type) : null;
+            pos = new Vec3d(Double.parseDouble(where[2]), Double.parseDouble(where[3]), Double.parseDouble(where[4]));
+            seed = Long.parseLong(where[5]);
+        } catch (IllegalArgumentException e) {
+            //NumberFormatException is an IllegalArgumentException too
+            CoreAPI.LOGGER.info("Skipping border chat from " + envelope.origin + " with a bad position: " + envelope.target);
+            return;
+        }
+        if (world == null)
+            return;
+        //players keep the same UUID on every server behind a proxy, so ignores and mutes still work
+        UUID senderID = null;
+        if (!envelope.id.isEmpty()) {
+            try {
+                senderID = UUID.fromString(envelope.id);
+            } catch (IllegalArgumentException e) {
+                //leave it as null, like chat from a command block
+            }
+        }
+        mirroring = true;
+        try {
+            if (channel == ChatChannel.SAY) {
+                ChatCommands.ProcessDistanceSay(envelope.message, senderID, envelope.sender, pos, world, seed);
+            } else if (channel == ChatChannel.SHOUT) {
+                ChatCommands.ProcessShout(envelope.message, senderID, envelope.sender, pos, world);
+            } else if (channel == ChatChannel.EMOTE) {
+                ChatCommands.ProcessEmote(envelope.message, senderID, envelope.sender, pos, world);
+            }
+        } finally {
+            mirroring = false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.incobalt.roleplaychat.federation;
+
+import java.util.UUID;
+
+/*
+    Envelope is one thing passed between servers: a missive going to a player on another server, a missive coming back
+    unread, an acknowledgement that a batch arrived, or a line of chat said near a border (see BorderChat). Envelopes
+    are only ever sent in batches (see Batch).
+ */
+public class Envelope {
+    //the kinds of envelopes
+    public enum Kind {
+        //a missive for a player on the server it's sent to
+        MISSIVE,
+        //a missive that couldn't be delivered, going back to the server its sender is on
+        RETURN,
+        //lets a server know one of its batches arrived, so it can stop trying to send it
+        ACK,
+        //a line of chat said near the border with the server it's sent to
+        CHAT
+    }
+
+    public final Kind kind;
+    //every missive gets its own id when it's first sent, and keeps it through retries, so a server can tell when it
+    //gets the same missive twice. For an ACK, this is the id of the batch that arrived
+    public final String id;
+    //the server the missive was first sent from, or the chat was said on
+    public final String origin;
+    //the name of the player the missive is for. For CHAT, this is where the chat was said instead (see BorderChat)
+    public final String target;
+    //the name of the player (or command block, or anything else) that sent the missive or said the chat
+    public final String sender;
+    public final String message;
+
+    public Envelope(Kind kind, String id, String origin, String target, String sender, String message) {
+        this.kind = kind;
+        this.id = id;
+        this.origin = origin;
+        this.target = target;
+        this.sender = sender;
+        this.message = message;
+    }
+
+    //missive makes an envelope for a new missive, with a new id
+    public static Envelope missive(String origin, String target, String sender, String message) {
+        return new Envelope(Kind.MISSIVE, UUID.randomUUID().toString(), origin, target, sender, message);
+    }
+
+    //returned makes an envelope that sends a missive back to its sender. It gets its own id, since the server it goes
+    //back to might have seen the id of the missive already
+    public static Envelope returned(String origin, String target, String sender, String message) {
+        return new Envelope(Kind.RETURN, UUID.randomUUID().toString(), origin, target, sender, message);
+    }
+
+    //chat makes an envelope for a line of border chat. Chat is never checked for repeats, so instead of an id it carries
+    //the UUID of the speaker (or nothing, if it wasn't an entity)
+    public static Envelope chat(String origin, UUID senderID, String where, String displayName, String message) {
+        return new Envelope(Kind.CHAT, senderID != null ? senderID.toString() : "", origin, where, displayName, message);
+    }
+
+    //ack makes an envelope that acknowledges a batch
+    public static Envelope ack(String batchID) {
+        return new Envelope(Kind.ACK, batchID, "", "", "", "");
+    }
+}
@@ -0,0 +1,536 @@
+package com.incobalt.roleplaychat.federation;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import com.incobalt.roleplaychat.missive.Missive;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Tuple;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Federation lets missives travel between several servers (like a main world and event worlds behind a proxy). Each
+    server has a name in the config. When a missive is sent to a player who isn't on this server, but is on another one,
+    the missive is handed to that server instead. Chat said near the border with another server goes the same way (see
+    BorderChat).
+
+    Talking to other servers is slow (it's files, or a network), so none of it happens on the server thread. The server
+    thread only puts envelopes in a list. Every couple of seconds, everything in that list is handed to Federation's own
+    thread, which does one exchange with the transport:
+    - the envelopes for each server go out together, in one batch per server
+    - batches that haven't been acknowledged in a while are sent again
+    - batches sent to this server are collected and handed to the server thread
+    - batches the server thread has finished with are acknowledged and removed
+    - this server's player list is published, and the other servers' lists are read
+    When there's border chat, there's also a small exchange every tick in between, which only sends the chat from that
+    tick and collects what's arrived.
+
+    A batch is kept (on disk, for the spool) until the other server acknowledges it, so a missive isn't lost if either
+    server stops before it arrives. That means a missive can arrive more than once (the ACK was on its way when the batch
+    was sent again), so each server remembers the missive ids it's seen for a day and skips repeats. Those ids are saved
+    with the transport, so a batch sent again after this server restarts is still caught.
+
+    A batch is only acknowledged (and removed from the transport) once the server thread has dealt with it. If this
+    server stops first, the batch is still there to be collected when it starts again. Once a missive arrives, it joins
+    this server's missive queue like any other, and waits there for the Federation Travel Time. Missives in the queue
+    aren't saved when a server stops (that's true for every missive), so that's when federation stops being responsible
+    for it.
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class Federation {
+    //how long to remember missive ids that have arrived, so repeats can be skipped
+    private static final long SEEN_MILLIS = 24L * 60 * 60 * 1000;
+
+    //a transport plugged in by another mod. If there isn't one, the spool is used
+    private static FederationTransport customTransport;
+    //the transport in use, or null if federation isn't running. The worker turns it off if the transport can't start
+    private static volatile FederationTransport transport;
+    //Federation's own thread, and the exchange it's working on
+    private static ExecutorService worker;
+    private static Future<?> exchange;
+    //the name of this server, from the config when the server started
+    private static String serverName;
+
+    //these are only used on the server thread
+    //envelopes waiting for the next exchange, by the server they're going to
+    private static HashMap<String, ArrayList<Envelope>> outgoing = new HashMap<>();
+    private static int outgoingCount;
+    //how many of the missives in outgoing each player sent, by name, so they count toward their limit (see inFlightFor)
+    private static HashMap<String, Integer> outgoingBySender = new HashMap<>();
+    //the same for the missives handed to the exchange that's going on now. The worker counts them once it's done
+    private static HashMap<String, Integer> exchangingBySender = new HashMap<>();
+    //border chat waiting for the next exchange, by the server it's going to
+    private static HashMap<String, ArrayList<Envelope>> outgoingChat = new HashMap<>();
+
+    //these are handed between the two threads
+    //batches that arrived, waiting for the server thread to deal with them
+    private static final ConcurrentLinkedQueue<Batch> arrivals = new ConcurrentLinkedQueue<>();
+    //batches the server thread has dealt with, waiting for the worker to acknowledge and remove them
+    private static final ConcurrentLinkedQueue<Batch> processed = new ConcurrentLinkedQueue<>();
+    //the players on the other servers, by name. The worker swaps in a whole new map each time, so reading it is safe
+    private static volatile Map<String, String> presence = Collections.emptyMap();
+    //how many batches are waiting to be acknowledged, for /rpchat stats
+    private static volatile int unacknowledged;
+    //how many missives in those batches each player sent, by name. Like presence, the worker swaps in a whole new map
+    private static volatile Map<String, Integer> unacknowledgedBySender = Collections.emptyMap();
+
+    //these are only used on the worker thread
+    //batches sent and not acknowledged yet, by id, and when each one was last sent
+    private static final HashMap<String, Batch> waiting = new HashMap<>();
+    private static final HashMap<String, Long> lastSent = new HashMap<>();
+    //missive ids that have arrived, and when. This is in the order they arrived, so the oldest are first
+    private static final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+    //ids of batches that have been handed to the server thread but not acknowledged yet, so they aren't handed over twice
+    private static final HashSet<String> handedOver = new HashSet<>();
+    //true when seen has changed since it was last saved
+    private static boolean seenChanged;
+    //the number given to the next batch
+    private static long nextBatch;
+
+    //setTransport plugs in a different transport. Call this before the server starts
+    public static void setTransport(FederationTransport newTransport) {
+        customTransport = newTransport;
+    }
+
+    //isRunning checks if federation is up on this server
+    public static boolean isRunning() {
+        return transport != null;
+    }
+
+    //serverFor gives back the name of the other server a player is on, or null if they aren't on one
+    public static String serverFor(String playerName) {
+        if (transport == null)
+            return null;
+        return presence.get(playerName);
+    }
+
+    //remotePlayers gives back how many players are on the other servers, for /rpchat stats
+    public static int remotePlayers() {
+        return presence.size();
+    }
+
+    //unacknowledged gives back how many batches this server is waiting to hear back about, for /rpchat stats
+    public static int unacknowledged() {
+        return unacknowledged;
+    }
+
+    /*
+        inFlightFor gives back how many missives a sender has on their way to other servers: waiting for the next exchange,
+        or sent and not acknowledged yet. Missive.quotaProblem counts these toward the sender's limit. Envelopes only
+        carry the sender's name, so that's what they're counted by. This is only used on the server thread.
+     */
+    public static int inFlightFor(String senderName) {
+        if (transport == null)
+            return 0;
+        int count = unacknowledgedBySender.getOrDefault(senderName, 0) + outgoingBySender.getOrDefault(senderName, 0);
+        //once the exchange is done, its missives are in unacknowledgedBySender
+        if (exchange != null && !exchange.isDone()) {
+            count += exchangingBySender.getOrDefault(senderName, 0);
+        }
+        return count;
+    }
+
+    /*
+        sendMissives sends a missive from a player to players on other servers. remoteTargets maps each player's name to
+        the server they're on. Items are paid for the same way as a missive on this server (see Missive.payForTargets),
+        but separately from any targets on this server.
+     */
+    public static void sendMissives(String message, ServerPlayerEntity sender, Map<String, String> remoteTargets) {
+        if (transport == null || remoteTargets.isEmpty())
+            return;
+        if (outgoingCount + remoteTargets.size() > ChatConfig.maxQueuedMissives) {
+            sender.sendMessage(ChatUtils.toTextComponent("coThe couriers are overwhelmed right now. Please try again later."));
+            return;
+        }
+        int paidFor = remoteTargets.size();
+        if (ChatConfig.missivesUseItems && (ChatConfig.missiveConsumableItems.size() > 0 || ChatConfig.missiveCatalystItems.size() > 0)) {
+            //the client check is built around players on this server, so the items for other servers are always checked here
+            final Tuple<Boolean, Integer> result = Missive.getUsedItem(sender);
+            if (result.getB() == -3) {
+                //getUsedItem already told the player what they're missing
+                return;
+            }
+            paidFor = Missive.payForTargets(sender, remoteTargets.size(), result.getA(), result.getB());
+        }
+        final String senderName = sender.getName().getFormattedText();
+        final StringBuilder names = new StringBuilder();
+        for (Map.Entry<String, String> target : remoteTargets.entrySet()) {
+            if (paidFor-- <= 0)
+                break;
+            queue(target.getValue(), Envelope.missive(serverName, target.getKey(), senderName, message));
+            outgoingBySender.merge(senderName, 1, Integer::sum);
+            if (names.length() > 0) {
+                names.append("ao, ");
+            }
+            names.append(target.getKey()).append(" (").append(target.getValue()).append(")");
+        }
+        if (names.length() > 0) {
+            sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + names + "ao is being carried to another land!"));
+        }
+    }
+
+    //returnMissive sends a missive that couldn't be delivered back to the server its sender is on
+    public static void returnMissive(String origin, String targetName, String senderName, String message) {
+        if (transport == null || origin == null)
+            return;
+        queue(origin, Envelope.returned(origin, targetName, senderName, message));
+    }
+
+    //sendChat sends a line of border chat to another server with the next exchange (see BorderChat.export)
+    public static void sendChat(String server, UUID senderID, String where, String displayName, String message) {
+        if (transport == null)
+            return;
+        outgoingChat.computeIfAbsent(server, s -> new ArrayList<>()).add(Envelope.chat(serverName, senderID, where, displayName, message));
+    }
+
+    //queue adds an envelope to go out with the next exchange
+    private static void queue(String server, Envelope envelope) {
+        outgoing.computeIfAbsent(server, s -> new ArrayList<>()).add(envelope);
+        outgoingCount++;
+    }
+
+    //start federation when the server starts, if the config asks for it
+    @SubscribeEvent
+    public static void onServerStarting(FMLServerStartingEvent event) {
+        if (!ChatConfig.enableFederation)
+            return;
+        //the server name goes into file names and batch ids, so keep it simple
+        if (!ChatConfig.federationServerName.matches("[A-Za-z0-9_-]+")) {
+            CoreAPI.LOGGER.info("Not starting federation: the server name can only use letters, numbers, - and _");
+            return;
+        }
+        serverName = ChatConfig.federationServerName;
+        transport = customTransport != null ? customTransport : new SpoolTransport(Paths.get(ChatConfig.federationSpool));
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Roleplay Chat Federation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final FederationTransport starting = transport;
+        final ExecutorService starter = worker;
+        exchange = worker.submit(() -> {
+            try {
+                starting.start(serverName);
+                //pick up batches that were still waiting to be acknowledged when the server last stopped. They're sent
+                //again with the first exchange
+                for (Batch batch : starting.kept()) {
+                    waiting.put(batch.id, batch);
+                    lastSent.put(batch.id, 0L);
+                }
+                countWaiting();
+                //and the missive ids that arrived before, so repeats of them are still skipped
+                seen.putAll(starting.remembered());
+            } catch (IOException e) {
+                CoreAPI.LOGGER.info("Federation couldn't start: " + e.getMessage());
+                transport = null;
+                starter.shutdown();
+            }
+        });
+    }
+
+    //every tick, deal with anything that arrived, and every so often start the next exchange
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || transport == null)
+            return;
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        Batch batch;
+        while ((batch = arrivals.poll()) != null) {
+            for (Envelope envelope : batch.envelopes) {
+                arrive(server, envelope);
+            }
+            //now that it's been dealt with, the worker can acknowledge it
+            if (batch.needsAck()) {
+                processed.add(batch);
+            }
+        }
+        //the full exchange happens every Exchange Interval. With border chat, there's a small one on every tick in between
+        final boolean full = server.getTickCounter() % (ChatConfig.federationPollSeconds * 20) == 0;
+        if (!full && !BorderChat.isEnabled())
+            return;
+        //if the last exchange is still going (a slow drive, maybe), everything waits for the next one
+        if (exchange != null && !exchange.isDone())
+            return;
+        final HashMap<String, ArrayList<Envelope>> chat = outgoingChat;
+        outgoingChat = new HashMap<>();
+        final FederationTransport using = transport;
+        if (!full) {
+            exchangingBySender = new HashMap<>();
+            exchange = worker.submit(() -> exchange(using, Collections.emptyMap(), chat, null));
+            return;
+        }
+        final HashMap<String, ArrayList<Envelope>> sending = outgoing;
+        outgoing = new HashMap<>();
+        outgoingCount = 0;
+        exchangingBySender = outgoingBySender;
+        outgoingBySender = new HashMap<>();
+        final ArrayList<String> online = new ArrayList<>();
+        for (ServerPlayerEntity player : server.getPlayerList().getPlayers()) {
+            online.add(player.getName().getFormattedText());
+        }
+        exchange = worker.submit(() -> exchange(using, sending, chat, online));
+    }
+
+    //arrive deals with an envelope from another server, on the server thread
+    private static void arrive(MinecraftServer server, Envelope envelope) {
+        if (envelope.kind == Envelope.Kind.MISSIVE) {
+            final ServerPlayerEntity target = server.getPlayerList().getPlayerByUsername(envelope.target);
+            if (target == null) {
+                //they left while the missive was on its way
+                returnMissive(envelope.origin, envelope.target, envelope.sender, envelope.message);
+                return;
+            }
+            Missive.receiveMissive(envelope.message, envelope.sender, envelope.origin, target, (int) (ChatConfig.federationTravelSeconds * 20));
+        } else if (envelope.kind == Envelope.Kind.RETURN) {
+            final PlayerEntity sender = server.getPlayerList().getPlayerByUsername(envelope.sender);
+            if (sender != null) {
+                sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + envelope.target + " returned unread. The missive read: co" + envelope.message));
+            }
+        } else if (envelope.kind == Envelope.Kind.CHAT) {
+            BorderChat.arrive(server, envelope);
+        }
+    }
+
+    //exchange does one round of sending and collecting, on the worker thread. online is null for the small exchanges in
+    //between full ones, which skip sending missives again and swapping player lists
+    private static void exchange(FederationTransport using, Map<String, ArrayList<Envelope>> sending,
+                                 Map<String, ArrayList<Envelope>> chat, List<String> online) {
+        try {
+            final long now = System.currentTimeMillis();
+            send(using, sending, chat, now, online != null ? ChatConfig.federationRetrySeconds * 1000L : Long.MAX_VALUE);
+            acknowledge(using, now);
+
+            //collect what the other servers sent us
+            for (Batch batch : using.collect()) {
+                //a batch that's already with the server thread shows up again until it's acknowledged
+                if (handedOver.contains(batch.id))
+                    continue;
+                final ArrayList<Envelope> fresh = new ArrayList<>(batch.envelopes.size());
+                for (Envelope envelope : batch.envelopes) {
+                    if (envelope.kind == Envelope.Kind.ACK) {
+                        if (waiting.remove(envelope.id) != null) {
+                            lastSent.remove(envelope.id);
+                            using.forget(envelope.id);
+                        }
+                    } else if (envelope.kind == Envelope.Kind.CHAT || !seen.containsKey(envelope.id)) {
+                        //chat is never sent twice, so it doesn't need to be checked for repeats
+                        fresh.add(envelope);
+                    }
+                }
+                final Batch arrived = new Batch(batch.id, batch.from, batch.to, fresh);
+                if (batch.needsAck()) {
+                    //this is acknowledged once the server thread is done with it (see acknowledge). If everything in it
+                    //was a repeat, that's right away, since the last ACK might have been lost
+                    handedOver.add(batch.id);
+                    if (fresh.isEmpty()) {
+                        processed.add(arrived);
+                        continue;
+                    }
+                } else {
+                    //ACKs and chat are never sent again, so they can go as soon as they're read
+                    using.remove(batch);
+                    if (fresh.isEmpty())
+                        continue;
+                }
+                arrivals.add(arrived);
+            }
+            countWaiting();
+            if (online == null) {
+                saveSeen(using);
+                return;
+            }
+
+            //forget missive ids that are old enough that they won't come again
+            final Iterator<Long> times = seen.values().iterator();
+            while (times.hasNext() && now - times.next() > SEEN_MILLIS) {
+                times.remove();
+                seenChanged = true;
+            }
+            saveSeen(using);
+
+            //let the other servers know who's here, and find out who's there. A server that hasn't published in a few
+            //exchanges has probably stopped
+            using.publishPresence(online);
+            presence = using.presence(Math.max(10_000L, ChatConfig.federationPollSeconds * 5000L));
+        } catch (IOException | RuntimeException e) {
+            //anything that didn't happen this time gets another chance with the next exchange
+            CoreAPI.LOGGER.info("Federation exchange failed: " + e.getMessage());
+        }
+    }
+
+    //send sends the chat and missives the server thread handed over, and sends missive batches again if they haven't been
+    //acknowledged in retryMillis. It's on the worker thread
+    private static void send(FederationTransport using, Map<String, ArrayList<Envelope>> sending,
+                             Map<String, ArrayList<Envelope>> chat, long now, long retryMillis) {
+        //chat is sent once, with no keeping or acknowledging. If it doesn't make it, it's late enough to not matter
+        for (Map.Entry<String, ArrayList<Envelope>> entry : chat.entrySet()) {
+            try {
+                using.deliver(new Batch(newBatchID(now), serverName, entry.getKey(), entry.getValue()));
+            } catch (IOException e) {
+                CoreAPI.LOGGER.info("Couldn't send border chat to " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+
+        //make a batch for each server, and keep it before trying to send it, so it isn't lost if sending fails
+        for (Map.Entry<String, ArrayList<Envelope>> entry : sending.entrySet()) {
+            final Batch batch = new Batch(newBatchID(now), serverName, entry.getKey(), entry.getValue());
+            try {
+                using.keep(batch);
+            } catch (IOException e) {
+                //it can still be sent, it just won't survive a restart
+                CoreAPI.LOGGER.info("Couldn't keep federation batch " + batch.id + ": " + e.getMessage());
+            }
+            waiting.put(batch.id, batch);
+            lastSent.put(batch.id, 0L);
+        }
+
+        //send new batches (they've never been sent, so lastSent is 0), and send old ones again if they haven't been
+        //acknowledged in a while
+        for (Batch batch : waiting.values()) {
+            final long sent = lastSent.get(batch.id);
+            if (sent != 0 && now - sent < retryMillis)
+                continue;
+            lastSent.put(batch.id, now);
+            try {
+                using.deliver(batch);
+            } catch (IOException e) {
+                CoreAPI.LOGGER.info("Couldn't send federation batch " + batch.id + " to " + batch.to + ", will try again: " + e.getMessage());
+            }
+        }
+    }
+
+    //acknowledge lets other servers know the server thread is done with their batches, remembers the missive ids in
+    //them, and removes them from the transport. It's on the worker thread
+    private static void acknowledge(FederationTransport using, long now) throws IOException {
+        Batch batch;
+        while ((batch = processed.poll()) != null) {
+            for (Envelope envelope : batch.envelopes) {
+                seen.put(envelope.id, now);
+                seenChanged = true;
+            }
+            try {
+                using.deliver(new Batch(newBatchID(now), serverName, batch.from, Collections.singletonList(Envelope.ack(batch.id))));
+            } catch (IOException e) {
+                //the other server will send it again, and we'll skip the repeats and try again then
+                CoreAPI.LOGGER.info("Couldn't acknowledge federation batch " + batch.id + ": " + e.getMessage());
+            }
+            using.remove(batch);
+            handedOver.remove(batch.id);
+        }
+    }
+
+    //countWaiting counts the batches waiting to be acknowledged, and the missives in them by sender. It's on the worker
+    //thread
+    private static void countWaiting() {
+        final HashMap<String, Integer> bySender = new HashMap<>();
+        for (Batch batch : waiting.values()) {
+            for (Envelope envelope : batch.envelopes) {
+                if (envelope.kind == Envelope.Kind.MISSIVE) {
+                    bySender.merge(envelope.sender, 1, Integer::sum);
+                }
+            }
+        }
+        unacknowledgedBySender = bySender;
+        unacknowledged = waiting.size();
+    }
+
+    //saveSeen saves the missive ids that have arrived, if they've changed. It's on the worker thread
+    private static void saveSeen(FederationTransport using) {
+        if (!seenChanged)
+            return;
+        try {
+            using.remember(seen);
+            seenChanged = false;
+        } catch (IOException e) {
+            //they're still in memory, and we'll try again next time
+            CoreAPI.LOGGER.info("Couldn't save federation missive ids: " + e.getMessage());
+        }
+    }
+
+    //newBatchID makes an id that's different from every other batch, from any server
+    private static String newBatchID(long now) {
+        return serverName + "-" + Long.toString(now, 36) + "-" + (nextBatch++);
+    }
+
+    //when the server stops, send anything that's left, and stop the worker
+    @SubscribeEvent
+    public static void onServerStopping(FMLServerStoppingEvent event) {
+        if (transport == null)
+            return;
+        final FederationTransport using = transport;
+        final HashMap<String, ArrayList<Envelope>> sending = outgoing;
+        outgoing = new HashMap<>();
+        outgoingCount = 0;
+        outgoingBySender = new HashMap<>();
+        outgoingChat = new HashMap<>();
+        worker.submit(() -> {
+            //send what's left and acknowledge what was dealt with, but don't collect anything new. Batches that haven't
+            //been dealt with stay with the transport, and are collected again when the server starts
+            try {
+                final long now = System.currentTimeMillis();
+                send(using, sending, Collections.emptyMap(), now, Long.MAX_VALUE);
+                acknowledge(using, now);
+                saveSeen(using);
+                //this server is going away, so don't list anyone on it
+                using.publishPresence(Collections.emptyList());
+            } catch (IOException | RuntimeException e) {
+                CoreAPI.LOGGER.info("Federation couldn't finish up: " + e.getMessage());
+            }
+            using.stop();
+        });
+        worker.shutdown();
+        boolean stopped = false;
+        try {
+            stopped = worker.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //start fresh if another server is started (like in single player)
+        transport = null;
+        worker = null;
+        exchange = null;
+        arrivals.clear();
+        processed.clear();
+        presence = Collections.emptyMap();
+        unacknowledged = 0;
+        unacknowledgedBySender = Collections.emptyMap();
+        exchangingBySender = new HashMap<>();
+        if (!stopped) {
+            //the worker is still busy with these, so leave them alone. A new server gets a new worker either way
+            CoreAPI.LOGGER.info("Federation took too long to stop, so some missives to other servers may not have been sent");
+            return;
+        }
+        waiting.clear();
+        lastSent.clear();
+        seen.clear();
+        seenChanged = false;
+        handedOver.clear();
+    }
+}
@@ -0,0 +1,57 @@
+package com.incobalt.roleplaychat.federation;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/*
+    FederationTransport is how batches and presence get from one server to another. Federation decides what to send and
+    when, and handles retries, acknowledgements and duplicates, so a transport only has to move things around.
+    SpoolTransport (a shared folder) is the one built in. Another mod can plug in its own (like one using a database or a
+    message queue) with Federation.setTransport before the server starts.
+
+    Every method is called from Federation's own thread, never the server thread, so they're allowed to be slow.
+ */
+public interface FederationTransport {
+    //start gets the transport ready for this server. It's called once, before anything else
+    void start(String serverName) throws IOException;
+
+    //stop is called once when the server shuts down. Nothing else is called after it
+    void stop();
+
+    //deliver hands a batch to the server it's going to (batch.to). Once this returns, the batch has to be somewhere that
+    //server will find it, even if either server stops. Sending a batch with the same id again must replace it, not add
+    //a second copy
+    void deliver(Batch batch) throws IOException;
+
+    //collect gives back the batches that have been delivered to this server. A batch keeps being given back until it's
+    //removed
+    List<Batch> collect() throws IOException;
+
+    //remove throws away a batch given back by collect, once it's been dealt with
+    void remove(Batch batch) throws IOException;
+
+    //keep saves a batch this server sent until it's acknowledged, so it can still be sent again after a restart
+    void keep(Batch batch) throws IOException;
+
+    //kept gives back every batch that's been kept and not forgotten
+    List<Batch> kept() throws IOException;
+
+    //forget throws away a kept batch once it's been acknowledged
+    void forget(String batchID) throws IOException;
+
+    //remember saves the missive ids this server has dealt with, and when, so repeats are still skipped after a restart.
+    //It's given every id that's still remembered, and replaces whatever was saved before
+    void remember(Map<String, Long> seen) throws IOException;
+
+    //remembered gives back the missive ids saved by remember
+    Map<String, Long> remembered() throws IOException;
+
+    //publishPresence lets the other servers know which players are on this server right now
+    void publishPresence(Collection<String> playerNames) throws IOException;
+
+    //presence gives back the players on the other servers, as a map from player name to server name. Servers that
+    //haven't published in maxAgeMillis are left out, since they've probably stopped
+    Map<String, String> presence(long maxAgeMillis) throws IOException;
+}
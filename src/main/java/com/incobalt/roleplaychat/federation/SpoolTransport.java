@@ -0,0 +1,213 @@
+package com.incobalt.roleplaychat.federation;
+
+import com.incobalt.coreapi.CoreAPI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    SpoolTransport passes batches through a folder every server can see (on one machine, or a shared drive). It's meant
+    for testing federation on one machine, and for small networks that don't want to run anything else.
+
+    The spool folder looks like this:
+    tmp/                    files being written, before they're moved into place
+    presence/<server>.txt   the players on each server, one name per line
+    <server>/inbox/         batches waiting for that server to collect them
+    <server>/outbox/        batches that server sent that haven't been acknowledged yet
+    <server>/broken/        batches that server couldn't read, kept for an admin to look at
+    <server>/seen           the missive ids that server has dealt with, and when, one per line
+
+    Every file is written into tmp first, flushed to disk, and then moved into place in one step (an atomic move). That
+    way, a server never sees half a batch, even if the server writing it crashes partway through. tmp has to be on the
+    same drive as everything else for that to work, which is why it's inside the spool folder.
+ */
+public class SpoolTransport implements FederationTransport {
+    private static final String BATCH_EXTENSION = ".batch";
+
+    private final Path root;
+    private Path tmp;
+    private Path presence;
+    private Path inbox;
+    private Path outbox;
+    private Path broken;
+    private Path seen;
+    private String serverName;
+    //tmp file names only need to be different from each other on this server, since they start with the server name
+    private long tmpCounter;
+
+    public SpoolTransport(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public void start(String serverName) throws IOException {
+        this.serverName = serverName;
+        tmp = Files.createDirectories(root.resolve("tmp"));
+        presence = Files.createDirectories(root.resolve("presence"));
+        inbox = Files.createDirectories(root.resolve(serverName).resolve("inbox"));
+        outbox = Files.createDirectories(root.resolve(serverName).resolve("outbox"));
+        broken = root.resolve(serverName).resolve("broken");
+        seen = root.resolve(serverName).resolve("seen");
+        CoreAPI.LOGGER.info("Roleplay Chat federation spool is at " + root.toAbsolutePath());
+    }
+
+    @Override
+    public void stop() {
+        //take this server out of the presence folder, so nobody sends it missives while it's down
+        try {
+            Files.deleteIfExists(presence.resolve(serverName + ".txt"));
+        } catch (IOException e) {
+            CoreAPI.LOGGER.info("Couldn't remove federation presence: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deliver(Batch batch) throws IOException {
+        //the other server might not have started yet, so make its inbox if it isn't there
+        final Path theirInbox = Files.createDirectories(root.resolve(batch.to).resolve("inbox"));
+        writeAtomically(theirInbox.resolve(batch.id + BATCH_EXTENSION), batch.encode());
+    }
+
+    @Override
+    public List<Batch> collect() throws IOException {
+        return readBatches(inbox);
+    }
+
+    @Override
+    public void remove(Batch batch) throws IOException {
+        Files.deleteIfExists(inbox.resolve(batch.id + BATCH_EXTENSION));
+    }
+
+    @Override
+    public void keep(Batch batch) throws IOException {
+        writeAtomically(outbox.resolve(batch.id + BATCH_EXTENSION), batch.encode());
+    }
+
+    @Override
+    public List<Batch> kept() throws IOException {
+        return readBatches(outbox);
+    }
+
+    @Override
+    public void forget(String batchID) throws IOException {
+        Files.deleteIfExists(outbox.resolve(batchID + BATCH_EXTENSION));
+    }
+
+    @Override
+    public void remember(Map<String, Long> ids) throws IOException {
+        final StringBuilder text = new StringBuilder(ids.size() * 50);
+        for (Map.Entry<String, Long> entry : ids.entrySet()) {
+            text.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        writeAtomically(seen, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Map<String, Long> remembered() throws IOException {
+        //keep them in the order they were saved, which is oldest first
+        final LinkedHashMap<String, Long> ids = new LinkedHashMap<>();
+        if (!Files.exists(seen))
+            return ids;
+        for (String line : Files.readAllLines(seen, StandardCharsets.UTF_8)) {
+            final int tab = line.indexOf('\t');
+            if (tab <= 0)
+                continue;
+            try {
+                ids.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+            } catch (NumberFormatException e) {
+                //a bad line only means one missive might get through twice, so skip it
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void publishPresence(Collection<String> playerNames) throws IOException {
+        writeAtomically(presence.resolve(serverName + ".txt"), String.join("\n", playerNames).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Map<String, String> presence(long maxAgeMillis) throws IOException {
+        final HashMap<String, String> players = new HashMap<>();
+        //if a player shows up on two servers (they just moved), the newer file wins
+        final HashMap<String, Long> seenAt = new HashMap<>();
+        final long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(presence, "*.txt")) {
+            for (Path file : files) {
+                final String fileName = file.getFileName().toString();
+                final String server = fileName.substring(0, fileName.length() - 4);
+                if (server.equals(serverName))
+                    continue;
+                final long modified;
+                final List<String> names;
+                try {
+                    modified = Files.getLastModifiedTime(file).toMillis();
+                    if (now - modified > maxAgeMillis)
+                        continue;
+                    names = Files.readAllLines(file, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    //the server is probably replacing its file right now. It'll be there next time
+                    continue;
+                }
+                for (String name : names) {
+                    if (name.isEmpty())
+                        continue;
+                    final Long previous = seenAt.get(name);
+                    if (previous == null || previous < modified) {
+                        seenAt.put(name, modified);
+                        players.put(name, server);
+                    }
+                }
+            }
+        }
+        return players;
+    }
+
+    //readBatches reads every batch in a folder. Batches that can't be read are moved to the broken folder
+    private List<Batch> readBatches(Path folder) throws IOException {
+        final ArrayList<Batch> batches = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + BATCH_EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    batches.add(Batch.decode(Files.readAllBytes(file)));
+                } catch (IOException e) {
+                    CoreAPI.LOGGER.info("Moving unreadable federation batch " + file.getFileName() + " aside: " + e.getMessage());
+                    Files.createDirectories(broken);
+                    Files.move(file, broken.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        return batches;
+    }
+
+    //writeAtomically writes a file into tmp, makes sure it's on the disk, and then moves it into place in one step
+    private void writeAtomically(Path destination, byte[] bytes) throws IOException {
+        final Path file = tmp.resolve(serverName + "-" + (tmpCounter++) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            //on every system Minecraft servers run on, an atomic move replaces a file that's already there
+            Files.move(file, destination, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.incobalt.roleplaychat.missive;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.coreapi.chat.ChatUtils;
+import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.RoleplayChat;
+import com.incobalt.roleplaychat.ServerClientBridge;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.Tuple;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+    ItemCheckRequests keeps track of the missive item checks the server has asked clients to do. Every request gets an
+    id, and the server remembers the missive that goes with it. When the client answers, the server only accepts answers
+    for ids it actually asked that player about, and it uses its own copy of the missive rather than anything the
+    client sends back. Requests that don't get an answer in time are thrown away, and the sender is told about it.
+
+    Requests made during a tick are gathered up and sent at the end of the tick, so a player sending several missives
+    at once gets a single packet with all of them (and answers with a single packet too).
+ */
+
+//register the class to the Forge bus, so that the class can receive events
+@Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
+public class ItemCheckRequests {
+    //requests we've asked about but haven't heard back on, by request id
+    private static final Int2ObjectOpenHashMap<PendingCheck> pending = new Int2ObjectOpenHashMap<>();
+    //pending requests in the order they were made. Since every request has the same timeout, the oldest request is
+    //always at the front, so expiring requests only has to look at the front of the queue
+    private static final ArrayDeque<PendingCheck> expiryOrder = new ArrayDeque<>();
+    //requests made this tick that haven't been sent yet, gathered by the player we need to ask
+    private static final HashMap<ServerPlayerEntity, ArrayList<PendingCheck>> outgoing = new HashMap<>();
+
+    //how many missives (one for each target) are waiting on an item check, by sender, and in total. These count toward
+    //the missive limits (see Missive.quotaProblem)
+    private static final HashMap<UUID, Integer> pendingBySender = new HashMap<>();
+    private static int pendingTotal = 0;
+
+    //the next request id to hand out
+    private static int nextID = 0;
+    //counts ticks, so we know when a request has expired
+    private static int ticks = 0;
+
+    //request asks the sender's client to check for missive items. The missive is sent when the client answers
+    public static void request(String message, ServerPlayerEntity sender, PlayerEntity target) {
+        request(message, sender, Collections.singletonList(target));
+    }
+
+    //this version of request is for a missive to several targets. There's still only one check, since the client only
+    //has to find the first item (see Missive.sendItemizedMissive)
+    public static void request(String message, ServerPlayerEntity sender, Collection<? extends PlayerEntity> targets) {
+        final UUID[] targetIDs = new UUID[targets.size()];
+        int i = 0;
+        for (PlayerEntity target : targets) {
+            targetIDs[i++] = target.getUniqueID();
+        }
+        final PendingCheck check = new PendingCheck(nextID++, message, sender.getUniqueID(), targetIDs,
+                ticks + ChatConfig.missiveItemCheckTimeout * 20);
+        pending.put(check.id, check);
+        expiryOrder.add(check);
+        pendingBySender.merge(check.senderID, targetIDs.length, Integer::sum);
+        pendingTotal += targetIDs.length;
+        //we don't send anything yet. The request waits in the batch for this player until the end of the tick
+        outgoing.computeIfAbsent(sender, p -> new ArrayList<>()).add(check);
+    }
+
+    //pendingCount tells us how many requests are waiting on a client, which is reported with the missive queue
+    public static int pendingCount() {
+        return pending.size();
+    }
+
+    //pendingFor tells us how many missives a sender has waiting on an item check
+    public static int pendingFor(UUID senderID) {
+        return pendingBySender.getOrDefault(senderID, 0);
+    }
+
+    //pendingTotal tells us how many missives are waiting on an item check, from everyone
+    public static int pendingTotal() {
+        return pendingTotal;
+    }
+
+    //forget takes a request out of the pending counts once it's answered or has expired
+    private static void forget(PendingCheck check) {
+        pending.remove(check.id);
+        pendingTotal -= check.targetIDs.length;
+        //computeIfPresent removes the entry when the function gives back null
+        pendingBySender.computeIfPresent(check.senderID, (id, count) -> count > check.targetIDs.length ? count - check.targetIDs.length : null);
+    }
+
+    /*
+        handleReply is called by MissivePacket when a client answers. Each answer is matched up with the request it
+        belongs to. Answers for requests we didn't make, or that were made for a different player, are ignored.
+     */
+    public static void handleReply(PlayerEntity sender, int[] requestIDs, boolean[] usedConsumable, int[] consumableSlot) {
+        for (int i = 0; i < requestIDs.length; i++) {
+            final PendingCheck check = pending.get(requestIDs[i]);
+            //we either never asked about this, it already timed out, or it was answered already
+            if (check == null)
+                continue;
+            //only the player we asked is allowed to answer
+            if (!check.senderID.equals(sender.getUniqueID())) {
+                CoreAPI.LOGGER.info("Ignoring a missive item answer from " + sender.getName().getString() + " for a request they weren't asked about");
+                continue;
+            }
+            forget(check);
+            //the request stays in expiryOrder until it reaches the front, but it's marked so it won't be expired
+            check.answered = true;
+
+            //-3 means that no item was found! The client already told the player about it, so there's nothing to do
+            if (consumableSlot[i] == -3)
+                continue;
+
+            //the targets might have logged out, or moved to another dimension, while we were waiting, so look them up
+            //across the whole server instead of just the sender's world. Any who left are skipped
+            final ArrayList<PlayerEntity> targets = new ArrayList<>(check.targetIDs.length);
+            for (UUID targetID : check.targetIDs) {
+                final PlayerEntity target = findPlayer(targetID);
+                if (target != null) {
+                    targets.add(target);
+                }
+            }
+            if (targets.isEmpty()) {
+                //sendMessage requires an ITextComponent. We use a wrapper to make it look better inline.
+                sender.sendMessage(ChatUtils.toTextComponent("coThat player doesn't exist, but did very recently!"));
+                continue;
+            }
+            //the limits were checked when the missive was asked for, but other missives may have been sent since.
+            //check again before any items are used up
+            if (!Missive.checkQuota(sender, targets.size()))
+                continue;
+            //the client could be wrong (the item might have moved since it looked) or lying, so make sure the slot it gave
+            //us really holds a missive item. That's one slot to look at, which is cheap
+            if (!Missive.isMissiveItem(sender, usedConsumable[i], consumableSlot[i])) {
+                //the slot didn't check out, so do the full check here on the server instead
+                final Tuple<Boolean, Integer> result = Missive.getUsedItem(sender);
+                if (result.getB() == -3) {
+                    //getUsedItem already sent the player a message about the missing item
+                    continue;
+                }
+                Missive.sendItemizedMissive(check.message, sender, targets, result.getA(), result.getB());
+                continue;
+            }
+            //to keep things clean, we make the Missive class do the task of removing items and sending the missive
+            Missive.sendItemizedMissive(check.message, sender, targets, usedConsumable[i], consumableSlot[i]);
+        }
+    }
+
+    //ServerTickEvent is an event that fires every tick (20 times a second)
+    //you should aim to do *very little* in the tick event. Any extra processing can cause server lag!
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        //TickEvents happen twice each tick, at the start and at the end. We only want to fire once, so we choose the end
+        if (event.phase != TickEvent.Phase.END)
+            return;
+        ticks++;
+
+        //send this tick's requests, one packet per player
+        if (!outgoing.isEmpty()) {
+            for (Map.Entry<ServerPlayerEntity, ArrayList<PendingCheck>> entry : outgoing.entrySet()) {
+                final ArrayList<PendingCheck> checks = entry.getValue();
+                //a packet can only hold so many requests, so very large batches are split up
+                for (int start = 0; start < checks.size(); start += MissivePacket.MAX_BATCH) {
+                    final int[] ids = new int[Math.min(MissivePacket.MAX_BATCH, checks.size() - start)];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = checks.get(start + i).id;
+                    }
+                    //sendTo sends a packet based on its parameters. In this case, we're sending to the client
+                    //NetworkDirection.PLAY_TO_CLIENT tells the handler that this is from the logical server to the client
+                    ServerClientBridge.INSTANCE.sendTo(new MissivePacket(ids), entry.getKey().connection.getNetworkManager(), NetworkDirection.PLAY_TO_CLIENT);
+                }
+            }
+            outgoing.clear();
+        }
+
+        //throw away requests that have waited too long. The oldest requests are at the front
+        Iterator<PendingCheck> it = expiryOrder.iterator();
+        while (it.hasNext()) {
+            final PendingCheck check = it.next();
+            if (check.answered) {
+                //this one was answered already, it was just waiting to reach the front
+                it.remove();
+                continue;
+            }
+            if (check.expiresAt > ticks)
+                break; //everything after this is newer, so we're done
+            it.remove();
+            forget(check);
+            //let the sender know, if they're still around
+            final PlayerEntity sender = findPlayer(check.senderID);
+            if (sender != null) {
+                sender.sendMessage(ChatUtils.toTextComponent("coYour missive couldn't be sent, because your client didn't answer in time. Please try again."));
+            }
+        }
+    }
+
+    //findPlayer looks up an online player by UUID, or gives back null if they aren't online
+    private static PlayerEntity findPlayer(UUID id) {
+        return ServerLifecycleHooks.getCurrentServer().getPlayerList().getPlayerByUUID(id);
+    }
+
+    //PendingCheck is the server's copy of a missive that is waiting for an item check
+    private static class PendingCheck {
+        final int id;
+        final String message;
+        final UUID senderID;
+        final UUID[] targetIDs;
+        //the tick (from our own counter) after which we give up waiting
+        final int expiresAt;
+        boolean answered = false;
+
+        PendingCheck(int id, String message, UUID senderID, UUID[] targetIDs, int expiresAt) {
+            this.id = id;
+            this.message = message;
+            this.senderID = senderID;
+            this.targetIDs = targetIDs;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -4,8 +4,9 @@ package com.incobalt.roleplaychat.missive;
 import com.incobalt.coreapi.CoreAPI;
 import com.incobalt.coreapi.chat.ChatUtils;
 import com.incobalt.roleplaychat.ChatConfig;
+import com.incobalt.roleplaychat.ClientCapabilities;
 import com.incobalt.roleplaychat.RoleplayChat;
-import com.incobalt.roleplaychat.ServerClientBridge;
+import com.incobalt.roleplaychat.federation.Federation;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.ServerPlayerEntity;
@@ -17,11 +18,18 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
-import net.minecraftforge.fml.network.NetworkDirection;
 import net.minecraftforge.registries.ForgeRegistries;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 /*
     Missive System
@@ -37,17 +45,39 @@ import java.util.List;
 
     Missives are complicated and require server/client packets to function with items. If items and commands aren't used,
     then they can operate on the server side alone.
+
+    Every missive gets a number, so its sender can check on it (/missive status) or call it back (/missive cancel). To
+    answer those without looking through every missive on the server, the missives on their way are also kept in lists
+    by sender and by target. A player only ever has a few missives in flight, so looking through their own list is quick.
+
+    Each sender can only have so many missives on their way at once, and the whole server can only have so many (both
+    set in the config). Every way of sending a missive checks these limits before anything (like an item) is used up.
  */
 
 //register's the Missive class to the Forge bus, so that the class can receive events
 @Mod.EventBusSubscriber(modid = RoleplayChat.MODID)
 public class Missive {
+    //missives have to be shorter than this many characters. Every way of sending one checks it (see lengthProblem)
+    public static final int MAX_LENGTH = 800;
+
     //we need to keep track of all active missives, in order to deliver them when their duration has finished
     private static final ArrayList<SentMissive> missiveQueue = new ArrayList<>();
+    //the same missives, grouped by the UUID of their sender and of their target
+    private static final HashMap<UUID, ArrayList<SentMissive>> bySender = new HashMap<>();
+    private static final HashMap<UUID, ArrayList<SentMissive>> byTarget = new HashMap<>();
+    //the number given to the next missive
+    private static int nextID = 1;
+
+    //ItemRule decides how many consumable items a missive to several targets uses up (see sendItemizedMissive)
+    public enum ItemRule {
+        PER_SEND,
+        PER_RECIPIENT
+    }
 
     //processChatMissive is a helper function that extracts a target from a chat symbol activation
     //the pattern received by the chat processor is:
     //[target] [message] (without the brackets)
+    //several targets can be given by separating their names with commas (no spaces), like alice,bob
     public static boolean processChatMissive(String command, ServerPlayerEntity sender){
         //find the first space in the command, which separates the target from the message
         final int separator = command.indexOf(" ");
@@ -55,8 +85,8 @@ public class Missive {
             //a player name couldn't be found, so abort!
             return false;
         }
-        //strip out the target's name
-        final String target = command.substring(0, separator).trim();
+        //strip out the targets' names
+        final String[] targetNames = command.substring(0, separator).trim().split(",");
         //strip out the message
         final String message = command.substring(separator).trim();
 
@@ -67,27 +97,53 @@ public class Missive {
         }
 
         //we have a hard limit on missives to be not more than 800 characters, check that first!
-        if(message.length() >= 800){
-            sender.sendMessage(ChatUtils.toTextComponent("coA missive must be less than 800 characters. Your missive has " + message.length() + " characters!"));
+        final String tooLong = lengthProblem(message);
+        if(tooLong != null){
+            sender.sendMessage(ChatUtils.toTextComponent("co" + tooLong));
             return true;
         }
 
-        //there's no easy way to get a player by username, so this uses a predicate to filter the list of players
-        //by the name we received from the command
-        final List<ServerPlayerEntity> playersFound = sender.getServerWorld().getPlayers(p -> { return p.getName().getFormattedText().equals(target); });
-        //if we find no player, then we need to return
-        if(playersFound.size() == 0){
-            //return false informs the calling method (chat event) that there was a problem parsing the command
-            return false;
+        final ArrayList<ServerPlayerEntity> targets = new ArrayList<>(targetNames.length);
+        //targets on other servers (see Federation), by name, with the server they're on
+        final LinkedHashMap<String, String> remoteTargets = new LinkedHashMap<>();
+        for(String target : targetNames){
+            //there's no easy way to get a player by username, so this uses a predicate to filter the list of players
+            //by the name we received from the command
+            final List<ServerPlayerEntity> playersFound = sender.getServerWorld().getPlayers(p -> { return p.getName().getFormattedText().equals(target); });
+            if(playersFound.size() == 0){
+                //they aren't here, but they might be on another server
+                final String server = Federation.serverFor(target);
+                if(server != null){
+                    remoteTargets.put(target, server);
+                    continue;
+                }
+                //if we find no player, then we need to return
+                //return false informs the calling method (chat event) that there was a problem parsing the command
+                return false;
+            }
+            //get the first ServerPlayerEntity as the target. Naming someone twice only sends them one missive
+            if(!targets.contains(playersFound.get(0))){
+                targets.add(playersFound.get(0));
+            }
         }
 
-        //get the first ServerPlayerEntity as the target
-        final ServerPlayerEntity targetEntity = playersFound.get(0);
+        //make sure the sender hasn't hit their missive limit before we check (and maybe use up) any items.
+        //checkQuota tells the player why, so we return true to say the missive was understood
+        if(!checkQuota(sender, targets.size() + remoteTargets.size())){
+            return true;
+        }
+
+        //missives to other servers are handed to Federation, which checks their items itself
+        Federation.sendMissives(message, sender, remoteTargets);
+        if(targets.isEmpty()){
+            return true;
+        }
 
         //it's possible that missives might need required items. We offload this to the client to lessen the server load.
         if(ChatConfig.missivesUseItems && (ChatConfig.missiveConsumableItems.size() > 0 || ChatConfig.missiveCatalystItems.size() > 0)){
             //we're using items, which take a bit of processing. The mod can be set up to do this server side, so check that first
-            if(ChatConfig.missiveServerSideItemChecks){
+            //we also have to do it on the server if the sender's client can't do it for us (they don't have the mod)
+            if(ChatConfig.missiveServerSideItemChecks || !ClientCapabilities.has(sender, ClientCapabilities.MISSIVE_ITEMS)){
                 //getUsedItem will provide both a boolean (if a consumable was found) and an inventory slot number
                 //-3 is considered no item, while -1 and -2 are main and off hand respectively
                 Tuple<Boolean, Integer> result = Missive.getUsedItem(sender);
@@ -97,29 +153,23 @@ public class Missive {
                 }
 
                 //removes the items if needed and sends the missive
-                Missive.sendItemizedMissive(message, sender, targetEntity, result.getA(), result.getB());
+                Missive.sendItemizedMissive(message, sender, targets, result.getA(), result.getB());
 
                 return true;
             }
 
             //if we don't have the server do it, then we need to make the client do it for us!
             //this way, the server doesn't get lagged every time someone sends a missive!
-            //we need to send a request to the client to check for the required items
-            //we do this with a packet handler, like ServerClientBridge that we set up
-            //sendTo sends a packet based on its parameters. In this case, we're sending to the client
-            //sender.connection.getNetworkManager() is who we want to send to (the sender in this case)
-            //NetworkDirection.PLAY_TO_CLIENT tells the handler that this is from the logical server to the client
-            ServerClientBridge.INSTANCE.sendTo(new MissivePacket(
-                    message,
-                    targetEntity.getUniqueID()
-            ), sender.connection.getNetworkManager(), NetworkDirection.PLAY_TO_CLIENT);
+            //we need to send a request to the client to check for the required items. ItemCheckRequests remembers the
+            //missive and sends the request to the client at the end of the tick (see ItemCheckRequests.java)
+            ItemCheckRequests.request(message, sender, targets);
             //we need to wait for the client to finish, so we're done here!
             return true;
         }
 
         //send the missive based on the information
         //sendMissive has more error checking beyond what goes on here
-        Missive.sendMissive(message, sender, targetEntity);
+        Missive.sendMissive(message, sender, targets);
 
         //returning true here means that we successfully sent the message
         return true;
@@ -128,21 +178,78 @@ public class Missive {
     //sendMissive sends a message over time to a target player. This version of sendMissive is intended for non-player
     //senders, and doesn't require an entity sender, just a name and a position.
     public static void sendMissive(String message, String senderName, Vec3d senderPos, PlayerEntity target){
+        sendMissive(message, senderName, senderPos, Collections.singletonList(target));
+    }
+
+    //this version of sendMissive sends the same message from a non-player sender to several targets at once
+    public static void sendMissive(String message, String senderName, Vec3d senderPos, Collection<? extends PlayerEntity> targets){
+        if(targets.isEmpty())
+            return;
+        //non-player senders have limits too. There's nobody to tell when they go over, so let the log know instead
+        String problem = lengthProblem(message);
+        if(problem == null){
+            problem = quotaProblem(idForName(senderName), senderName, targets.size());
+        }
+        if(problem != null){
+            CoreAPI.LOGGER.info("Refused a missive from " + senderName + ": " + problem);
+            return;
+        }
+        //the message is only stored once, and every target's missive points to it
+        final Payload payload = new Payload(message, null, senderName);
+        for(PlayerEntity target : targets){
+            //calculate the duration for the missive (see directTicks)
+            final int duration = directTicks(target.getDistanceSq(senderPos));
+
+            //add the missive to the queue to be processed over time
+            enqueue(new SentMissive(duration, payload, target));
+        }
+    }
+
+    //lengthProblem checks if a message is short enough to be a missive. It gives back the reason it isn't, or null if it is
+    public static String lengthProblem(String message){
+        if(message.length() < MAX_LENGTH)
+            return null;
+        return "A missive must be less than " + MAX_LENGTH + " characters. Your missive has " + message.length() + " characters!";
+    }
 
-        //calculate the distance and duration for the missive
-        //get the distance between the source and the target (squared value!)
-        final double distance = target.getDistanceSq(senderPos);
-        //get the amount of time it takes for a message to be delivered.
-        //this is squared distance divided by squared missive length to get distance per one second,
-        //then multiplied by the missive time multiplier and the number of ticks in a second (20)
-        final int duration = (int)(((distance / Math.pow(ChatConfig.missiveDistance, 2.0)) * ChatConfig.missiveTime) + ChatConfig.missiveTime) * 20;
-
-        //add the missive to the queue to be processed over time
-        missiveQueue.add( new SentMissive(duration,
-                message,
-                senderName,
-                target)
-        );
+    /*
+        directTicks is how many ticks a missive takes to go straight to its target, processing time included. distanceSq is
+        the *squared* distance between the sender and the target.
+        Without post offices, this is the way missives have always been timed: the squared distance divided by the squared
+        missive distance, times the missive time, plus the processing time, times the number of ticks in a second (20).
+        With post offices, the travel is timed with travelSeconds instead, the same way the network times the walk to and
+        from its post offices, so that going straight there and going through the network can be compared fairly.
+     */
+    public static int directTicks(double distanceSq){
+        if(!PostNetwork.hasOffices())
+            return (int)(((distanceSq / Math.pow(ChatConfig.missiveDistance, 2.0)) * ChatConfig.missiveTime) + ChatConfig.missiveTime) * 20;
+        return (int)((travelSeconds(Math.sqrt(distanceSq)) + ChatConfig.missiveTime) * 20);
+    }
+
+    /*
+        travelSeconds is how long a missive takes to go a distance in a straight line when there are post offices set up:
+        missiveDistance blocks every missiveTime seconds. This doesn't include the processing time. PostNetwork uses this
+        too, for the parts of the trip off the network.
+     */
+    public static double travelSeconds(double distance){
+        return distance / ChatConfig.missiveDistance * ChatConfig.missiveTime;
+    }
+
+    //receiveMissive puts a missive that came from another server (see Federation) into the queue. There's no sender
+    //entity here, and the distance between servers doesn't mean anything, so it takes a set time to arrive
+    public static void receiveMissive(String message, String senderName, String origin, PlayerEntity target, int duration){
+        //the other server should have checked the length, but it might be set up differently (or be an older version)
+        String problem = lengthProblem(message);
+        if(problem == null){
+            problem = quotaProblem(idForName(senderName), senderName, 1);
+        }
+        if(problem != null){
+            //send it back, so the sender finds out it didn't get through
+            CoreAPI.LOGGER.info("Refused a missive from " + senderName + " on " + origin + ": " + problem);
+            Federation.returnMissive(origin, target.getName().getFormattedText(), senderName, message);
+            return;
+        }
+        enqueue(new SentMissive(duration, new Payload(message, null, senderName, origin), target));
     }
 
     //sendMissive sends a message over time to a target player. This version of sendMissive is intended for players and is
@@ -150,45 +257,197 @@ public class Missive {
     //called directly from the missive command or from the chat symbol handler if the server doesn't need to check required items.
     //sender and target are both PlayerEntities, but are likely ServerPlayerEntities
     public static void sendMissive(String message, PlayerEntity sender, PlayerEntity target){
+        //if we don't get a target, then we definitely shouldn't continue, and inform the sender why
+        if(target == null){
+            if(sender != null){
+                sender.sendMessage(ChatUtils.toTextComponent("coThat player doesn't exist!"));
+            }
+            return;
+        }
+        sendMissive(message, sender, Collections.singletonList(target));
+    }
+
+    //this version of sendMissive sends the same message from a player to several targets at once (like everyone on a
+    //team). Each target gets their own missive that arrives based on how far away they are, but they all share one copy
+    //of the message
+    public static void sendMissive(String message, PlayerEntity sender, Collection<? extends PlayerEntity> targets){
 
         //if we don't get a sender, we shouldn't continue
         if(sender == null){
             return;
         }
 
-        //if we don't get a target, then we definitely shouldn't continue, and inform the sender why
-        if(target == null){
-            sender.sendMessage(ChatUtils.toTextComponent("coThat player doesn't exist!"));
+        //if we don't get any targets, then we definitely shouldn't continue, and inform the sender why
+        if(targets.isEmpty()){
+            sender.sendMessage(ChatUtils.toTextComponent("coThere's nobody to send that missive to!"));
             return;
         }
 
-        //calculate the distance and duration for the missive
-        //get the distance between the source and the target (squared value!)
-        final double distance = target.getDistanceSq(sender.getPositionVec());
-        //get the amount of time it takes for a message to be delivered.
-        //this is squared distance divided by squared missive length to get distance per one second,
-        //then multiplied by the missive time multiplier and the number of ticks in a second (20)
-        int duration = (int)(((distance / Math.pow(ChatConfig.missiveDistance, 2.0)) * ChatConfig.missiveTime) + ChatConfig.missiveTime) * 20;
+        //the command and chat symbol check the limits before this, but anything else calling this is checked here
+        final String tooLong = lengthProblem(message);
+        if(tooLong != null){
+            sender.sendMessage(ChatUtils.toTextComponent("co" + tooLong));
+            return;
+        }
+        if(!checkQuota(sender, targets.size())){
+            return;
+        }
 
-        //we could choose to make dimensions inaccessible for missives, but instead, we make it take longer to arrive
-        if(sender.world.dimension != target.world.dimension){
-            duration = duration * 8;
-            //it's possible, though unlikely, that the setting will make this number overflow to negative here, so check for that
-            //note that this would need settings like 10000 seconds per block traveled, and be ~27,000 blocks apart and would take
-            //years to resolve, but might as well make certain it's not negative or it will immediately resolve
-            if(duration < 0)
-                duration = Integer.MAX_VALUE;
+        //the message is only stored once, and every target's missive points to it
+        final Payload payload = new Payload(message, sender, sender.getDisplayName().getFormattedText());
+        //the names of the targets, for letting the sender know
+        final StringBuilder names = new StringBuilder();
+        for(PlayerEntity target : targets){
+            //calculate the duration for the missive (see directTicks)
+            int duration = directTicks(target.getDistanceSq(sender.getPositionVec()));
+
+            //we could choose to make dimensions inaccessible for missives, but instead, we make it take longer to arrive
+            if(sender.world.dimension != target.world.dimension){
+                duration = duration * 8;
+                //it's possible, though unlikely, that the setting will make this number overflow to negative here, so check for that
+                //note that this would need settings like 10000 seconds per block traveled, and be ~27,000 blocks apart and would take
+                //years to resolve, but might as well make certain it's not negative or it will immediately resolve
+                if(duration < 0)
+                    duration = Integer.MAX_VALUE;
 
-        }
+            }
 
-        //add the missive to the queue to be processed
-        missiveQueue.add( new SentMissive(duration,
-                message,
-                sender,
-                target)
-        );
+            //if there are post offices set up, the missive might get there faster through them (see PostNetwork). It
+            //still needs the usual processing time on top of the travel. With post offices set up, both ways use
+            //travelSeconds for the parts off the network, so they're compared fairly
+            final int travel = PostNetwork.travelTicks(sender.getPositionVec(), sender.dimension, target.getPositionVec(), target.dimension);
+            if(travel >= 0){
+                duration = (int)Math.min(duration, (long)travel + (long)(ChatConfig.missiveTime * 20));
+            }
+
+            //add the missive to the queue to be processed
+            enqueue(new SentMissive(duration, payload, target));
+            if(names.length() > 0){
+                names.append("ao, ");
+            }
+            names.append(target.getDisplayName().getFormattedText());
+        }
         //inform the sender that their message was successful
-        sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + target.getDisplayName().getFormattedText() + " is being delivered!"));
+        sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + names + "ao is being delivered!"));
+    }
+
+    /*
+        quotaProblem checks if a sender can send count more missives (one for each target). It gives back the reason they
+        can't, or null if they can. Missives waiting on a client's item check count too, so a player can't get around the
+        limit by sending a pile of missives before their client answers. So do missives on their way to other servers
+        (see Federation), which are only known by the sender's name.
+     */
+    public static String quotaProblem(UUID senderID, String senderName, int count){
+        if(missiveQueue.size() + ItemCheckRequests.pendingTotal() + count > ChatConfig.maxQueuedMissives){
+            return "The couriers are overwhelmed right now. Please try again later.";
+        }
+        final ArrayList<SentMissive> outgoing = bySender.get(senderID);
+        final int inFlight = (outgoing != null ? outgoing.size() : 0) + ItemCheckRequests.pendingFor(senderID)
+                + Federation.inFlightFor(senderName);
+        if(inFlight + count > ChatConfig.maxMissivesPerSender){
+            return "You can only have " + ChatConfig.maxMissivesPerSender + " missives on their way at once, and you have "
+                    + inFlight + ". Wait for some to arrive before sending more.";
+        }
+        return null;
+    }
+
+    //checkQuota checks the limits for a player, and tells them why if they can't send the missive
+    public static boolean checkQuota(PlayerEntity sender, int count){
+        final String problem = quotaProblem(sender.getUniqueID(), sender.getName().getFormattedText(), count);
+        if(problem == null)
+            return true;
+        sender.sendMessage(ChatUtils.toTextComponent("co" + problem));
+        return false;
+    }
+
+    //idForName makes up a UUID for a sender that isn't an entity (like a command block), so its missives can be counted
+    //the same way a player's are. Senders with the same name share their limit
+    public static UUID idForName(String senderName){
+        return UUID.nameUUIDFromBytes(("missive:" + senderName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    //queueSize gives back how many missives are on their way
+    public static int queueSize(){
+        return missiveQueue.size();
+    }
+
+    /*
+        estimatedBytes gives a rough idea of how much memory the missive queue is using, for /rpchat stats. It counts each
+        missive's own object and each shared message once. Java doesn't tell us exact sizes, so these are the usual sizes
+        on a 64 bit server.
+     */
+    public static long estimatedBytes(){
+        //the queue and list entries, the SentMissive itself, and its share of the index lists
+        long bytes = missiveQueue.size() * 80L;
+        //payloads are shared between the targets of the same missive, so only count each one once
+        final Set<Payload> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(SentMissive missive : missiveQueue){
+            if(counted.add(missive.payload)){
+                bytes += 48;
+            }
+        }
+        //the text itself is all in the arena
+        return bytes + MissiveArena.bytesUsed();
+    }
+
+    //enqueue adds a missive to the queue and to the sender and target lists
+    private static void enqueue(SentMissive missive){
+        missiveQueue.add(missive);
+        if(missive.payload.senderID != null){
+            bySender.computeIfAbsent(missive.payload.senderID, id -> new ArrayList<>()).add(missive);
+        }
+        if(missive.targetID != null){
+            byTarget.computeIfAbsent(missive.targetID, id -> new ArrayList<>()).add(missive);
+        }
+    }
+
+    //unindex takes a missive out of the sender and target lists. It stays in the queue until the next tick looks at it
+    private static void unindex(SentMissive missive){
+        unindex(bySender, missive.payload.senderID, missive);
+        unindex(byTarget, missive.targetID, missive);
+    }
+
+    private static void unindex(HashMap<UUID, ArrayList<SentMissive>> index, UUID id, SentMissive missive){
+        if(id == null)
+            return;
+        final ArrayList<SentMissive> list = index.get(id);
+        if(list == null)
+            return;
+        list.remove(missive);
+        //drop empty lists, so players who are done sending don't keep one around
+        if(list.isEmpty()){
+            index.remove(id);
+        }
+    }
+
+    //outgoing gives back the missives a player has sent that haven't arrived yet, oldest first
+    public static List<SentMissive> outgoing(UUID senderID){
+        final ArrayList<SentMissive> list = bySender.get(senderID);
+        return list != null ? Collections.unmodifiableList(list) : Collections.emptyList();
+    }
+
+    //incomingCount gives back how many missives are on their way to a player
+    public static int incomingCount(UUID targetID){
+        final ArrayList<SentMissive> list = byTarget.get(targetID);
+        return list != null ? list.size() : 0;
+    }
+
+    //cancel calls back a missive by its number. Only the player who sent it can cancel it. It gives back the missive, or
+    //null if that player has no missive on its way with that number
+    public static SentMissive cancel(UUID senderID, int id){
+        final ArrayList<SentMissive> list = bySender.get(senderID);
+        if(list == null)
+            return null;
+        for(SentMissive missive : list){
+            if(missive.id == id){
+                //mark it, so the tick handler drops it from the queue without delivering it. That way we don't have to
+                //look through the whole queue here
+                missive.cancelled = true;
+                unindex(missive);
+                return missive;
+            }
+        }
+        return null;
     }
 
     /*
@@ -199,63 +458,130 @@ public class Missive {
         in the client's packet handler (jvm will check types even if it wouldn't execute the code!)
      */
     public static void sendItemizedMissive(String message, PlayerEntity sender, PlayerEntity target, boolean usedConsumable, int consumableSlot) {
+        sendItemizedMissive(message, sender, Collections.singletonList(target), usedConsumable, consumableSlot);
+    }
+
+    /*
+        This version of sendItemizedMissive sends the missive to several targets. The Missive Item Rule in the config
+        decides what that costs: PER_SEND uses up one consumable no matter how many targets there are, and PER_RECIPIENT
+        uses up one for each target. For PER_RECIPIENT, only the first item was checked by the client, so the server looks
+        for the rest itself. If the sender runs out partway through, the missive only goes to the targets they could pay
+        for. A catalyst is never used up, so it covers every target.
+     */
+    public static void sendItemizedMissive(String message, PlayerEntity sender, List<? extends PlayerEntity> targets, boolean usedConsumable, int consumableSlot) {
+        final int paidFor = payForTargets(sender, targets.size(), usedConsumable, consumableSlot);
+        //when we've finished with consumables (if we needed them), send the missive
+        if(paidFor > 0){
+            Missive.sendMissive(message, sender, targets.subList(0, paidFor));
+        }
+    }
+
+    //payForTargets uses up the items for a missive to count targets, following the Missive Item Rule, and gives back how
+    //many of the targets were paid for. Federation uses this for missives to players on other servers too
+    public static int payForTargets(PlayerEntity sender, int count, boolean usedConsumable, int consumableSlot) {
         //this tells us that we used a consumable, so we need to remove an item
+        int paidFor = count;
         if(usedConsumable){
             //-3 means no item. We shouldn't get here, because Missive.getUsedItem checks for it first, but just in case we check for it
             if(consumableSlot == -3){
                 //let the player know what happened. sendMessage requires an ITextComponent. We use a wrapper to make it look better inline.
                 sender.sendMessage(ChatUtils.toTextComponent("coRequired items not found!"));
-                //setPacketHandled(true) tells the handler that the packet is finished. Otherwise, if there was further
-                //message matches in ServerClientBridge, then it would continue on to the next one
-                return;
+                return 0;
             }
-            //check the slot that we found with Missive.getUsedItem()
-            if(consumableSlot == -1){
-                //-1 means main hand, which means the player was holding the item in the main hand at the time
-                //get the itemstack in the main hand (for decrementing)
-                final ItemStack mainItem = sender.getHeldItemMainhand();
-                //if an item is stackable then we can lower its stack size
-                if(mainItem.isStackable()){
-                    //remove an item from the stack. Minecraft automatically updates the item!
-                    mainItem.setCount(mainItem.getCount() - 1);
-                }else{
-                    //otherwise, we just empty out the hand for non-stackable items
-                    sender.setHeldItem(Hand.MAIN_HAND, ItemStack.EMPTY);
-                }
-                //make sure to update a held item if you change it!
-                if(sender instanceof ServerPlayerEntity) {
-                    ((ServerPlayerEntity)sender).updateHeldItem();
-                }
-            }else if(consumableSlot == -2){
-                //-2 means off hand, which means the player was holding the item in the off hand at the time
-                //get the itemstack in the off hand (for decrementing)
-                final ItemStack offItem = sender.getHeldItemOffhand();
-                //if an item is stackable then we can lower its stack size
-                if(offItem.isStackable()){
-                    //remove an item from the stack. Minecraft automatically updates the item!
-                    offItem.setCount(offItem.getCount() - 1);
-                }else{
-                    //otherwise, we just empty out the hand for non-stackable items
-                    sender.setHeldItem(Hand.OFF_HAND, ItemStack.EMPTY);
+            useConsumable(sender, consumableSlot);
+            if(ChatConfig.missiveItemRule == ItemRule.PER_RECIPIENT){
+                for(paidFor = 1; paidFor < count; paidFor++){
+                    final Tuple<Boolean, Integer> result = getUsedItem(sender);
+                    if(result.getB() == -3){
+                        //getUsedItem already told the player what they're missing
+                        break;
+                    }
+                    if(!result.getA()){
+                        //a catalyst turned up, which covers everyone left
+                        paidFor = count;
+                        break;
+                    }
+                    useConsumable(sender, result.getB());
                 }
-                //make sure to update a held item if you change it!
+            }
+        }
+        return paidFor;
+    }
+
+    //useConsumable uses up one consumable item from a slot found with Missive.getUsedItem()
+    private static void useConsumable(PlayerEntity sender, int consumableSlot) {
+        //check the slot that we found with Missive.getUsedItem()
+        if(consumableSlot == -1){
+            //-1 means main hand, which means the player was holding the item in the main hand at the time
+            //get the itemstack in the main hand (for decrementing)
+            final ItemStack mainItem = sender.getHeldItemMainhand();
+            //if an item is stackable then we can lower its stack size
+            if(mainItem.isStackable()){
+                //remove an item from the stack. Minecraft automatically updates the item!
+                mainItem.setCount(mainItem.getCount() - 1);
+            }else{
+                //otherwise, we just empty out the hand for non-stackable items
+                sender.setHeldItem(Hand.MAIN_HAND, ItemStack.EMPTY);
+            }
+            //make sure to update a held item if you change it!
+            if(sender instanceof ServerPlayerEntity) {
                 ((ServerPlayerEntity)sender).updateHeldItem();
+            }
+        }else if(consumableSlot == -2){
+            //-2 means off hand, which means the player was holding the item in the off hand at the time
+            //get the itemstack in the off hand (for decrementing)
+            final ItemStack offItem = sender.getHeldItemOffhand();
+            //if an item is stackable then we can lower its stack size
+            if(offItem.isStackable()){
+                //remove an item from the stack. Minecraft automatically updates the item!
+                offItem.setCount(offItem.getCount() - 1);
             }else{
-                //any slot 0 and higher means an inventory item slot
-                //get the itemstack for the inventory slot in question (for decrementing)
-                ItemStack stack = sender.inventory.getStackInSlot(consumableSlot);
-                //if an item is stackable then we can lower its stack size
-                if(stack.isStackable()){
-                    //remove an item from the stack. Minecraft automatically updates the item!
-                    stack.setCount(stack.getCount() - 1);
-                }else{
-                    //otherwise, we just empty out the slot for non-stackable items
-                    sender.replaceItemInInventory(consumableSlot, ItemStack.EMPTY);
-                }
+                //otherwise, we just empty out the hand for non-stackable items
+                sender.setHeldItem(Hand.OFF_HAND, ItemStack.EMPTY);
+            }
+            //make sure to update a held item if you change it!
+            ((ServerPlayerEntity)sender).updateHeldItem();
+        }else{
+            //any slot 0 and higher means an inventory item slot
+            //get the itemstack for the inventory slot in question (for decrementing)
+            ItemStack stack = sender.inventory.getStackInSlot(consumableSlot);
+            //if an item is stackable then we can lower its stack size
+            if(stack.isStackable()){
+                //remove an item from the stack. Minecraft automatically updates the item!
+                stack.setCount(stack.getCount() - 1);
+            }else{
+                //otherwise, we just empty out the slot for non-stackable items
+                sender.replaceItemInInventory(consumableSlot, ItemStack.EMPTY);
             }
         }
-        //when we've finished with consumables (if we needed them), send the missive
-        Missive.sendMissive(message, sender, target);
+    }
+
+    //isMissiveItem checks a single slot to see if it holds the kind of missive item a client said it does.
+    //this is used by the server to double check a client's answer, without having to look through the whole inventory.
+    //consumable is true for consumable items and false for catalysts, and slot uses the same numbers as getUsedItem
+    public static boolean isMissiveItem(PlayerEntity player, boolean consumable, int slot){
+        //catalysts only count when held, so a catalyst in an inventory slot doesn't count
+        if(!consumable && slot >= 0){
+            return false;
+        }
+        //get the stack the client pointed us at
+        final ItemStack stack;
+        if(slot == -1){
+            stack = player.getHeldItemMainhand();
+        }else if(slot == -2){
+            stack = player.getHeldItemOffhand();
+        }else if(slot >= 0 && slot < player.inventory.getSizeInventory()){
+            stack = player.inventory.getStackInSlot(slot);
+        }else{
+            //-3 or some slot that doesn't exist
+            return false;
+        }
+        if(stack.isEmpty() || stack.getItem().getRegistryName() == null){
+            return false;
+        }
+        //compare the stack's id name against the right list from the config
+        final String name = stack.getItem().getRegistryName().toString();
+        return consumable ? ChatConfig.missiveConsumableItems.contains(name) : ChatConfig.missiveCatalystItems.contains(name);
     }
 
     //getUsedItem is used by the client to determine if their player has the required item for sending missives
@@ -431,10 +757,20 @@ public class Missive {
             //loop through the missives in the queue. If players are sending a lot of missives, this could bog down the server
             //but there's very little going on unless a missive is delivered here
             for (int i = 0; i < missiveQueue.size(); i++) {
+                final SentMissive missive = missiveQueue.get(i);
+                //cancelled missives were already taken out of the sender and target lists, so just drop them
+                if (missive.cancelled) {
+                    missiveQueue.remove(i);
+                    missive.release();
+                    i--;
+                    continue;
+                }
                 //get the missive in question and process a tick (see below)
-                if (missiveQueue.get(i).MissiveTick()) {
+                if (missive.MissiveTick()) {
                     //if the tick returns true, then it was delivered, so remove it
                     missiveQueue.remove(i);
+                    unindex(missive);
+                    missive.release();
                     //if you remove something, make sure to reduce the index by one!
                     i--;
                 }
@@ -443,56 +779,106 @@ public class Missive {
     }
 
     /*
-        SentMissive is a class for missives that have been sent but haven't been delivered.
+        Payload is the part of a missive that's the same for every target: the message and who sent it. When a missive goes
+        to several targets, they all point to the same Payload instead of each keeping a copy. The message and sender name
+        are kept in the MissiveArena, and the Payload only holds their handles.
+     */
+    public static class Payload{
+        //the handle of the missive text in the MissiveArena
+        private final long text;
+        //the sender, or null for non-entity senders (like command blocks)
+        public final Entity sender;
+        //we cache the sender name in case they don't exist when the missive is delivered. This is its MissiveArena handle
+        private final int senderName;
+        //the UUID of the sender, for the sender lists. Non-entity senders get one made from their name (see idForName)
+        public final UUID senderID;
+        //the server a missive from another server came from, so it can be sent back there if it isn't delivered. This is
+        //null for missives sent on this server
+        public final String origin;
+        //how many missives still use this payload. When it gets to 0, the text is freed
+        private int uses;
+
+        public Payload(String message, Entity sender, String senderName){
+            this(message, sender, senderName, null);
+        }
+
+        public Payload(String message, Entity sender, String senderName, String origin){
+            this.text = MissiveArena.store(message);
+            this.sender = sender;
+            if(senderName == null){
+                senderName = "someone";
+            }
+            this.senderName = MissiveArena.intern(senderName);
+            this.senderID = sender != null ? sender.getUniqueID() : idForName(senderName);
+            this.origin = origin;
+        }
+
+        //message gives back the missive text. This builds a new String each time, so hold on to it if it's needed twice
+        public String message(){
+            return MissiveArena.read(text);
+        }
+
+        public String senderName(){
+            return MissiveArena.name(senderName);
+        }
+    }
+
+    /*
+        SentMissive is a class for missives that have been sent but haven't been delivered. There's one for each target.
         This class is meant to be queued and will count down time when processed, until it is finished, and then it
         delivers the missive to the target (letting the sender, if any know that it was delivered)
      */
-    private static class SentMissive{
+    public static class SentMissive{
+        //the missive's number, so the sender can check on it or cancel it
+        public final int id;
         //duration is the time it takes in ticks to deliver the missive
         public final int duration;
-        //message is a copy of the missive text
-        public final String message;
-        public final Entity sender;
+        //the message and sender, shared with the other targets of the same missive
+        public final Payload payload;
         public final Entity target;
-        //we cache the sender and target names in case they don't exist when the missive is delivered
-        public final String senderName;
-        public final String targetName;
+        //we cache the target name in case they don't exist when the missive is delivered. This is its MissiveArena handle
+        private final int targetName;
+        //the UUID of the target, for the target lists
+        public final UUID targetID;
         //this is the tick counter. This counts up each tick to track time
         private int ticks;
+        //true once the sender has called the missive back
+        private boolean cancelled;
 
-        //this is a version of the constructor that cares about the sender. Used mostly by entity senders.
-        public SentMissive(int duration, String message, Entity sender, Entity target){
+        public SentMissive(int duration, Payload payload, Entity target){
+            this.id = nextID++;
             this.duration = duration;
-            this.message = message;
-            this.sender = sender;
+            this.payload = payload;
+            payload.uses++;
             this.target = target;
-            if(sender != null) {
-                this.senderName = sender.getDisplayName().getFormattedText();
-            }else{
-                this.senderName = "someone";
-            }
             if(target != null) {
-                this.targetName = target.getDisplayName().getFormattedText();
+                this.targetName = MissiveArena.intern(target.getDisplayName().getFormattedText());
             }else{
-                this.targetName = "someone";
+                this.targetName = MissiveArena.intern("someone");
             }
+            this.targetID = target != null ? target.getUniqueID() : null;
             this.ticks = 0;
         }
 
-        //this is a version of the constructor that doesn't care about the sender. Used mostly by non-entity senders.
-        public SentMissive(int duration, String message, String senderName, Entity target){
-            this.duration = duration;
-            this.message = message;
-            this.sender = null;
-            this.target = target;
-            this.senderName = senderName;
-            if(target != null) {
-                this.targetName = target.getDisplayName().getFormattedText();
-            }else{
-                this.targetName = "someone";
+        public String targetName(){
+            return MissiveArena.name(targetName);
+        }
+
+        //release frees this missive's text once it's out of the queue. The message is only freed once every missive that
+        //shares it is done
+        private void release(){
+            MissiveArena.release(targetName);
+            if(--payload.uses == 0){
+                MissiveArena.free(payload.text);
+                MissiveArena.release(payload.senderName);
             }
         }
 
+        //ticksLeft gives back how many ticks until the missive arrives
+        public int ticksLeft(){
+            return Math.max(0, duration - ticks);
+        }
+
         //MissiveTick is run every tick by the Missive class. As such, there should be very little happening here
         //most of the time. This is mostly just a timer that counts up to the duration then sends the missive (if
         //the target still exists)
@@ -507,39 +893,43 @@ public class Missive {
             //otherwise, process the message
             if(target == null){
                 //the target was not found! Get the sender now to inform them
-                if(!(sender instanceof PlayerEntity)){
-                    //the sender could also not be found or wasn't a PlayerEntity There's no reason to keep the message anymore.
+                if(!(payload.sender instanceof PlayerEntity)){
+                    //the sender could also not be found or wasn't a PlayerEntity. If it came from another server, send it
+                    //back there. Otherwise, there's no reason to keep the message anymore.
+                    Federation.returnMissive(payload.origin, targetName(), payload.senderName(), payload.message());
                     //returning true will remove the missive from the queue
                     return true;
                 }
                 //let the sender know their missive couldn't be delivered. We give a copy of the missive as a reference
-                sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName + " returned unread. The missive read: co" + message));
+                payload.sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName() + " returned unread. The missive read: co" + payload.message()));
                 //returning true will remove the missive from the queue
                 return true;
             }
             //the target was found
             if(!(target instanceof PlayerEntity)){
                 //the target was found, but wasn't a player, somehow. We'll consider this a failed delivery.
-                if(!(sender instanceof PlayerEntity)){
-                    //the sender could also not be found or wasn't a PlayerEntity There's no reason to keep the message anymore.
+                if(!(payload.sender instanceof PlayerEntity)){
+                    //the sender could also not be found or wasn't a PlayerEntity. If it came from another server, send it
+                    //back there. Otherwise, there's no reason to keep the message anymore.
+                    Federation.returnMissive(payload.origin, targetName(), payload.senderName(), payload.message());
                     //returning true will remove the missive from the queue
                     return true;
                 }
                 //let the sender know their missive couldn't be delivered. We give a copy of the missive as a reference
-                sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName + " returned unread. The missive read: co" + message));
+                payload.sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName() + " returned unread. The missive read: co" + payload.message()));
                 //returning true will remove the missive from the queue
                 return true;
             }
             //send the message to the target
-            target.sendMessage(ChatUtils.toTextComponent("aoYou receive a missive from " + senderName + " that reads: eo" + message));
+            target.sendMessage(ChatUtils.toTextComponent("aoYou receive a missive from " + payload.senderName() + " that reads: eo" + payload.message()));
             //now send a message to the sender letting them know their message was delivered.
-            if(!(sender instanceof PlayerEntity)){
+            if(!(payload.sender instanceof PlayerEntity)){
                 //the sender could also not be found or wasn't a PlayerEntity. There's no reason to keep the message anymore.
                 //returning true will remove the missive from the queue
                 return true;
             }
             //inform the sender of the delivery
-            sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName + " has been delivered."));
+            payload.sender.sendMessage(ChatUtils.toTextComponent("aoYour missive to " + targetName() + " has been delivered."));
             //returning true will remove the missive from the queue
             return true;
         }
@@ -4,28 +4,37 @@ import com.incobalt.coreapi.CoreAPI;
 import com.incobalt.coreapi.chat.ChatUtils;
 import com.incobalt.coreapi.commands.CommandBase;
 import com.incobalt.roleplaychat.ChatConfig;
-import com.incobalt.roleplaychat.ServerClientBridge;
+import com.incobalt.roleplaychat.chat.WordFilter;
+import com.incobalt.roleplaychat.ClientCapabilities;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.Commands;
 import net.minecraft.command.arguments.MessageArgument;
 import net.minecraft.command.arguments.EntityArgument;
+import net.minecraft.command.arguments.TeamArgument;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.scoreboard.ScorePlayerTeam;
 import net.minecraft.util.Tuple;
 import net.minecraft.util.math.Vec3d;
-import net.minecraftforge.fml.network.NetworkDirection;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /*
     MissiveCommand is a more complex command that requires two arguments, a player and a message. It also can interface
     with the client to offload some of the processing power of sifting through a player's items.
     MissiveCommand is for sending a message across long distances over time (like a time-based /msg)
+    /missive status shows the missives you've sent that haven't arrived yet, /missive incoming tells you if any are on
+    their way to you, and /missive cancel <number> calls one of yours back
+    A missive can go to several players at once (using a selector like @a[distance=..100]), or to everyone on a team with
+    /missive team <team> <message>. Every target gets their own missive, but they share one copy of the message
 
     MissiveCommand extends CommandBase, which means it must implement a constructor and registerCommand()
     CommandBase was moved to incobalt's Core API mod!
@@ -62,12 +71,27 @@ public class MissiveCommand extends CommandBase {
             //there are several built-in argument types in net.minecraft.command.arguments
             //.executes is what is executed when the command is sent by a player. It can be a lambda like here, or a separate field.
             //executes provides a CommandContext (ctx here)
+            //the status, incoming and cancel literals are checked before the target, so they aren't mistaken for player names
             LiteralArgumentBuilder<CommandSource> commandLiteral = Commands.literal(a)
-                    .then(Commands.argument("target", EntityArgument.player())
-                            .executes(ctx -> executeNoMessage(ctx.getSource(), EntityArgument.getPlayer(ctx, "target")))
+                    .then(Commands.literal("status")
+                            .executes(ctx -> status(ctx.getSource())))
+                    .then(Commands.literal("incoming")
+                            .executes(ctx -> incoming(ctx.getSource())))
+                    .then(Commands.literal("cancel")
+                            .then(Commands.argument("number", IntegerArgumentType.integer(1))
+                                    .executes(ctx -> cancel(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "number")))))
+                    .then(Commands.literal("team")
+                            .then(Commands.argument("team", TeamArgument.team())
+                                    .then(Commands.argument("message", MessageArgument.message())
+                                            .executes(ctx -> execute(ctx.getSource(),
+                                                    teamMembers(ctx.getSource(), TeamArgument.getTeam(ctx, "team")),
+                                                    MessageArgument.getMessage(ctx, "message").getFormattedText())))))
+                    //EntityArgument.players() takes a player name or a selector that can pick several players
+                    .then(Commands.argument("target", EntityArgument.players())
+                            .executes(ctx -> executeNoMessage(ctx.getSource()))
                             .then(Commands.argument("message", MessageArgument.message())
                                 .executes( ctx -> execute(ctx.getSource(),
-                                        EntityArgument.getPlayer(ctx, "target"),
+                                        EntityArgument.getPlayers(ctx, "target"),
                                         MessageArgument.getMessage(ctx, "message").getFormattedText()
                                         )
                                 )
@@ -80,13 +104,36 @@ public class MissiveCommand extends CommandBase {
     }
 
 
-    private int execute(CommandSource source, ServerPlayerEntity target, String message) {
+    //teamMembers finds the online players on a team, leaving out whoever is sending the missive
+    private Collection<ServerPlayerEntity> teamMembers(CommandSource source, ScorePlayerTeam team) {
+        final Entity sender = source.getEntity();
+        final ArrayList<ServerPlayerEntity> members = new ArrayList<>();
+        //teams only remember their members' names, so look each one up in the player list
+        for (String name : team.getMembershipCollection()) {
+            final ServerPlayerEntity member = source.getServer().getPlayerList().getPlayerByUsername(name);
+            if (member != null && member != sender) {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+
+    private int execute(CommandSource source, Collection<ServerPlayerEntity> targets, String message) {
         {
             //this is what happens when the command is executed
 
             //this command only executes on the server, so don't bother if we're on a remote machine (a client is a remote machine)
             if(source.getWorld().isRemote)
                 return Command.SINGLE_SUCCESS;//return success even though we're not processing.
+            //check for blocked words before the missive goes anywhere. filter gives back null if it shouldn't be sent
+            message = WordFilter.filter(message, source);
+            if(message == null)
+                return 0;
+            //a team with nobody online (besides the sender) has nobody to send to
+            if(targets.isEmpty()){
+                source.sendErrorMessage(ChatUtils.toTextComponent("There's nobody online to send that missive to."));
+                return 0;
+            }
             //here, we try to determine if the sender is a player or something else (like a command block)
             ServerPlayerEntity sender = null;
             try{
@@ -99,25 +146,39 @@ public class MissiveCommand extends CommandBase {
                 String name = source.getDisplayName().getFormattedText();
                 //we also need a position of the command, since Missives are distance-based
                 Vec3d pos = source.getPos();
+                //command blocks have the same length limit and missive limits as players
+                String problem = Missive.lengthProblem(message);
+                if(problem == null){
+                    problem = Missive.quotaProblem(Missive.idForName(name), name, targets.size());
+                }
+                if(problem != null){
+                    source.sendErrorMessage(ChatUtils.toTextComponent(problem));
+                    return 0;
+                }
                 //send the missive. this branch bypasses any item checking
-                Missive.sendMissive(message, name, pos, target);
+                Missive.sendMissive(message, name, pos, targets);
                 //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
                 return Command.SINGLE_SUCCESS;
             }
             //we have a hard limit on missives to be not more than 800 characters, check that first!
-            if(message.length() >= 800){
-                sender.sendMessage(ChatUtils.toTextComponent("coA missive must be less than 800 characters. Your missive has " + message.length() + " characters!"));
+            final String tooLong = Missive.lengthProblem(message);
+            if(tooLong != null){
+                sender.sendMessage(ChatUtils.toTextComponent("co" + tooLong));
                 return Command.SINGLE_SUCCESS;
             }
-            //sender is an actual player!
+            //sender is an actual player! Make sure they haven't hit their missive limit before checking any items
+            if(!Missive.checkQuota(sender, targets.size())){
+                return 0;
+            }
             if((!ChatConfig.missivesUseItems) || (ChatConfig.missiveCatalystItems.size() == 0 && ChatConfig.missiveConsumableItems.size() == 0 )){
                 //if we're not using items, then we don't have to do some server/client work!
-                Missive.sendMissive(message, sender, target);
+                Missive.sendMissive(message, sender, targets);
                 //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
                 return Command.SINGLE_SUCCESS;
             }
             //we're using items, which take a bit of processing. The mod can be set up to do this server side, so check that first
-            if(ChatConfig.missiveServerSideItemChecks){
+            //we also have to do it on the server if the sender's client can't do it for us (they don't have the mod)
+            if(ChatConfig.missiveServerSideItemChecks || !ClientCapabilities.has(sender, ClientCapabilities.MISSIVE_ITEMS)){
                 //getUsedItem will provide both a boolean (if a consumable was found) and an inventory slot number
                 //-3 is considered no item, while -1 and -2 are main and off hand respectively
                 Tuple<Boolean, Integer> result = Missive.getUsedItem(sender);
@@ -127,23 +188,17 @@ public class MissiveCommand extends CommandBase {
                 }
 
                 //removes the items if needed and sends the missive
-                Missive.sendItemizedMissive(message, sender, target, result.getA(), result.getB());
+                Missive.sendItemizedMissive(message, sender, new ArrayList<>(targets), result.getA(), result.getB());
 
                 return Command.SINGLE_SUCCESS;
             }
 
             //if we don't have the server do it, then we need to make the client do it for us!
             //this way, the server doesn't get lagged every time someone sends a missive!
-            //we need to send a request to the client to check for the required items
-            //we do this with a packet handler, like ServerClientBridge that we set up
-            //sendTo sends a packet based on its parameters. In this case, we're sending to the client
-            //sender.connection.getNetworkManager() is who we want to send to (the sender in this case)
-            //NetworkDirection.PLAY_TO_CLIENT tells the handler that this is from the logical server to the client
-            ServerClientBridge.INSTANCE.sendTo(new MissivePacket(
-                    message,
-                    target.getUniqueID()
-            ), sender.connection.getNetworkManager(), NetworkDirection.PLAY_TO_CLIENT);
-            //the actual Missive.sendMissive call happens in the server callback (see MissivePacket.java
+            //we need to send a request to the client to check for the required items. ItemCheckRequests remembers the
+            //missive and sends the request to the client at the end of the tick (see ItemCheckRequests.java)
+            ItemCheckRequests.request(message, sender, targets);
+            //the actual Missive.sendMissive call happens when the client answers (see ItemCheckRequests.handleReply)
 
             //Command.SINGLE_SUCCESS is actually just 1, but this has better readability.
             return Command.SINGLE_SUCCESS;
@@ -151,7 +206,53 @@ public class MissiveCommand extends CommandBase {
     }
 
 
-    private int executeNoMessage(CommandSource source, ServerPlayerEntity target) {
+    //status shows the sender each of their missives that hasn't arrived yet, with about how long it has left
+    private int status(CommandSource source) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        final List<Missive.SentMissive> outgoing = Missive.outgoing(player.getUniqueID());
+        if(outgoing.isEmpty()){
+            player.sendMessage(ChatUtils.toTextComponent("aoYou have no missives on their way."));
+            return 0;
+        }
+        for(Missive.SentMissive missive : outgoing){
+            //only show the start of the message, so a few long missives don't fill up the chat window
+            final String message = missive.payload.message();
+            final String preview = message.length() > 30 ? message.substring(0, 30) + "..." : message;
+            //round the time left up, so a missive never says 0 seconds while it's still on its way
+            final int seconds = (missive.ticksLeft() + 19) / 20;
+            player.sendMessage(ChatUtils.toTextComponent("ao#" + missive.id + " to " + missive.targetName()
+                    + "ao, arriving in about " + seconds + "s: eo" + preview));
+        }
+        return outgoing.size();
+    }
+
+    //incoming tells a player how many missives are on their way to them, but not who they're from or what they say
+    private int incoming(CommandSource source) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        final int count = Missive.incomingCount(player.getUniqueID());
+        if(count == 0){
+            player.sendMessage(ChatUtils.toTextComponent("aoYou aren't expecting any missives."));
+        }else if(count == 1){
+            player.sendMessage(ChatUtils.toTextComponent("aoYou sense a missive making its way to you."));
+        }else{
+            player.sendMessage(ChatUtils.toTextComponent("aoYou sense " + count + " missives making their way to you."));
+        }
+        return count;
+    }
+
+    //cancel calls back one of the player's missives. Anything used up to send it stays used up
+    private int cancel(CommandSource source, int id) throws CommandSyntaxException {
+        final ServerPlayerEntity player = source.asPlayer();
+        final Missive.SentMissive missive = Missive.cancel(player.getUniqueID(), id);
+        if(missive == null){
+            player.sendMessage(ChatUtils.toTextComponent("coYou have no missive #" + id + " on its way."));
+            return 0;
+        }
+        player.sendMessage(ChatUtils.toTextComponent("aoYou call back your missive to " + missive.targetName() + "ao."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int executeNoMessage(CommandSource source) {
         Entity entity = source.getEntity();
         if(entity instanceof PlayerEntity) {
             entity.sendMessage(ChatUtils.toTextComponent("Please provide a message to send!"));
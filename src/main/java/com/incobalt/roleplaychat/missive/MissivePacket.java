@@ -1,14 +1,14 @@
 package com.incobalt.roleplaychat.missive;
 
 import com.incobalt.coreapi.CoreAPI;
-import com.incobalt.coreapi.chat.ChatUtils;
 import com.incobalt.roleplaychat.ServerClientBridge;
+import io.netty.handler.codec.DecoderException;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.Tuple;
 import net.minecraftforge.fml.network.NetworkEvent;
 
-import java.util.UUID;
+import java.util.Arrays;
 import java.util.function.Supplier;
 
 /*
@@ -16,57 +16,71 @@ import java.util.function.Supplier;
     requests the client to check for items and then the client responds by telling the server what kind of item (catalyst
     or consumable) was used and where to find it. The server then uses up any consumable used and sends the missive. This
     starts in the missive command or chat symbol entry point.
+
+    Every check has a request id handed out by ItemCheckRequests. The server keeps the missive itself, so only the ids go
+    to the client and back. One packet can carry several checks, so a player sending several missives in the same tick
+    only needs one packet each way.
  */
 public class MissivePacket {
-    //this is the data we want to transfer. Only the client will fill out this fully, with response data, while the server
-    //will only fill out message and the two UUIDs, which it wants to use later to send the missive.
-    private final String message;
-    //packets can't contain much data, so we use UUIDs to store who the sender and receiver are
-    //private final UUID senderID;
-    private final UUID targetID;
+    //the most checks we put in (or accept from) a single packet. This keeps a bad client from sending a huge packet
+    public static final int MAX_BATCH = 64;
+
+    //this is the data we want to transfer. The server only fills out the request ids, while the client fills out all three
+    //arrays with its answers. The arrays always have the same length, one entry per check
+    private final int[] requestIDs;
     //usedConsumable becomes true if a consumable is the item used to satisfy missive item requirements
-    private final boolean usedConsumable;
+    private final boolean[] usedConsumable;
     //consumableSlot is the inventory item slot (or hand slot) for the item being used to satisfy item requirements
     // -1 will be for main hand, -2 for off hand, -3 for no found item, any other number is an inventory slot number
-    private final int consumableSlot;
+    private final int[] consumableSlot;
 
     //this constructor is used by the client to provide a result to the server about its item checks
-    public MissivePacket(String message, UUID targetID, boolean usedConsumable, int consumableSlot){
-        this.message = message;
-        this.targetID = targetID;
+    public MissivePacket(int[] requestIDs, boolean[] usedConsumable, int[] consumableSlot){
+        this.requestIDs = requestIDs;
         this.usedConsumable = usedConsumable;
         this.consumableSlot = consumableSlot;
     }
 
     //this simplified constructor is used by the server to request that the client perform item requirement calculations
-    public MissivePacket(String message, UUID targetID){
-        this.message = message;
-        this.targetID = targetID;
+    public MissivePacket(int[] requestIDs){
+        this.requestIDs = requestIDs;
         //the server just uses false and no item for these fields, since it doesn't know yet
-        usedConsumable = false;
-        consumableSlot = -3;
+        usedConsumable = new boolean[requestIDs.length];
+        consumableSlot = new int[requestIDs.length];
+        Arrays.fill(consumableSlot, -3);
     }
 
     //this constructor is used by the ServerClientBridge (our packet handler) to read the request from client or server
     //*order is important!*
     public MissivePacket(PacketBuffer buf){
         //the read order *must* match the write order!
-        //readString() only exists in client code to prevent malicious strings from being sent to the server. As such,
-        //we must use readString(int maxlen) to cap the size of the missive. We've chosen a size on 800 characters.
-        message = buf.readString(800);
-        targetID = buf.readUniqueId();
-        usedConsumable = buf.readBoolean();
-        consumableSlot = buf.readInt();
+        //the number of checks comes first. A count we'd never send means a bad packet, so we refuse it instead of making
+        //huge (or negative) arrays. DecoderException is what Netty expects from a packet that can't be read
+        final int count = buf.readVarInt();
+        if(count < 0 || count > MAX_BATCH){
+            throw new DecoderException("Missive packet has " + count + " checks, but the most is " + MAX_BATCH);
+        }
+        requestIDs = new int[count];
+        usedConsumable = new boolean[count];
+        consumableSlot = new int[count];
+        for(int i = 0; i < count; i++){
+            requestIDs[i] = buf.readVarInt();
+            usedConsumable[i] = buf.readBoolean();
+            //slots are small numbers, but can be negative, so a regular short is used instead of a VarInt
+            consumableSlot[i] = buf.readShort();
+        }
     }
 
     //encode is used by the ServerClientBridge (our packet handler) to prepare a packet for sending
     //*order is important!*
     public void encode(PacketBuffer buf){
         //the write order *must* match the read order!
-        buf.writeString(message);
-        buf.writeUniqueId(targetID);
-        buf.writeBoolean(usedConsumable);
-        buf.writeInt(consumableSlot);
+        buf.writeVarInt(requestIDs.length);
+        for(int i = 0; i < requestIDs.length; i++){
+            buf.writeVarInt(requestIDs[i]);
+            buf.writeBoolean(usedConsumable[i]);
+            buf.writeShort(consumableSlot[i]);
+        }
     }
 
     //handler is used by ServerClientBridge (our packet handler) when it receives a packet of this type
@@ -91,18 +105,21 @@ public class MissivePacket {
                     ctx.setPacketHandled(true);
                     return;
                 }
-                //getUsedItem will provide both a boolean (if a consumable was found) and an inventory slot number
-                //-3 is considered no item, while -1 and -2 are main and off hand respectively
-                Tuple<Boolean, Integer> result = Missive.getUsedItem(receiver);
-
-                if(result.getB() == -3){
-                    //-3 means that no item was found! getUsedItem already sends a message to the player, so just return
-                    ctx.setPacketHandled(true);
-                    return;
+                //check the items for every request in the packet
+                final boolean[] used = new boolean[requestIDs.length];
+                final int[] slots = new int[requestIDs.length];
+                for(int i = 0; i < requestIDs.length; i++) {
+                    //getUsedItem will provide both a boolean (if a consumable was found) and an inventory slot number
+                    //-3 is considered no item, while -1 and -2 are main and off hand respectively
+                    //if no item was found, getUsedItem already sends a message to the player, but we still answer
+                    //so the server knows it can stop waiting
+                    Tuple<Boolean, Integer> result = Missive.getUsedItem(receiver);
+                    used[i] = result.getA();
+                    slots[i] = result.getB();
                 }
 
                 //send the data back to the server. sendToServer just takes a packet object (MissivePacket in this case)
-                ServerClientBridge.INSTANCE.sendToServer(new MissivePacket(message, targetID, result.getA(), result.getB()));
+                ServerClientBridge.INSTANCE.sendToServer(new MissivePacket(requestIDs, used, slots));
                 //setPacketHandled(true) tells the handler that the packet is finished. Otherwise, if there was further
                 //message matches in ServerClientBridge, then it would continue on to the next one
                 ctx.setPacketHandled(true);
@@ -111,19 +128,12 @@ public class MissivePacket {
             }else if(ctx.getDirection().getReceptionSide().isServer() && ctx.getDirection().getOriginationSide().isClient()){
                 //the server is the receiver. For this packet, this means that the server has received the requested data
                 //on the server we need to process the missive (Missive.SendMissive) and consume items (if needed)
-                if(targetID == null){
-                    //there's no target, so it's impossible to do anything here (we need a player!)
-                    //for non-player missives, this is handled without the server/client bridge!
-                    ctx.setPacketHandled(true);
-                    return;
-                }
 
                 //we must avoid referencing ServerPlayerEntity in the packet, or the client will crash when registering
                 //the packet as a message (crossloading). We use a proxy to do this for us. The proxy is located in
                 //incobalt's Core API
                 PlayerEntity sender = CoreAPI.proxy.getEntityFromContext(context);
 
-
                 //it's unlikely, but possible that the sender ends up null. We check just to be safe.
                 if(sender == null){
                     //ServerPlayerEntity gives us needed access to a ServerWorld, so we can't continue if there's no sender
@@ -131,21 +141,8 @@ public class MissivePacket {
                     return;
                 }
 
-                //we get the target from the stored UUID sent along with the request.
-                PlayerEntity target = sender.world.getPlayerByUuid(targetID);
-
-                if(target == null){
-                    //target was not found! This might happen if the instant the server responded the target logged out.
-                    //sendMessage requires an ITextComponent. We use a wrapper to make it look better inline.
-                    sender.sendMessage(ChatUtils.toTextComponent("coThat player doesn't exist, but did very recently!"));
-                    //setPacketHandled(true) tells the handler that the packet is finished. Otherwise, if there was further
-                    //message matches in ServerClientBridge, then it would continue on to the next one
-                    ctx.setPacketHandled(true);
-                    return;
-                }
-
-                //to keep things clean, we make the Missive class do the task of removing items and sending the missive
-                Missive.sendItemizedMissive(message, sender, target, usedConsumable, consumableSlot);
+                //ItemCheckRequests matches the answers up with the requests we sent, and sends the missives
+                ItemCheckRequests.handleReply(sender, requestIDs, usedConsumable, consumableSlot);
 
                 //setPacketHandled(true) tells the handler that the packet is finished. Otherwise, if there was further
                 //message matches in ServerClientBridge, then it would continue on to the next one
@@ -0,0 +1,222 @@
+package com.incobalt.roleplaychat.missive;
+
+import com.incobalt.coreapi.CoreAPI;
+import com.incobalt.roleplaychat.ChatConfig;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+    PostNetwork lets missives travel along a network of post offices set up in the config, instead of only in a straight
+    line. Post offices are named spots in a dimension. Post routes join two post offices in the same dimension and can be
+    faster than normal (like a road with riders on it), and portal routes join two post offices (usually in different
+    dimensions) with a set travel time.
+
+    A missive walks to the post office nearest its sender, travels the network to the post office nearest its target,
+    and walks the rest of the way. If going straight there would be faster (or the network can't get it there), it goes
+    straight there the way it always has.
+
+    The fastest time between every pair of post offices is worked out once, whenever the config is baked, with the
+    Floyd-Warshall algorithm. Networks are small (a few dozen post offices at most), so the table is small too. After
+    that, working out a missive's travel time is just finding the nearest post offices and reading the table.
+ */
+public class PostNetwork {
+    //the post offices, by index. These are filled in by bake()
+    private static String[] names = new String[0];
+    private static double[] positions = new double[0];
+    //the post offices in each dimension, by the dimension's id (like minecraft:overworld)
+    private static HashMap<String, int[]> byDimension = new HashMap<>();
+    //the fastest time in seconds from each post office to each other one. The time from a to b is at [a * count + b].
+    //post offices that can't reach each other have Double.POSITIVE_INFINITY
+    private static double[] fastest = new double[0];
+
+    /*
+        bake builds the network from the config. It's called by ChatConfig.bakeConfig, so the table is built again any
+        time the config changes. Entries that don't make sense (like a route to a post office that doesn't exist) are
+        skipped and written to the log.
+     */
+    public static void bake() {
+        final HashMap<String, Integer> indexOf = new HashMap<>();
+        final ArrayList<String> nodeNames = new ArrayList<>();
+        final ArrayList<String> nodeDimensions = new ArrayList<>();
+        final ArrayList<double[]> nodePositions = new ArrayList<>();
+        //each post office is "<name> <dimension> <x> <y> <z>"
+        for (String entry : ChatConfig.postOffices) {
+            final String[] parts = entry.trim().split("\\s+");
+            if (parts.length != 5 || indexOf.containsKey(parts[0])) {
+                CoreAPI.LOGGER.info("Skipping post office \"" + entry + "\"");
+                continue;
+            }
+            final ResourceLocation dimension = ResourceLocation.tryCreate(parts[1]);
+            try {
+                final double[] position = {Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4])};
+                if (dimension == null)
+                    throw new NumberFormatException();
+                indexOf.put(parts[0], nodeNames.size());
+                nodeNames.add(parts[0]);
+                nodeDimensions.add(dimension.toString());
+                nodePositions.add(position);
+            } catch (NumberFormatException e) {
+                CoreAPI.LOGGER.info("Skipping post office \"" + entry + "\"");
+            }
+        }
+
+        final int count = nodeNames.size();
+        final double[] table = new double[count * count];
+        Arrays.fill(table, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < count; i++) {
+            table[i * count + i] = 0;
+        }
+
+        //post routes are "<from> <to> <speed>", where speed is how many times faster than normal a missive goes on it
+        for (String entry : ChatConfig.postRoutes) {
+            final String[] parts = entry.trim().split("\\s+");
+            final Integer from = parts.length == 3 ? indexOf.get(parts[0]) : null;
+            final Integer to = parts.length == 3 ? indexOf.get(parts[1]) : null;
+            if (from == null || to == null || !nodeDimensions.get(from).equals(nodeDimensions.get(to))) {
+                CoreAPI.LOGGER.info("Skipping post route \"" + entry + "\"");
+                continue;
+            }
+            try {
+                final double speed = Double.parseDouble(parts[2]);
+                if (speed <= 0)
+                    throw new NumberFormatException();
+                link(table, count, from, to, walkSeconds(nodePositions.get(from), nodePositions.get(to)) / speed);
+            } catch (NumberFormatException e) {
+                CoreAPI.LOGGER.info("Skipping post route \"" + entry + "\"");
+            }
+        }
+
+        //portal routes are "<from> <to> <seconds>", a set travel time no matter how far apart the post offices are
+        for (String entry : ChatConfig.portalRoutes) {
+            final String[] parts = entry.trim().split("\\s+");
+            final Integer from = parts.length == 3 ? indexOf.get(parts[0]) : null;
+            final Integer to = parts.length == 3 ? indexOf.get(parts[1]) : null;
+            if (from == null || to == null) {
+                CoreAPI.LOGGER.info("Skipping portal route \"" + entry + "\"");
+                continue;
+            }
+            try {
+                final double seconds = Double.parseDouble(parts[2]);
+                if (seconds < 0)
+                    throw new NumberFormatException();
+                link(table, count, from, to, seconds);
+            } catch (NumberFormatException e) {
+                CoreAPI.LOGGER.info("Skipping portal route \"" + entry + "\"");
+            }
+        }
+
+        //Floyd-Warshall: for each post office k, see if going through k is faster for any pair. After every k has had its
+        //turn, the table holds the fastest time between every pair
+        for (int k = 0; k < count; k++) {
+            for (int i = 0; i < count; i++) {
+                final double toK = table[i * count + k];
+                if (toK == Double.POSITIVE_INFINITY)
+                    continue;
+                for (int j = 0; j < count; j++) {
+                    final double through = toK + table[k * count + j];
+                    if (through < table[i * count + j]) {
+                        table[i * count + j] = through;
+                    }
+                }
+            }
+        }
+
+        //group the post offices by dimension, for finding the nearest one
+        final HashMap<String, ArrayList<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            grouped.computeIfAbsent(nodeDimensions.get(i), d -> new ArrayList<>()).add(i);
+        }
+        final HashMap<String, int[]> dimensions = new HashMap<>();
+        for (String dimension : grouped.keySet()) {
+            final ArrayList<Integer> list = grouped.get(dimension);
+            final int[] nodes = new int[list.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = list.get(i);
+            }
+            dimensions.put(dimension, nodes);
+        }
+        final double[] flatPositions = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(nodePositions.get(i), 0, flatPositions, i * 3, 3);
+        }
+
+        //everything was built on the side, so the old network kept working until now. Swap in the new one
+        names = nodeNames.toArray(new String[0]);
+        positions = flatPositions;
+        byDimension = dimensions;
+        fastest = table;
+    }
+
+    //link adds a two-way route, keeping the faster one if there's already a route between the two post offices
+    private static void link(double[] table, int count, int from, int to, double seconds) {
+        if (seconds < table[from * count + to]) {
+            table[from * count + to] = seconds;
+            table[to * count + from] = seconds;
+        }
+    }
+
+    //hasOffices tells us if any post offices are set up. Without them, missives are timed the way they always have been
+    //(see Missive.directTicks)
+    public static boolean hasOffices() {
+        return names.length > 0;
+    }
+
+    /*
+        travelTicks gives back how many ticks a missive takes using the network, or -1 if the network can't get it there
+        (there are no post offices in one of the dimensions, or the two nearest post offices aren't connected).
+        This doesn't include the missive's processing time, just the travel.
+     */
+    public static int travelTicks(Vec3d from, DimensionType fromDimension, Vec3d to, DimensionType toDimension) {
+        if (fastest.length == 0)
+            return -1;
+        final int start = nearest(from, fromDimension);
+        final int end = nearest(to, toDimension);
+        if (start < 0 || end < 0)
+            return -1;
+        final double network = fastest[start * names.length + end];
+        if (network == Double.POSITIVE_INFINITY)
+            return -1;
+        final double seconds = walkSeconds(from, start) + network + walkSeconds(to, end);
+        //a very slow config could go past the biggest int, so cap it
+        return (int) Math.min(Integer.MAX_VALUE, seconds * 20);
+    }
+
+    //nearest finds the closest post office to a spot in a dimension, or -1 if that dimension doesn't have any
+    private static int nearest(Vec3d pos, DimensionType dimension) {
+        final ResourceLocation key = DimensionType.getKey(dimension);
+        final int[] nodes = key != null ? byDimension.get(key.toString()) : null;
+        if (nodes == null)
+            return -1;
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int node : nodes) {
+            final double dx = positions[node * 3] - pos.x;
+            final double dy = positions[node * 3 + 1] - pos.y;
+            final double dz = positions[node * 3 + 2] - pos.z;
+            final double distance = dx * dx + dy * dy + dz * dz;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    //walkSeconds is how long a missive takes to go between two spots off the network, at the normal missive speed. It
+    //uses the same travel time as a missive going straight there (see Missive.travelSeconds)
+    private static double walkSeconds(double[] from, double[] to) {
+        final double dx = to[0] - from[0], dy = to[1] - from[1], dz = to[2] - from[2];
+        return Missive.travelSeconds(Math.sqrt(dx * dx + dy * dy + dz * dz));
+    }
+
+    //this version of walkSeconds is for a spot and a post office
+    private static double walkSeconds(Vec3d pos, int node) {
+        final double dx = positions[node * 3] - pos.x, dy = positions[node * 3 + 1] - pos.y, dz = positions[node * 3 + 2] - pos.z;
+        return Missive.travelSeconds(Math.sqrt(dx * dx + dy * dy + dz * dz));
+    }
+}